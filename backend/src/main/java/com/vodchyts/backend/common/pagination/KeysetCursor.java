@@ -0,0 +1,138 @@
+package com.vodchyts.backend.common.pagination;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Непрозрачный курсор для keyset-пагинации: хранит значения ключей сортировки последней строки страницы
+ * и строит условие "строки после курсора" для того же ORDER BY.
+ */
+public final class KeysetCursor {
+
+    public record SortKey(String expression, boolean descending) {}
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private KeysetCursor() {
+    }
+
+    public static String orderBy(List<SortKey> keys) {
+        List<String> parts = new ArrayList<>();
+        for (SortKey key : keys) {
+            parts.add(key.expression() + (key.descending() ? " DESC" : " ASC"));
+        }
+        return " ORDER BY " + String.join(", ", parts);
+    }
+
+    public static String encode(List<SortKey> keys, List<Object> values) {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("o", signature(keys));
+        ArrayNode array = root.putArray("k");
+        for (Object value : values) {
+            array.add(encodeValue(value));
+        }
+        try {
+            byte[] json = MAPPER.writeValueAsBytes(root);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось сформировать курсор пагинации", e);
+        }
+    }
+
+    public static List<Object> decode(String token, List<SortKey> keys) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(Base64.getUrlDecoder().decode(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Некорректный курсор пагинации");
+        }
+        if (root == null || !signature(keys).equals(root.path("o").asText())) {
+            throw new IllegalArgumentException("Курсор пагинации не соответствует текущей сортировке");
+        }
+        JsonNode array = root.path("k");
+        if (!array.isArray() || array.size() != keys.size()) {
+            throw new IllegalArgumentException("Некорректный курсор пагинации");
+        }
+        List<Object> values = new ArrayList<>();
+        for (JsonNode node : array) {
+            values.add(decodeValue(node.asText()));
+        }
+        return values;
+    }
+
+    /**
+     * Условие "строка идет после курсора" в лексикографическом порядке ключей.
+     * NULL в SQL Server сортируется первым при ASC и последним при DESC.
+     */
+    public static String condition(List<SortKey> keys, List<Object> values, Map<String, Object> bindings) {
+        List<String> branches = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            List<String> parts = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                parts.add(equalTo(keys.get(j), values.get(j), bindings, "cursor" + i + "_" + j));
+            }
+            String after = after(keys.get(i), values.get(i), bindings, "cursor" + i + "_" + i);
+            if (after == null) {
+                continue;
+            }
+            parts.add(after);
+            branches.add("(" + String.join(" AND ", parts) + ")");
+        }
+        return branches.isEmpty() ? "1 = 0" : "(" + String.join(" OR ", branches) + ")";
+    }
+
+    private static String equalTo(SortKey key, Object value, Map<String, Object> bindings, String name) {
+        if (value == null) {
+            return key.expression() + " IS NULL";
+        }
+        bindings.put(name, value);
+        return key.expression() + " = :" + name;
+    }
+
+    private static String after(SortKey key, Object value, Map<String, Object> bindings, String name) {
+        if (value == null) {
+            return key.descending() ? null : key.expression() + " IS NOT NULL";
+        }
+        bindings.put(name, value);
+        return key.descending()
+                ? "(" + key.expression() + " < :" + name + " OR " + key.expression() + " IS NULL)"
+                : key.expression() + " > :" + name;
+    }
+
+    private static String signature(List<SortKey> keys) {
+        return Integer.toHexString(orderBy(keys).hashCode());
+    }
+
+    private static String encodeValue(Object value) {
+        if (value == null) return "n";
+        if (value instanceof Integer i) return "i:" + i;
+        if (value instanceof Long l) return "l:" + l;
+        if (value instanceof LocalDateTime t) return "t:" + t;
+        return "s:" + value;
+    }
+
+    private static Object decodeValue(String raw) {
+        try {
+            if ("n".equals(raw)) return null;
+            String payload = raw.substring(2);
+            return switch (raw.substring(0, 2)) {
+                case "i:" -> Integer.valueOf(payload);
+                case "l:" -> Long.valueOf(payload);
+                case "t:" -> LocalDateTime.parse(payload);
+                case "s:" -> payload;
+                default -> throw new IllegalArgumentException();
+            };
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Некорректный курсор пагинации");
+        }
+    }
+}
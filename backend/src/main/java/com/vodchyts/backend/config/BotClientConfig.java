@@ -0,0 +1,51 @@
+package com.vodchyts.backend.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * HTTP-клиент для Telegram-бота с собственным пулом соединений.
+ * Пул и очередь ожидания соединения ограничены, поэтому медленный бот не занимает соединения остальных клиентов
+ * и не копит бесконечную очередь запросов; метрики пула публикуются как reactor.netty.connection.provider.*.
+ */
+@Configuration
+public class BotClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider botConnectionProvider(@Value("${bot.client.max-connections:16}") int maxConnections,
+                                                    @Value("${bot.client.pending-acquire-max:200}") int pendingAcquireMax,
+                                                    @Value("${bot.client.pending-acquire-timeout-ms:5000}") long pendingAcquireTimeoutMs) {
+        return ConnectionProvider.builder("telegram-bot")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(30))
+                .evictInBackground(Duration.ofSeconds(60))
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient botWebClient(ConnectionProvider botConnectionProvider,
+                                  @Value("${bot.url:http://localhost:8081}") String botUrl,
+                                  @Value("${bot.client.connect-timeout-ms:3000}") int connectTimeoutMs,
+                                  @Value("${bot.client.response-timeout-ms:30000}") long responseTimeoutMs) {
+        HttpClient httpClient = HttpClient.create(botConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+
+        // Ответы бота короткие, а фото уходят потоком, поэтому большой буфер в памяти не нужен
+        return WebClient.builder()
+                .baseUrl(botUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
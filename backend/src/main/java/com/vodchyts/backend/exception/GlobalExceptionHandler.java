@@ -85,6 +85,13 @@ public class GlobalExceptionHandler {
         return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage()));
     }
 
+    // Некорректные параметры запроса (например, курсор пагинации) - ошибка клиента, а не сервера
+    @ExceptionHandler(IllegalArgumentException.class)
+    public Mono<ResponseEntity<String>> handleIllegalArgument(IllegalArgumentException ex, ServerWebExchange exchange) {
+        logWarn(exchange, ex, "Bad Request: " + ex.getMessage());
+        return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage()));
+    }
+
     @ExceptionHandler(UserNotFoundException.class)
     public Mono<ResponseEntity<String>> handleUserNotFound(UserNotFoundException ex, ServerWebExchange exchange) {
         logWarn(exchange, ex, "User Not Found: " + ex.getMessage());
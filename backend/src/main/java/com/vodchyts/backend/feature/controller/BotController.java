@@ -3,16 +3,18 @@ package com.vodchyts.backend.feature.controller;
 import com.vodchyts.backend.exception.OperationNotAllowedException;
 import com.vodchyts.backend.exception.UserNotFoundException;
 import com.vodchyts.backend.feature.dto.*;
+import com.vodchyts.backend.feature.entity.User;
 import com.vodchyts.backend.feature.service.*;
 import jakarta.validation.Valid;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.multipart.FilePart;
-import com.vodchyts.backend.feature.repository.ReactiveRoleRepository;
 
 import java.util.List;
 
@@ -26,17 +28,15 @@ public class BotController {
     private final AdminService adminService;
     private final ShopContractorChatService chatService;
     private final RequestService requestService;
-    private final ReactiveRoleRepository roleRepository;
     private final WorkCategoryService workCategoryService;
     private final UrgencyCategoryService urgencyCategoryService;
     private final ShopService shopService;
 
-    public BotController(UserService userService, AdminService adminService, ShopContractorChatService chatService, RequestService requestService, ReactiveRoleRepository roleRepository, WorkCategoryService workCategoryService, UrgencyCategoryService urgencyCategoryService, ShopService shopService) {
+    public BotController(UserService userService, AdminService adminService, ShopContractorChatService chatService, RequestService requestService, WorkCategoryService workCategoryService, UrgencyCategoryService urgencyCategoryService, ShopService shopService) {
         this.userService = userService;
         this.adminService = adminService;
         this.chatService = chatService;
         this.requestService = requestService;
-        this.roleRepository = roleRepository;
         this.workCategoryService = workCategoryService;
         this.urgencyCategoryService = urgencyCategoryService;
         this.shopService = shopService;
@@ -71,12 +71,14 @@ public class BotController {
             @RequestParam(defaultValue = "5") int size,
             @RequestParam(required = false) boolean archived,
             @RequestParam(required = false) String searchTerm,
-            @RequestParam(required = false) List<String> sort
+            @RequestParam(required = false) List<String> sort,
+            @RequestParam(required = false) String after
     ) {
-        return userService.findByTelegramId(telegram_id)
+        return userService.findEntryByTelegramId(telegram_id)
                 .switchIfEmpty(Mono.error(new UserNotFoundException("Пользователь не найден в системе.")))
-                .flatMap(user -> roleRepository.findById(user.getRoleID())
+                .flatMap(entry -> Mono.justOrEmpty(entry.role())
                         .flatMap(role -> {
+                            User user = entry.user();
                             String roleName = role.getRoleName();
                             List<String> sortParams = (sort != null && !sort.isEmpty()) ? sort : List.of("requestID,asc");
 
@@ -84,21 +86,21 @@ public class BotController {
 
                             if (isPrivateChat) {
                                 if ("RetailAdmin".equals(roleName)) {
-                                    return requestService.getAllRequests(archived, searchTerm, null, null, null, null, null, null, null, null, sortParams, page, size, user.getLogin());
+                                    return requestService.getAllRequests(archived, searchTerm, null, null, null, null, null, null, null, null, sortParams, page, size, after, user.getLogin());
                                 } else if ("Contractor".equals(roleName)) {
-                                    return requestService.getAllRequests(archived, searchTerm, null, null, null, user.getUserID(), null, null, null, null, sortParams, page, size, user.getLogin());
+                                    return requestService.getAllRequests(archived, searchTerm, null, null, null, user.getUserID(), null, null, null, null, sortParams, page, size, after, user.getLogin());
                                 }
                             } else {
                                 return chatService.findByTelegramId(chat_id)
                                         .switchIfEmpty(Mono.error(new OperationNotAllowedException("Этот чат не привязан ни к одной связке Магазин-Подрядчик.")))
                                         .flatMap(link -> {
                                             if ("RetailAdmin".equals(roleName)) {
-                                                return requestService.getAllRequests(archived, searchTerm, link.shopID(), null, null, link.contractorID(), null, null, null, null, sortParams, page, size, user.getLogin());
+                                                return requestService.getAllRequests(archived, searchTerm, link.shopID(), null, null, link.contractorID(), null, null, null, null, sortParams, page, size, after, user.getLogin());
                                             } else if ("Contractor".equals(roleName)) {
                                                 if (link.contractorID() != null && !link.contractorID().equals(user.getUserID())) {
                                                     return Mono.error(new OperationNotAllowedException("У вас нет прав доступа к заявкам в этом чате (чат закреплен за другим исполнителем)."));
                                                 }
-                                                return requestService.getAllRequests(archived, searchTerm, link.shopID(), null, null, user.getUserID(), null, null, null, null, sortParams, page, size, user.getLogin());
+                                                return requestService.getAllRequests(archived, searchTerm, link.shopID(), null, null, user.getUserID(), null, null, null, null, sortParams, page, size, after, user.getLogin());
                                             }
                                             return Mono.error(new OperationNotAllowedException("Доступ запрещен."));
                                         });
@@ -118,7 +120,8 @@ public class BotController {
     public Mono<RequestResponse> completeRequestForBot(@PathVariable Integer requestId, @RequestBody BotActionRequest botRequest) {
         return userService.findByTelegramId(botRequest.telegram_id())
                 .switchIfEmpty(Mono.error(new UserNotFoundException("Пользователь с таким Telegram ID не найден.")))
-                .flatMap(user -> requestService.completeRequest(requestId, user.getUserID()));
+                .flatMap(user -> requestService.completeRequest(requestId, user.getUserID()))
+                .map(RequestChange::after);
     }
 
     @GetMapping("/requests/{requestId}/comments")
@@ -155,7 +158,8 @@ public class BotController {
 
     @PutMapping("/requests/{requestId}")
     public Mono<RequestResponse> updateRequestFromBot(@PathVariable Integer requestId, @Valid @RequestBody Mono<UpdateRequestRequest> requestDto) {
-        return requestDto.flatMap(dto -> requestService.updateAndEnrichRequest(requestId, dto));
+        return requestDto.flatMap(dto -> requestService.updateAndEnrichRequest(requestId, dto))
+                .map(RequestChange::after);
     }
 
     @DeleteMapping("/requests/comments/{commentId}")
@@ -197,11 +201,11 @@ public class BotController {
     }
 
     @GetMapping("/requests/photos/{photoId}")
-    public Mono<ResponseEntity<byte[]>> getPhotoForBot(@PathVariable Integer photoId) {
-        return requestService.getPhotoById(photoId)
-                .map(imageData -> ResponseEntity.ok()
-                        .contentType(MediaType.IMAGE_JPEG)
-                        .body(imageData))
+    public Mono<ResponseEntity<Resource>> getPhotoForBot(@PathVariable Integer photoId,
+                                                    @RequestParam(required = false) String size,
+                                                    ServerWebExchange exchange) {
+        return requestService.getPhotoById(photoId, size)
+                .flatMap(photo -> PhotoResponses.respond(photo, exchange, found -> requestService.getPhotoBody(found, size)))
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 }
\ No newline at end of file
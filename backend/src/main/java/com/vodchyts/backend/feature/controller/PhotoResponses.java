@@ -0,0 +1,45 @@
+package com.vodchyts.backend.feature.controller;
+
+import com.vodchyts.backend.feature.dto.PhotoContent;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Ответ с фотографией для RequestController и BotController.
+ * Содержимое по хэшу неизменно, поэтому ответ кэшируется навсегда. Совпавший If-None-Match проверяется до чтения
+ * содержимого и получает 304; иначе содержимое загружается (body), а ResourceHttpMessageWriter обрабатывает Range (206).
+ */
+final class PhotoResponses {
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable();
+
+    private PhotoResponses() {
+    }
+
+    static Mono<ResponseEntity<Resource>> respond(PhotoContent photo, ServerWebExchange exchange,
+                                                  Function<PhotoContent, Mono<PhotoContent>> body) {
+        if (photo.eTag() != null && exchange.checkNotModified(photo.eTag())) {
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(photo.eTag()).cacheControl(IMMUTABLE).build());
+        }
+        return body.apply(photo).map(PhotoResponses::ok);
+    }
+
+    static ResponseEntity<Resource> ok(PhotoContent photo) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(photo.contentType() != null ? photo.contentType() : MediaType.IMAGE_JPEG_VALUE));
+        if (photo.eTag() != null) {
+            builder.eTag(photo.eTag()).cacheControl(IMMUTABLE);
+        } else {
+            builder.cacheControl(CacheControl.noCache());
+        }
+        return builder.body(photo.resource());
+    }
+}
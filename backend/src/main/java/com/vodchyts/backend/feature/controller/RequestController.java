@@ -2,9 +2,15 @@ package com.vodchyts.backend.feature.controller;
 
 import com.vodchyts.backend.feature.dto.*;
 import com.vodchyts.backend.feature.service.AuditHelper;
+import com.vodchyts.backend.feature.service.AuditService;
+import com.vodchyts.backend.feature.service.RequestImportService;
 import com.vodchyts.backend.feature.service.RequestService;
 import com.vodchyts.backend.feature.service.UserService;
 import jakarta.validation.Valid;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -18,6 +24,8 @@ import reactor.core.publisher.Mono;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/requests")
@@ -26,11 +34,13 @@ public class RequestController {
     private final RequestService requestService;
     private final UserService userService;
     private final AuditHelper auditHelper;
+    private final RequestImportService requestImportService;
 
-    public RequestController(RequestService requestService, UserService userService, AuditHelper auditHelper) {
+    public RequestController(RequestService requestService, UserService userService, AuditHelper auditHelper, RequestImportService requestImportService) {
         this.requestService = requestService;
         this.userService = userService;
         this.auditHelper = auditHelper;
+        this.requestImportService = requestImportService;
     }
 
     @GetMapping
@@ -48,10 +58,11 @@ public class RequestController {
             @RequestParam(required = false) String status,
             @RequestParam(required = false) Boolean overdue,
             @RequestParam(required = false) LocalDate startDate,
-            @RequestParam(required = false) LocalDate endDate
+            @RequestParam(required = false) LocalDate endDate,
+            @RequestParam(required = false) String after
     ) {
         List<String> sortParams = exchange.getRequest().getQueryParams().get("sort");
-        return requestService.getAllRequests(archived, searchTerm, shopId, workCategoryId, urgencyId, contractorId, status, overdue, startDate, endDate, sortParams, page, size, username);
+        return requestService.getAllRequests(archived, searchTerm, shopId, workCategoryId, urgencyId, contractorId, status, overdue, startDate, endDate, sortParams, page, size, after, username);
     }
 
 
@@ -73,35 +84,61 @@ public class RequestController {
     @PreAuthorize("hasRole('RetailAdmin')")
     public Mono<RequestResponse> updateRequest(@PathVariable Integer requestId, @Valid @RequestBody Mono<UpdateRequestRequest> requestDto, @AuthenticationPrincipal String username, ServerWebExchange exchange) {
         return requestDto.flatMap(dto ->
-                requestService.getRequestById(requestId)
-                        .map(java.util.Optional::of)
-                        .defaultIfEmpty(java.util.Optional.empty())
-                        .onErrorReturn(java.util.Optional.empty())
-                        .flatMap(oldRequestOpt ->
-                                requestService.updateAndEnrichRequest(requestId, dto)
-                                        .doOnSuccess(updatedRequest -> {
-                                            // Аудит обновления
-                                            auditHelper.auditUpdate("Requests", requestId, oldRequestOpt.orElse(null), updatedRequest, exchange).subscribe();
-                                        })
-                        )
+                requestService.updateAndEnrichRequest(requestId, dto)
+                        .doOnSuccess(change -> {
+                            // Аудит обновления: состояние до и после получено тем же запросом, что и запись
+                            auditHelper.auditUpdate("Requests", requestId, change.before(), change.after(), exchange).subscribe();
+                        })
+                        .map(RequestChange::after)
         );
     }
 
+    @PostMapping("/bulk")
+    @PreAuthorize("hasRole('RetailAdmin')")
+    public Mono<BulkRequestUpdateResponse> bulkUpdateRequests(@Valid @RequestBody Mono<BulkRequestUpdateRequest> requestDto, ServerWebExchange exchange) {
+        return requestDto.flatMap(dto -> requestService.bulkUpdateRequests(dto)
+                .doOnSuccess(changes -> {
+                    // Аудит одним пакетом на все измененные заявки
+                    List<AuditService.Entry> entries = changes.stream()
+                            .map(change -> new AuditService.Entry(change.after().requestID(), change.before(), change.after()))
+                            .toList();
+                    auditHelper.auditUpdateBatch("Requests", entries, exchange).subscribe();
+                })
+                .map(changes -> {
+                    Set<Integer> updatedIds = changes.stream().map(change -> change.after().requestID()).collect(Collectors.toSet());
+                    List<Integer> notFoundIds = dto.requestIds().stream()
+                            .filter(id -> id != null && !updatedIds.contains(id))
+                            .distinct()
+                            .toList();
+                    return new BulkRequestUpdateResponse(changes.size(), notFoundIds,
+                            changes.stream().map(RequestChange::after).toList());
+                }));
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('RetailAdmin')")
+    public Mono<RequestImportResponse> importRequests(@RequestPart("file") Mono<FilePart> filePart,
+                                                      @AuthenticationPrincipal String username,
+                                                      ServerWebExchange exchange) {
+        return userService.findByLogin(username)
+                .flatMap(user -> filePart.flatMap(file -> requestImportService.importRequests(file, user.getUserID())))
+                .doOnSuccess(report -> {
+                    if (report != null) {
+                        auditHelper.auditCreate("Requests", null, "Импорт заявок: " + report.importedCount() + " из " + report.totalRows(), exchange).subscribe();
+                    }
+                });
+    }
+
     @DeleteMapping("/{requestId}")
     @PreAuthorize("hasRole('RetailAdmin')")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public Mono<Void> deleteRequest(@PathVariable Integer requestId, ServerWebExchange exchange) {
-        return requestService.getRequestById(requestId)
-                .map(java.util.Optional::of)
-                .defaultIfEmpty(java.util.Optional.empty())
-                .onErrorReturn(java.util.Optional.empty())
-                .flatMap(requestToDeleteOpt ->
-                        requestService.deleteRequest(requestId)
-                                .doOnSuccess(v -> {
-                                    // Аудит удаления
-                                    auditHelper.auditDelete("Requests", requestId, requestToDeleteOpt.orElse(null), exchange).subscribe();
-                                })
-                );
+        return requestService.deleteRequest(requestId)
+                .doOnSuccess(deletedRequest -> {
+                    // Аудит удаления
+                    auditHelper.auditDelete("Requests", requestId, deletedRequest, exchange).subscribe();
+                })
+                .then();
     }
 
 
@@ -124,10 +161,15 @@ public class RequestController {
     }
 
 
-    @GetMapping("/{requestId}/photos")
-    public Flux<ResponseEntity<byte[]>> getPhotos(@PathVariable Integer requestId) {
-        return requestService.getPhotosForRequest(requestId)
-                .map(imageData -> ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(imageData));
+    @GetMapping(value = "/{requestId}/photos.zip", produces = "application/zip")
+    public ResponseEntity<Flux<DataBuffer>> getPhotosArchive(@PathVariable Integer requestId) {
+        ContentDisposition disposition = ContentDisposition.attachment()
+                .filename("request_" + requestId + "_photos.zip")
+                .build();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(requestService.getPhotosArchive(requestId));
     }
 
     @PostMapping(value = "/{requestId}/photos", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -149,13 +191,11 @@ public class RequestController {
     @PreAuthorize("hasRole('Contractor')")
     public Mono<RequestResponse> completeRequest(@PathVariable Integer requestId, @AuthenticationPrincipal String username, ServerWebExchange exchange) {
         return userService.findByLogin(username)
-                .flatMap(user -> requestService.getRequestById(requestId)
-                        .map(java.util.Optional::of).defaultIfEmpty(java.util.Optional.empty()).onErrorReturn(java.util.Optional.empty())
-                        .flatMap(oldReqOpt -> requestService.completeRequest(requestId, user.getUserID())
-                                .doOnSuccess(updatedReq -> {
-                                    auditHelper.auditUpdate("Requests", requestId, oldReqOpt.orElse(null), updatedReq, exchange).subscribe();
-                                })
-                        )
+                .flatMap(user -> requestService.completeRequest(requestId, user.getUserID())
+                        .doOnSuccess(change -> {
+                            auditHelper.auditUpdate("Requests", requestId, change.before(), change.after(), exchange).subscribe();
+                        })
+                        .map(RequestChange::after)
                 );
     }
 
@@ -166,9 +206,11 @@ public class RequestController {
     }
 
     @GetMapping("/photos/{photoId}")
-    public Mono<ResponseEntity<byte[]>> getPhoto(@PathVariable Integer photoId) {
-        return requestService.getPhotoById(photoId)
-                .map(imageData -> ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(imageData))
+    public Mono<ResponseEntity<Resource>> getPhoto(@PathVariable Integer photoId,
+                                                    @RequestParam(required = false) String size,
+                                                    ServerWebExchange exchange) {
+        return requestService.getPhotoById(photoId, size)
+                .flatMap(photo -> PhotoResponses.respond(photo, exchange, found -> requestService.getPhotoBody(found, size)))
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
@@ -185,13 +227,11 @@ public class RequestController {
     @PutMapping("/{requestId}/restore")
     @PreAuthorize("hasRole('RetailAdmin')")
     public Mono<RequestResponse> restoreRequest(@PathVariable Integer requestId, @RequestBody(required = false) Mono<Void> body, ServerWebExchange exchange) {
-        return requestService.getRequestById(requestId)
-                .map(java.util.Optional::of).defaultIfEmpty(java.util.Optional.empty()).onErrorReturn(java.util.Optional.empty())
-                .flatMap(oldReqOpt -> requestService.restoreRequest(requestId)
-                        .doOnSuccess(updatedReq -> {
-                            auditHelper.auditUpdate("Requests", requestId, oldReqOpt.orElse(null), updatedReq, exchange).subscribe();
-                        })
-                );
+        return requestService.restoreRequest(requestId)
+                .doOnSuccess(change -> {
+                    auditHelper.auditUpdate("Requests", requestId, change.before(), change.after(), exchange).subscribe();
+                })
+                .map(RequestChange::after);
     }
 
     @DeleteMapping("/comments/{commentId}")
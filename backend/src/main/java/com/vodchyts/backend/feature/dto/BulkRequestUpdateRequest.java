@@ -0,0 +1,19 @@
+package com.vodchyts.backend.feature.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import java.util.List;
+
+public record BulkRequestUpdateRequest(
+        @NotEmpty(message = "Нужно выбрать хотя бы одну заявку")
+        List<Integer> requestIds,
+
+        String status,
+
+        Integer assignedContractorID,
+
+        Integer urgencyID,
+
+        @Min(value = 1, message = "Количество дней должно быть больше 0")
+        Integer customDays
+) {}
@@ -0,0 +1,9 @@
+package com.vodchyts.backend.feature.dto;
+
+import java.util.List;
+
+public record BulkRequestUpdateResponse(
+        int updatedCount,
+        List<Integer> notFoundIds,
+        List<RequestResponse> requests
+) {}
@@ -2,10 +2,24 @@ package com.vodchyts.backend.feature.dto;
 
 import java.util.List;
 
+/**
+ * Страница результатов. cursor - курсор для запроса следующей страницы через after; он равен null на последней
+ * странице и когда список упорядочен по релевантности поиска (поиск без явной сортировки и без after) - в этом
+ * режиме следующие страницы запрашиваются по номеру page.
+ */
 public record PagedResponse<T>(
         List<T> content,
         int currentPage,
         long totalItems,
-        int totalPages
+        int totalPages,
+        String cursor,
+        boolean totalCached
 ) {
-}
\ No newline at end of file
+    public PagedResponse(List<T> content, int currentPage, long totalItems, int totalPages) {
+        this(content, currentPage, totalItems, totalPages, null, false);
+    }
+
+    public PagedResponse(List<T> content, int currentPage, long totalItems, int totalPages, boolean totalCached) {
+        this(content, currentPage, totalItems, totalPages, null, totalCached);
+    }
+}
@@ -0,0 +1,13 @@
+package com.vodchyts.backend.feature.dto;
+
+import org.springframework.core.io.Resource;
+
+public record PhotoContent(
+        Integer photoId,
+        String contentHash,
+        // Сильный ETag (хэш содержимого, для уменьшенной копии - с суффиксом); null у фото, еще хранящихся в базе
+        String eTag,
+        String contentType,
+        long sizeBytes,
+        Resource resource
+) {}
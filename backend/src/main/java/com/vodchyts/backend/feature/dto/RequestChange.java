@@ -0,0 +1,6 @@
+package com.vodchyts.backend.feature.dto;
+
+public record RequestChange(
+        RequestResponse before,
+        RequestResponse after
+) {}
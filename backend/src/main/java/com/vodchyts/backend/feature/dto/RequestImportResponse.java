@@ -0,0 +1,15 @@
+package com.vodchyts.backend.feature.dto;
+
+import java.util.List;
+
+public record RequestImportResponse(
+        long totalRows,
+        long importedCount,
+        long failedCount,
+        List<RowError> errors,
+        boolean errorsTruncated,
+        long durationMs,
+        double rowsPerSecond
+) {
+    public record RowError(long row, String message) {}
+}
@@ -35,5 +35,7 @@ public class Request {
     private LocalDateTime closedAt;
     @Column("IsOverdue")
     private Boolean isOverdue;
+    @Column("Deadline")
+    private LocalDateTime deadline;
 
 }
\ No newline at end of file
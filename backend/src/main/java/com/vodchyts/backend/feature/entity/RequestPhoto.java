@@ -6,6 +6,8 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Column;
 import org.springframework.data.relational.core.mapping.Table;
 
+import java.time.LocalDateTime;
+
 @Setter
 @Getter
 @Table("RequestPhotos")
@@ -15,7 +17,16 @@ public class RequestPhoto {
     private Integer requestPhotoID;
     @Column("RequestID")
     private Integer requestID;
+    // Заполнено только у строк, еще не перенесенных в файловое хранилище
     @Column("ImageData")
     private byte[] imageData;
+    @Column("ContentHash")
+    private String contentHash;
+    @Column("ContentType")
+    private String contentType;
+    @Column("SizeBytes")
+    private Long sizeBytes;
+    @Column("CreatedAt")
+    private LocalDateTime createdAt;
 
 }
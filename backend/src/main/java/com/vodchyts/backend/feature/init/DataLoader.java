@@ -6,6 +6,8 @@ import com.vodchyts.backend.feature.entity.User;
 import com.vodchyts.backend.feature.repository.ReactiveRoleRepository;
 import com.vodchyts.backend.feature.repository.ReactiveUrgencyCategoryRepository;
 import com.vodchyts.backend.feature.repository.ReactiveUserRepository;
+import com.vodchyts.backend.feature.service.RequestReadModelService;
+import com.vodchyts.backend.feature.service.ReferenceDataService;
 import com.vodchyts.backend.feature.service.RequestUpdateService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
@@ -20,6 +22,8 @@ public class DataLoader implements CommandLineRunner {
     private final ReactiveUrgencyCategoryRepository urgencyCategoryRepository;
     private final ReactiveUserRepository userRepository;
     private final RequestUpdateService requestUpdateService;
+    private final RequestReadModelService readModelService;
+    private final ReferenceDataService referenceData;
     private final PasswordEncoder passwordEncoder;
 
     @Value("${initial.admin.login}")
@@ -32,11 +36,15 @@ public class DataLoader implements CommandLineRunner {
                       ReactiveUrgencyCategoryRepository urgencyCategoryRepository,
                       ReactiveUserRepository userRepository,
                       RequestUpdateService requestUpdateService,
+                      RequestReadModelService readModelService,
+                      ReferenceDataService referenceData,
                       PasswordEncoder passwordEncoder) {
         this.reactiveRoleRepository = reactiveRoleRepository;
         this.urgencyCategoryRepository = urgencyCategoryRepository;
         this.userRepository = userRepository;
         this.requestUpdateService = requestUpdateService;
+        this.readModelService = readModelService;
+        this.referenceData = referenceData;
         this.passwordEncoder = passwordEncoder;
     }
 
@@ -55,6 +63,8 @@ public class DataLoader implements CommandLineRunner {
 
         initialDataLoading
                 .then(createAdminUserIfNotExists())
+                .then(readModelService.rebuild())
+                .then(referenceData.reload())
                 .then(requestUpdateService.updateOverdueStatus())
                 .doOnError(err -> System.err.println("Error during application startup initialization: " + err.getMessage()))
                 .doOnSuccess(v -> System.out.println("Initial data, admin user and request statuses initialization completed"))
@@ -7,13 +7,20 @@ import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Flux; // Добавить
-import reactor.util.function.Tuple2; // Добавить
-
-import java.util.List;
 
 @Repository
 public interface ReactiveRequestPhotoRepository extends ReactiveCrudRepository<RequestPhoto, Integer> {
     Flux<RequestPhoto> findByRequestID(Integer requestID);
     Mono<Long> countByRequestID(Integer requestID);
-}
\ No newline at end of file
+    Mono<Boolean> existsByRequestIDAndContentHash(Integer requestID, String contentHash);
+
+    // Без ImageData: блоб старых строк не читается, пока он не нужен
+    @Query("SELECT RequestPhotoID, RequestID, ContentHash, ContentType, SizeBytes, CreatedAt FROM RequestPhotos WHERE RequestPhotoID = :id")
+    Mono<RequestPhoto> findMetadataById(@Param("id") Integer id);
+
+    @Query("SELECT RequestPhotoID, RequestID, ContentHash, ContentType, SizeBytes, CreatedAt FROM RequestPhotos WHERE RequestID = :requestId ORDER BY RequestPhotoID")
+    Flux<RequestPhoto> findMetadataByRequestID(@Param("requestId") Integer requestId);
+
+    @Query("SELECT RequestPhotoID FROM RequestPhotos WHERE RequestID = :requestId ORDER BY RequestPhotoID")
+    Flux<Integer> findIdsByRequestID(@Param("requestId") Integer requestId);
+}
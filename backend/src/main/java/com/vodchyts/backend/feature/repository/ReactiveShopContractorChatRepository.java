@@ -1,7 +1,6 @@
 package com.vodchyts.backend.feature.repository;
 
 import com.vodchyts.backend.feature.entity.ShopContractorChat;
-import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Mono;
@@ -11,17 +10,4 @@ public interface ReactiveShopContractorChatRepository extends ReactiveCrudReposi
     Mono<Boolean> existsByShopIDAndContractorID(Integer shopId, Integer contractorId);
     Mono<Boolean> existsByShopIDAndContractorIDAndShopContractorChatIDNot(Integer shopId, Integer contractorId, Integer currentId);
 
-    @Query("""
-        SELECT TOP 1 scc.TelegramID 
-        FROM ShopContractorChats scc
-        JOIN Requests r ON r.ShopID = scc.ShopID 
-        WHERE r.RequestID = :requestId 
-        AND (
-            (r.AssignedContractorID IS NOT NULL AND scc.ContractorID = r.AssignedContractorID)
-            OR
-            (scc.ContractorID IS NULL)
-        )
-        ORDER BY scc.ContractorID DESC
-    """)
-    Mono<Long> findTelegramIdByRequestId(Integer requestId);
 }
\ No newline at end of file
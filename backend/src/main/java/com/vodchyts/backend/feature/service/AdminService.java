@@ -19,6 +19,7 @@ import io.r2dbc.spi.RowMetadata;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -41,13 +42,19 @@ public class AdminService {
     private final PasswordValidator passwordValidator;
     private final DatabaseClient databaseClient;
     private final UpdateBroadcaster updateBroadcaster;
+    private final RequestReadModelService readModelService;
+    private final TransactionalOperator transactionalOperator;
+    private final ListCountCache countCache;
+    private final UserDirectoryService userDirectory;
 
     public AdminService(ReactiveUserRepository userRepository,
                         ReactiveRoleRepository roleRepository,
                         ReactiveRequestRepository requestRepository, ReactiveShopRepository shopRepository,
                         PasswordEncoder passwordEncoder,
                         PasswordValidator passwordValidator,
-                        DatabaseClient databaseClient, UpdateBroadcaster updateBroadcaster) {
+                        DatabaseClient databaseClient, UpdateBroadcaster updateBroadcaster,
+                        RequestReadModelService readModelService, TransactionalOperator transactionalOperator,
+                        ListCountCache countCache, UserDirectoryService userDirectory) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.requestRepository = requestRepository;
@@ -56,6 +63,10 @@ public class AdminService {
         this.passwordValidator = passwordValidator;
         this.databaseClient = databaseClient;
         this.updateBroadcaster = updateBroadcaster;
+        this.readModelService = readModelService;
+        this.transactionalOperator = transactionalOperator;
+        this.countCache = countCache;
+        this.userDirectory = userDirectory;
     }
 
     public Mono<User> createUser(CreateUserRequest request) {
@@ -86,7 +97,10 @@ public class AdminService {
                                 return userRepository.save(user);
                             });
                 })
-                .doOnSuccess(v -> updateBroadcaster.publish("USERS_UPDATED"));
+                .doOnSuccess(v -> {
+                    if (v != null) userDirectory.invalidate(v.getUserID());
+                    updateBroadcaster.publish("USERS_UPDATED");
+                });
     }
 
     public static final BiFunction<Row, RowMetadata, UserResponse> USER_MAPPING_FUNCTION = (row, rowMetaData) -> new UserResponse(
@@ -116,11 +130,13 @@ public class AdminService {
         }
 
         String countSql = "SELECT COUNT(*) FROM (" + sqlBuilder.toString() + ") as count_subquery";
-        DatabaseClient.GenericExecuteSpec countSpec = databaseClient.sql(countSql);
-        for (Map.Entry<String, Object> entry : bindings.entrySet()) {
-            countSpec = countSpec.bind(entry.getKey(), entry.getValue());
-        }
-        Mono<Long> countMono = countSpec.map(row -> row.get(0, Long.class)).one();
+        Mono<ListCountCache.Total> countMono = countCache.count(ListCountCache.USERS, ListCountCache.filterKey(List.of(), bindings), () -> {
+            DatabaseClient.GenericExecuteSpec countSpec = databaseClient.sql(countSql);
+            for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+                countSpec = countSpec.bind(entry.getKey(), entry.getValue());
+            }
+            return countSpec.map(row -> row.get(0, Long.class)).one();
+        });
 
         sqlBuilder.append(parseSortToSql(sort));
         sqlBuilder.append(" OFFSET ").append((long) page * size).append(" ROWS FETCH NEXT ").append(size).append(" ROWS ONLY");
@@ -135,9 +151,9 @@ public class AdminService {
         return Mono.zip(resultFlux.collectList(), countMono)
                 .map(tuple -> {
                     List<UserResponse> content = tuple.getT1();
-                    long total = tuple.getT2();
+                    long total = tuple.getT2().value();
                     int totalPages = (total == 0) ? 0 : (int) Math.ceil((double) total / size);
-                    return new PagedResponse<>(content, page, total, totalPages);
+                    return new PagedResponse<>(content, page, total, totalPages, tuple.getT2().cached());
                 });
     }
 
@@ -183,7 +199,10 @@ public class AdminService {
                                     return userRepository.delete(userToDelete);
                                 })
                 )
-                .doOnSuccess(v -> updateBroadcaster.publish("USERS_UPDATED"));
+                .doOnSuccess(v -> {
+                    userDirectory.invalidate(userId);
+                    updateBroadcaster.publish("USERS_UPDATED");
+                });
     }
 
     public Mono<UserResponse> updateUser(Integer userId, UpdateUserRequest request) {
@@ -255,7 +274,10 @@ public class AdminService {
                     }
                     return userMono;
                 })
-                .flatMap(userRepository::save)
+                .flatMap(user -> userRepository.save(user)
+                        .flatMap(saved -> readModelService.refreshByContractor(userId).thenReturn(saved))
+                        .as(transactionalOperator::transactional))
+                .doOnSuccess(v -> userDirectory.invalidate(userId))
                 .flatMap(this::mapUserToUserResponse)
                 .doOnSuccess(v -> updateBroadcaster.publish("USERS_UPDATED"));
     }
@@ -6,6 +6,9 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.function.BiFunction;
+
 @Component
 public class AuditHelper {
 
@@ -27,6 +30,23 @@ public class AuditHelper {
         String endpoint = request.getURI().getPath();
         String method = request.getMethod().name();
 
+        return withActor(request, (userID, userLogin) -> auditService.audit(action, tableName, recordID, oldValue, newValue,
+                userID, userLogin, ipAddress, userAgent, endpoint, method));
+    }
+
+    public Mono<Void> auditUpdateBatch(String tableName, List<AuditService.Entry> entries, ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        String ipAddress = getClientIP(request);
+        String userAgent = request.getHeaders().getFirst("User-Agent");
+        String endpoint = request.getURI().getPath();
+        String method = request.getMethod().name();
+
+        return withActor(request, (userID, userLogin) -> auditService.auditBatch("UPDATE", tableName, entries,
+                userID, userLogin, ipAddress, userAgent, endpoint, method));
+    }
+
+    // Определяет пользователя по токену запроса и передает его ID и логин в запись аудита
+    private Mono<Void> withActor(ServerHttpRequest request, BiFunction<Integer, String, Mono<Void>> writer) {
         String authHeader = request.getHeaders().getFirst("Authorization");
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String token = authHeader.substring(7);
@@ -34,15 +54,10 @@ public class AuditHelper {
                 if (jwtUtils.validateToken(token)) {
                     String userLogin = jwtUtils.getUsernameFromToken(token);
                     return userService.findByLogin(userLogin)
-                            .flatMap(user -> {
-                                Integer userID = user.getUserID();
-                                return auditService.audit(action, tableName, recordID, oldValue, newValue,
-                                        userID, userLogin, ipAddress, userAgent, endpoint, method);
-                            })
+                            .flatMap(user -> writer.apply(user.getUserID(), userLogin))
                             .onErrorResume(e -> {
                                 // Если не удалось найти пользователя, логируем без userID
-                                return auditService.audit(action, tableName, recordID, oldValue, newValue,
-                                        null, userLogin, ipAddress, userAgent, endpoint, method);
+                                return writer.apply(null, userLogin);
                             });
                 }
             } catch (Exception e) {
@@ -50,8 +65,7 @@ public class AuditHelper {
             }
         }
 
-        return auditService.audit(action, tableName, recordID, oldValue, newValue,
-                null, null, ipAddress, userAgent, endpoint, method);
+        return writer.apply(null, null);
     }
 
     public Mono<Void> auditCreate(String tableName, Integer recordID, Object newValue, ServerWebExchange exchange) {
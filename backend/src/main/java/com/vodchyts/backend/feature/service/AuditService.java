@@ -5,10 +5,14 @@ import com.vodchyts.backend.feature.entity.AuditLog;
 import com.vodchyts.backend.feature.repository.ReactiveAuditLogRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -17,10 +21,17 @@ public class AuditService {
     private static final Logger log = LoggerFactory.getLogger(AuditService.class);
     private final ReactiveAuditLogRepository auditRepository;
     private final ObjectMapper objectMapper;
+    private final DatabaseClient databaseClient;
 
-    public AuditService(ReactiveAuditLogRepository auditRepository, ObjectMapper objectMapper) {
+    // Общие поля пакета передаются одним набором параметров, на строку приходится только RecordID и Changes
+    private static final int BATCH_ROWS = 500;
+
+    public record Entry(Integer recordID, Object oldValue, Object newValue) {}
+
+    public AuditService(ReactiveAuditLogRepository auditRepository, ObjectMapper objectMapper, DatabaseClient databaseClient) {
         this.auditRepository = auditRepository;
         this.objectMapper = objectMapper;
+        this.databaseClient = databaseClient;
     }
 
     public Mono<Void> audit(String action, String tableName, Integer recordID, 
@@ -39,20 +50,75 @@ public class AuditService {
         auditEntry.setRequestMethod(requestMethod);
         auditEntry.setLogDate(LocalDateTime.now());
 
+        auditEntry.setChanges(serializeChanges(oldValue, newValue));
+
+        return auditRepository.save(auditEntry)
+                .doOnError(error -> log.error("Failed to save audit entry", error))
+                .then();
+    }
+
+    /**
+     * Записывает много записей аудита одного действия многострочными INSERT вместо сохранения по одной.
+     */
+    public Mono<Void> auditBatch(String action, String tableName, List<Entry> entries,
+                                 Integer userID, String userLogin, String ipAddress,
+                                 String userAgent, String endpoint, String requestMethod) {
+        if (entries.isEmpty()) {
+            return Mono.empty();
+        }
+        LocalDateTime now = LocalDateTime.now();
+
+        List<List<Entry>> chunks = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i += BATCH_ROWS) {
+            chunks.add(entries.subList(i, Math.min(i + BATCH_ROWS, entries.size())));
+        }
+
+        return Flux.fromIterable(chunks)
+                .concatMap(chunk -> {
+                    StringBuilder sql = new StringBuilder("INSERT INTO AuditLog (TableName, Action, RecordID, UserID, UserLogin, LogDate, " +
+                            "Changes, IPAddress, UserAgent, Endpoint, RequestMethod) VALUES ");
+                    for (int i = 0; i < chunk.size(); i++) {
+                        if (i > 0) sql.append(", ");
+                        sql.append("(:tableName, :action, :recordId").append(i).append(", :userId, :userLogin, :logDate, :changes")
+                                .append(i).append(", :ip, :userAgent, :endpoint, :method)");
+                    }
+
+                    DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+                    spec = bindNullable(spec, "tableName", tableName, String.class);
+                    spec = bindNullable(spec, "action", action, String.class);
+                    spec = bindNullable(spec, "userId", userID, Integer.class);
+                    spec = bindNullable(spec, "userLogin", userLogin, String.class);
+                    spec = spec.bind("logDate", now);
+                    spec = bindNullable(spec, "ip", ipAddress, String.class);
+                    spec = bindNullable(spec, "userAgent", userAgent, String.class);
+                    spec = bindNullable(spec, "endpoint", endpoint, String.class);
+                    spec = bindNullable(spec, "method", requestMethod, String.class);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        Entry entry = chunk.get(i);
+                        spec = bindNullable(spec, "recordId" + i, entry.recordID(), Integer.class);
+                        spec = spec.bind("changes" + i, serializeChanges(entry.oldValue(), entry.newValue()));
+                    }
+                    return spec.fetch().rowsUpdated();
+                })
+                .doOnError(error -> log.error("Failed to save audit batch", error))
+                .then();
+    }
+
+    private String serializeChanges(Object oldValue, Object newValue) {
         try {
             Map<String, Object> changes = Map.of(
                     "oldValue", oldValue != null ? oldValue : "null",
                     "newValue", newValue != null ? newValue : "null"
             );
-            auditEntry.setChanges(objectMapper.writeValueAsString(changes));
+            return objectMapper.writeValueAsString(changes);
         } catch (Exception e) {
             log.warn("Failed to serialize audit changes", e);
-            auditEntry.setChanges("{\"error\":\"Failed to serialize changes\"}");
+            return "{\"error\":\"Failed to serialize changes\"}";
         }
+    }
 
-        return auditRepository.save(auditEntry)
-                .doOnError(error -> log.error("Failed to save audit entry", error))
-                .then();
+    private static <T> DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec, String name, T value, Class<T> type) {
+        return value != null ? spec.bind(name, value) : spec.bindNull(name, type);
     }
 
     public Mono<Void> auditCreate(String tableName, Integer recordID, Object newValue, 
@@ -0,0 +1,96 @@
+package com.vodchyts.backend.feature.service;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Копит текстовые уведомления и отправляет их боту пачками через /notify-batch:
+ * пачка уходит, когда набралось maxSize сообщений или прошло maxWait с момента первого из них.
+ * Бот отвечает результатом по каждому сообщению, и каждый отправитель получает свой результат отдельно;
+ * отказ бота по сообщению передается как WebClientResponseException с его кодом (и Retry-After для 429), как при одиночной отправке.
+ */
+public class BotBatchSender {
+
+    public record BatchItem(Long chatId, String text, Integer requestId, Integer commentId) {}
+
+    record ItemResult(boolean ok, int status, String error, Integer retryAfter) {}
+
+    private record Pending(BatchItem item, MonoSink<Void> sink) {}
+
+    private final WebClient webClient;
+    private final BotCircuitBreaker circuitBreaker;
+    private final Sinks.Many<Pending> queue = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable pipeline;
+
+    public BotBatchSender(WebClient webClient, BotCircuitBreaker circuitBreaker, int maxSize, Duration maxWait, int concurrency) {
+        this.webClient = webClient;
+        this.circuitBreaker = circuitBreaker;
+        this.pipeline = queue.asFlux()
+                .bufferTimeout(maxSize, maxWait, true)
+                .flatMap(this::post, concurrency)
+                .subscribe();
+    }
+
+    public Mono<Void> send(BatchItem item) {
+        return Mono.create(sink -> emit(new Pending(item, sink)));
+    }
+
+    public void dispose() {
+        pipeline.dispose();
+    }
+
+    // Sinks.Many не допускает одновременной записи из нескольких потоков
+    private synchronized void emit(Pending pending) {
+        Sinks.EmitResult result = queue.tryEmitNext(pending);
+        if (result.isFailure()) {
+            pending.sink().error(new IllegalStateException("Очередь пакетной отправки боту недоступна: " + result));
+        }
+    }
+
+    private Mono<Void> post(List<Pending> batch) {
+        return circuitBreaker.protect(webClient.post()
+                        .uri("/notify-batch")
+                        .bodyValue(batch.stream().map(Pending::item).toList())
+                        .retrieve()
+                        .bodyToMono(new ParameterizedTypeReference<List<ItemResult>>() {}))
+                .switchIfEmpty(Mono.error(new IllegalStateException("Бот вернул пустой ответ на пакет уведомлений")))
+                .doOnNext(results -> {
+                    for (int i = 0; i < batch.size(); i++) {
+                        MonoSink<Void> sink = batch.get(i).sink();
+                        ItemResult result = i < results.size() ? results.get(i) : null;
+                        if (result == null) {
+                            sink.error(new IllegalStateException("Бот не вернул результат для сообщения пакета"));
+                        } else if (result.ok()) {
+                            sink.success();
+                        } else {
+                            sink.error(rejected(result));
+                        }
+                    }
+                })
+                .doOnError(e -> batch.forEach(pending -> pending.sink().error(e)))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private static WebClientResponseException rejected(ItemResult result) {
+        int status = result.status() > 0 ? result.status() : HttpStatus.INTERNAL_SERVER_ERROR.value();
+        String error = result.error() != null ? result.error() : "";
+        HttpHeaders headers = new HttpHeaders();
+        if (result.retryAfter() != null) {
+            headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(result.retryAfter()));
+        }
+        return WebClientResponseException.create(status, error, headers,
+                error.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+}
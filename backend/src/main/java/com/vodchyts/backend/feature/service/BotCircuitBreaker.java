@@ -0,0 +1,160 @@
+package com.vodchyts.backend.feature.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * Предохранитель для вызовов бота. После нескольких подряд неудач (таймаут, ошибка соединения, 5xx) вызовы
+ * отклоняются сразу, без ожидания бота; по истечении паузы пропускается один пробный вызов, и по его итогу
+ * предохранитель закрывается или снова размыкается. Ответы 4xx означают, что бот жив, и сбоем не считаются.
+ */
+@Service
+public class BotCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(BotCircuitBreaker.class);
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    /** Вызов отклонен без обращения к боту; retryAfter - сколько еще продлится пауза предохранителя. */
+    public static class BotUnavailableException extends RuntimeException {
+        private final Duration retryAfter;
+
+        public BotUnavailableException(String message, Duration retryAfter) {
+            super(message);
+            this.retryAfter = retryAfter;
+        }
+
+        public Duration retryAfter() {
+            return retryAfter;
+        }
+    }
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt;
+    private boolean trialInFlight = false;
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Duration callTimeout;
+    private final LongSupplier clock;
+
+    private final Counter opened;
+    private final Counter halfOpened;
+    private final Counter rejected;
+
+    @Autowired
+    public BotCircuitBreaker(MeterRegistry meterRegistry,
+                             @Value("${bot.circuit.failure-threshold:5}") int failureThreshold,
+                             @Value("${bot.circuit.open-ms:30000}") long openMillis,
+                             @Value("${bot.client.call-timeout-ms:10000}") long callTimeoutMs) {
+        this(meterRegistry, failureThreshold, openMillis, callTimeoutMs, System::currentTimeMillis);
+    }
+
+    // Часы передаются отдельно, чтобы паузу разомкнутого состояния можно было проверить без ожидания
+    BotCircuitBreaker(MeterRegistry meterRegistry, int failureThreshold, long openMillis, long callTimeoutMs, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.callTimeout = Duration.ofMillis(callTimeoutMs);
+        this.clock = clock;
+
+        this.opened = Counter.builder("telegram.bot.circuit.opened").register(meterRegistry);
+        this.halfOpened = Counter.builder("telegram.bot.circuit.half_open").register(meterRegistry);
+        this.rejected = Counter.builder("telegram.bot.circuit.rejected").register(meterRegistry);
+        Gauge.builder("telegram.bot.circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("0 - закрыт, 1 - пробный вызов, 2 - разомкнут")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> protect(Mono<T> call) {
+        return protect(call, callTimeout);
+    }
+
+    // Срок ограничивает весь вызов целиком, включая ожидание соединения из пула и передачу тела запроса
+    public <T> Mono<T> protect(Mono<T> call, Duration deadline) {
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                rejected.increment();
+                return Mono.error(new BotUnavailableException("Бот недоступен, отправка временно приостановлена", remainingPause()));
+            }
+            return call.timeout(deadline)
+                    .doOnSuccess(value -> onSuccess())
+                    .doOnError(e -> {
+                        if (isBotFailure(e)) {
+                            onFailure(e);
+                        } else {
+                            onSuccess();
+                        }
+                    })
+                    .doOnCancel(this::releaseTrial);
+        });
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    // Пока идет пробный вызов, его исход станет известен не позже срока вызова
+    private synchronized Duration remainingPause() {
+        if (state == State.OPEN) {
+            return Duration.ofMillis(Math.max(0, openMillis - (clock.getAsLong() - openedAt)));
+        }
+        return state == State.HALF_OPEN ? callTimeout : Duration.ZERO;
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) return true;
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openMillis) return false;
+            state = State.HALF_OPEN;
+            halfOpened.increment();
+            log.info("Предохранитель бота: пробный вызов после паузы");
+        }
+        if (trialInFlight) return false;
+        trialInFlight = true;
+        return true;
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Предохранитель бота закрыт, бот снова отвечает");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void onFailure(Throwable e) {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+            opened.increment();
+            log.warn("Предохранитель бота разомкнут после {} неудачных вызовов подряд: {}", consecutiveFailures, e.getMessage());
+        }
+    }
+
+    private synchronized void releaseTrial() {
+        trialInFlight = false;
+    }
+
+    private static boolean isBotFailure(Throwable e) {
+        return e instanceof TimeoutException
+                || e instanceof WebClientRequestException
+                || (e instanceof WebClientResponseException response && response.getStatusCode().is5xxServerError());
+    }
+}
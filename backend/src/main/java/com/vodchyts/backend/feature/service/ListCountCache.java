@@ -0,0 +1,118 @@
+package com.vodchyts.backend.feature.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кэш общего количества строк для постраничных списков.
+ * Ключ - пространство имен списка плюс нормализованный фильтр (включая ограничения по роли).
+ * Сбрасывается по событиям UpdateBroadcaster и по TTL.
+ */
+@Service
+public class ListCountCache {
+
+    public static final String REQUESTS = "requests";
+    public static final String USERS = "users";
+    public static final String SHOPS = "shops";
+    public static final String CATEGORIES = "categories";
+    public static final String CHATS = "chats";
+
+    public record Total(long value, boolean cached) {}
+
+    private record Entry(long value, long generation, long expiresAt) {}
+
+    private static final Map<String, List<String>> INVALIDATED_BY = Map.of(
+            "REQUESTS_UPDATED", List.of(REQUESTS),
+            "USERS_UPDATED", List.of(USERS),
+            "SHOPS_UPDATED", List.of(SHOPS, CHATS),
+            "CATEGORIES_UPDATED", List.of(CATEGORIES),
+            "CHATS_UPDATED", List.of(CHATS)
+    );
+
+    private final UpdateBroadcaster updateBroadcaster;
+    // Порядок доступа: при переполнении вытесняются давно не запрошенные итоги, а не все сразу
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private Disposable subscription;
+
+    @Value("${pagination.count-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${pagination.count-cache.max-entries:1000}")
+    private int maxEntries;
+
+    public ListCountCache(UpdateBroadcaster updateBroadcaster) {
+        this.updateBroadcaster = updateBroadcaster;
+    }
+
+    @PostConstruct
+    public void init() {
+        subscription = updateBroadcaster.getMessages()
+                .subscribe(event -> INVALIDATED_BY.getOrDefault(event, List.of()).forEach(this::invalidate));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    public Mono<Total> count(String namespace, String filterKey, Supplier<Mono<Long>> loader) {
+        String key = namespace + "|" + filterKey;
+        long generation = generation(namespace).get();
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.generation() == generation && entry.expiresAt() > System.currentTimeMillis()) {
+            return Mono.just(new Total(entry.value(), true));
+        }
+
+        return loader.get()
+                .defaultIfEmpty(0L)
+                .map(value -> {
+                    // Если за время запроса пришла инвалидация, значение уже устарело и не кэшируется
+                    if (generation(namespace).get() == generation) {
+                        synchronized (entries) {
+                            entries.put(key, new Entry(value, generation, System.currentTimeMillis() + ttlSeconds * 1000));
+                        }
+                    }
+                    return new Total(value, false);
+                });
+    }
+
+    public void invalidate(String namespace) {
+        generation(namespace).incrementAndGet();
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.startsWith(namespace + "|"));
+        }
+    }
+
+    public static String filterKey(Collection<String> conditions, Map<String, Object> bindings) {
+        return String.join(" AND ", conditions) + "|" + new TreeMap<>(bindings);
+    }
+
+    private AtomicLong generation(String namespace) {
+        return generations.computeIfAbsent(namespace, n -> new AtomicLong());
+    }
+}
@@ -6,16 +6,18 @@ import com.vodchyts.backend.feature.dto.MessageTemplateResponse;
 import com.vodchyts.backend.feature.dto.SendMessageRequest;
 import com.vodchyts.backend.feature.entity.MessageRecipient;
 import com.vodchyts.backend.feature.entity.MessageTemplate;
+import com.vodchyts.backend.feature.entity.ShopContractorChat;
 import com.vodchyts.backend.feature.repository.ReactiveMessageRecipientRepository;
 import com.vodchyts.backend.feature.repository.ReactiveMessageTemplateRepository;
 import com.vodchyts.backend.feature.repository.ReactiveShopContractorChatRepository;
-import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.file.Files;
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
@@ -24,31 +26,44 @@ import java.util.stream.Collectors;
 @Service
 public class MessagingService {
 
+    private static final long MAX_IMAGE_SIZE = 5 * 1024 * 1024;
+
     private final ReactiveMessageTemplateRepository templateRepository;
     private final ReactiveMessageRecipientRepository recipientRepository;
     private final TransactionalOperator transactionalOperator;
     private final TelegramNotificationService notificationService;
     private final ReactiveShopContractorChatRepository chatRepository;
+    private final PhotoStorageService photoStorage;
 
     public MessagingService(ReactiveMessageTemplateRepository templateRepository,
                             ReactiveMessageRecipientRepository recipientRepository,
-                            TransactionalOperator transactionalOperator, TelegramNotificationService notificationService, ReactiveShopContractorChatRepository chatRepository) {
+                            TransactionalOperator transactionalOperator, TelegramNotificationService notificationService, ReactiveShopContractorChatRepository chatRepository,
+                            PhotoStorageService photoStorage) {
         this.templateRepository = templateRepository;
         this.recipientRepository = recipientRepository;
         this.transactionalOperator = transactionalOperator;
         this.notificationService = notificationService;
         this.chatRepository = chatRepository;
+        this.photoStorage = photoStorage;
     }
 
-    private Mono<byte[]> extractBytes(Mono<FilePart> filePartMono) {
+    // Загрузка пишется в хранилище потоково: размер и сигнатура проверяются по мере поступления чанков, хэш считается
+    // на лету. Файл без заявки сразу отмечается для очистки; пустая загрузка означает, что изображения нет
+    private Mono<PhotoStorageService.StoredPhoto> storeImage(Mono<FilePart> filePartMono) {
         return filePartMono
-                .flatMap(filePart -> DataBufferUtils.join(filePart.content())
-                        .map(dataBuffer -> {
-                            byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                            dataBuffer.read(bytes);
-                            DataBufferUtils.release(dataBuffer);
-                            return bytes;
-                        }))
+                .flatMap(filePart -> filePart.content()
+                        .switchOnFirst((first, content) -> first.hasValue()
+                                ? photoStorage.store(content, MAX_IMAGE_SIZE, filePart.filename()).flux()
+                                : Flux.empty())
+                        .singleOrEmpty())
+                .flatMap(stored -> photoStorage.releaseUnreferenced(stored).thenReturn(stored));
+    }
+
+    // Изображение шаблона хранится в самой строке MessageTemplates, поэтому уже проверенный файл читается целиком
+    private Mono<byte[]> extractBytes(Mono<FilePart> filePartMono) {
+        return storeImage(filePartMono)
+                .flatMap(stored -> Mono.fromCallable(() -> Files.readAllBytes(photoStorage.resolve(stored.contentHash())))
+                        .subscribeOn(Schedulers.boundedElastic()))
                 .defaultIfEmpty(new byte[0]);
     }
 
@@ -198,18 +213,15 @@ public class MessagingService {
     public Mono<Void> sendMessageWithImage(String message, List<Integer> recipientChatIds, Mono<FilePart> imageFile) {
         String safeCaption = notificationService.escapeMarkdown(message);
 
-        return extractBytes(imageFile).flatMap(imageData -> {
-
-            if (imageData.length == 0) {
-                return Mono.error(new IllegalArgumentException("Файл изображения пуст или не передан"));
-            }
-
-            return Flux.fromIterable(recipientChatIds)
-                    .flatMap(chatId -> chatRepository.findById(chatId))
-                    .flatMap(chat -> {
-                        return notificationService.sendPhoto(chat.getTelegramID(), safeCaption, imageData);
-                    })
-                    .then();
-        });
+        return storeImage(imageFile)
+                .switchIfEmpty(Mono.error(new IllegalArgumentException("Файл изображения пуст или не передан")))
+                // Изображение передается боту потоково из файла хранилища и загружается в Telegram один раз,
+                // остальным чатам уходит его file_id
+                .flatMap(stored -> chatRepository.findAllById(recipientChatIds)
+                        .mapNotNull(ShopContractorChat::getTelegramID)
+                        .distinct()
+                        .collectList()
+                        .flatMap(telegramIds -> notificationService.broadcastPhoto(telegramIds, safeCaption,
+                                photoStorage.resource(stored.contentHash()))));
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.vodchyts.backend.feature.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Очередь исходящих Telegram-уведомлений (таблица NotificationOutbox).
+ * Запись выполняется тем же соединением, что и бизнес-изменение, поэтому внутри transactionalOperator
+ * уведомление сохраняется атомарно вместе с ним. Доставкой занимается {@link NotificationOutboxDispatcher}.
+ */
+@Service
+public class NotificationOutbox {
+
+    public static final String KIND_TEXT = "Text";
+    public static final String KIND_COMMENT = "Comment";
+    public static final String KIND_PHOTO = "Photo";
+
+    /**
+     * Строка сводки по заявке. Одиночное уведомление уходит сразу; если в тот же чат по той же заявке уже было
+     * уведомление за последние window-seconds, открывается окно, и все уведомления окна доставляются
+     * одним сообщением-сводкой. mention - упоминание исполнителя для заголовка сводки.
+     */
+    public record Digest(Integer requestId, String mention, String line) {}
+
+    private final DatabaseClient databaseClient;
+
+    @Value("${notifications.digest.window-seconds:20}")
+    private int digestWindowSeconds;
+
+    public NotificationOutbox(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Mono<Void> enqueueText(Long chatId, String text) {
+        return enqueue(KIND_TEXT, chatId, text, null, null, null);
+    }
+
+    public Mono<Void> enqueueText(Long chatId, String text, Digest digest) {
+        return enqueue(KIND_TEXT, chatId, text, null, null, digest);
+    }
+
+    public Mono<Void> enqueueComment(Long chatId, String text, Integer commentId, Digest digest) {
+        return enqueue(KIND_COMMENT, chatId, text, commentId, null, digest);
+    }
+
+    public Mono<Void> enqueuePhoto(Long chatId, String caption, String contentHash, Digest digest) {
+        return enqueue(KIND_PHOTO, chatId, caption, null, contentHash, digest);
+    }
+
+    /**
+     * Ставит текст в очередь для всех чатов-получателей плановой рассылки одним запросом INSERT ... SELECT.
+     * Возвращает число поставленных сообщений; чаты без TelegramID пропускаются.
+     */
+    public Mono<Long> enqueueForNotificationRecipients(Integer notificationId, String text) {
+        return databaseClient.sql("INSERT INTO NotificationOutbox (Kind, ChatID, MessageText) " +
+                        "SELECT DISTINCT :kind, c.TelegramID, :text FROM NotificationRecipients r " +
+                        "JOIN ShopContractorChats c ON c.ShopContractorChatID = r.ShopContractorChatID " +
+                        "WHERE r.NotificationID = :notificationId AND c.TelegramID IS NOT NULL")
+                .bind("kind", KIND_TEXT)
+                .bind("text", text != null ? text : "")
+                .bind("notificationId", notificationId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private Mono<Void> enqueue(String kind, Long chatId, String text, Integer commentId, String contentHash, Digest digest) {
+        if (chatId == null) return Mono.empty();
+
+        // Уведомление присоединяется к открытому окну заявки; окна нет - открывает его, только если по заявке недавно
+        // уже было уведомление (началась серия правок), иначе уходит сразу и не ждет окна понапрасну
+        String nextAttemptAt = digest == null ? "SYSDATETIME()"
+                : "COALESCE((SELECT MIN(NextAttemptAt) FROM NotificationOutbox WHERE Status = 'Pending' AND Attempts = 0 " +
+                "AND ChatID = :chatId AND RequestID = :requestId AND DigestLine IS NOT NULL " +
+                "AND NextAttemptAt > SYSDATETIME() AND NextAttemptAt <= DATEADD(SECOND, :window, SYSDATETIME())), " +
+                "CASE WHEN EXISTS (SELECT 1 FROM NotificationOutbox WHERE ChatID = :chatId AND RequestID = :requestId " +
+                "AND DigestLine IS NOT NULL AND CreatedAt > DATEADD(SECOND, -1 * :window, SYSDATETIME())) " +
+                "THEN DATEADD(SECOND, :window, SYSDATETIME()) ELSE SYSDATETIME() END)";
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("INSERT INTO NotificationOutbox (Kind, ChatID, MessageText, RequestID, CommentID, " +
+                        "ContentHash, Mention, DigestLine, NextAttemptAt) " +
+                        "VALUES (:kind, :chatId, :text, :requestId, :commentId, :contentHash, :mention, :digestLine, " + nextAttemptAt + ")")
+                .bind("kind", kind)
+                .bind("chatId", chatId)
+                .bind("text", text != null ? text : "");
+        spec = bindNullable(spec, "requestId", digest != null ? digest.requestId() : null, Integer.class);
+        spec = bindNullable(spec, "commentId", commentId, Integer.class);
+        spec = bindNullable(spec, "contentHash", contentHash, String.class);
+        spec = bindNullable(spec, "mention", digest != null ? digest.mention() : null, String.class);
+        spec = bindNullable(spec, "digestLine", digest != null ? digest.line() : null, String.class);
+        if (digest != null) {
+            spec = spec.bind("window", digestWindowSeconds);
+        }
+        return spec.fetch().rowsUpdated().then();
+    }
+
+    private static <T> DatabaseClient.GenericExecuteSpec bindNullable(DatabaseClient.GenericExecuteSpec spec, String name, T value, Class<T> type) {
+        return value != null ? spec.bind(name, value) : spec.bindNull(name, type);
+    }
+}
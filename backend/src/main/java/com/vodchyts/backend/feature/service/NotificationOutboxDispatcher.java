@@ -0,0 +1,411 @@
+package com.vodchyts.backend.feature.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновая доставка уведомлений из NotificationOutbox в бота.
+ * Пачка строк захватывается на время аренды, которая продлевается, пока пачка не разобрана;
+ * сообщения одного чата уходят по порядку, разные чаты - параллельно.
+ * Неудачные попытки повторяются с экспоненциальной задержкой; ответ 429 и отказ разомкнутого предохранителя
+ * откладывают сообщение до конца паузы без расхода попыток.
+ * После исчерпания попыток или при окончательном отказе бота (400, 403, 404) сообщение помечается как Dead.
+ */
+@Service
+public class NotificationOutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationOutboxDispatcher.class);
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private static final int ALBUM_LIMIT = 10;
+
+    // Отказы, которые повтор не исправит: неверный запрос, бот исключен из чата, чат не найден
+    private static final Set<Integer> PERMANENT_REJECTIONS = Set.of(400, 403, 404);
+
+    record OutboxItem(Long id, String kind, Long chatId, String text, Integer requestId, Integer commentId,
+                              String contentHash, String mention, String digestLine, int attempts, LocalDateTime createdAt) {}
+
+    private final DatabaseClient databaseClient;
+    private final TelegramNotificationService notificationService;
+    private final PhotoStorageService photoStorage;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong pending = new AtomicLong();
+    private final Timer deliveryLatency;
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter dead;
+
+    @Value("${notifications.outbox.batch-size:100}")
+    private int batchSize;
+
+    // Темп отправки ограничивает TelegramSendGovernor, здесь задается лишь число одновременно обслуживаемых чатов
+    @Value("${notifications.outbox.concurrency:16}")
+    private int concurrency;
+
+    @Value("${notifications.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${notifications.outbox.base-backoff-seconds:5}")
+    private long baseBackoffSeconds;
+
+    @Value("${notifications.outbox.max-backoff-seconds:1800}")
+    private long maxBackoffSeconds;
+
+    @Value("${notifications.outbox.lease-seconds:120}")
+    private int leaseSeconds;
+
+    @Value("${notifications.outbox.retention-days:7}")
+    private int retentionDays;
+
+    public NotificationOutboxDispatcher(DatabaseClient databaseClient, TelegramNotificationService notificationService,
+                                        PhotoStorageService photoStorage, MeterRegistry meterRegistry) {
+        this.databaseClient = databaseClient;
+        this.notificationService = notificationService;
+        this.photoStorage = photoStorage;
+
+        this.deliveryLatency = Timer.builder("notifications.outbox.delivery.latency")
+                .description("Время от постановки уведомления в очередь до доставки боту")
+                .register(meterRegistry);
+        this.sent = Counter.builder("notifications.outbox.sent").register(meterRegistry);
+        this.retried = Counter.builder("notifications.outbox.retried").register(meterRegistry);
+        this.dead = Counter.builder("notifications.outbox.dead").register(meterRegistry);
+        Gauge.builder("notifications.outbox.pending", pending, AtomicLong::get).register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.outbox.poll-interval-ms:2000}")
+    public void dispatchPending() {
+        // Следующий опрос не начинается, пока не разобрана предыдущая пачка
+        if (!running.compareAndSet(false, true)) return;
+        dispatch()
+                .doFinally(signal -> running.set(false))
+                .subscribe(
+                        count -> {
+                            if (count > 0) log.debug("Доставлено уведомлений из очереди: {}", count);
+                        },
+                        error -> log.error("Ошибка доставки уведомлений из очереди.", error)
+                );
+    }
+
+    @Scheduled(cron = "0 15 2 * * *") // Каждый день в 2:15 ночи
+    public void cleanupSent() {
+        log.info("Запуск задачи по очистке доставленных уведомлений...");
+        databaseClient.sql("DELETE FROM NotificationOutbox WHERE Status = 'Sent' AND SentAt < :sentBefore")
+                .bind("sentBefore", LocalDateTime.now().minusDays(retentionDays))
+                .fetch()
+                .rowsUpdated()
+                .subscribe(
+                        count -> log.info("Очистка доставленных уведомлений завершена. Удалено {} записей.", count),
+                        error -> log.error("Ошибка во время очистки доставленных уведомлений.", error)
+                );
+    }
+
+    public Mono<Long> dispatch() {
+        return claimBatch()
+                .collectList()
+                .flatMap(batch -> {
+                    if (batch.isEmpty()) return Mono.just(0L);
+                    Map<Long, List<OutboxItem>> byChat = new LinkedHashMap<>();
+                    batch.forEach(item -> byChat.computeIfAbsent(item.chatId(), k -> new ArrayList<>()).add(item));
+
+                    Mono<Long> delivery = Flux.fromIterable(byChat.values())
+                            .flatMap(items -> Flux.fromIterable(toUnits(items)).concatMap(this::deliverUnit), concurrency)
+                            .reduce(0L, Long::sum);
+                    // Темп задает TelegramSendGovernor, и разбор пачки может занять больше одной аренды
+                    List<Long> ids = batch.stream().map(OutboxItem::id).toList();
+                    return Mono.using(() -> extendLeases(ids).subscribe(), disposable -> delivery, Disposable::dispose);
+                })
+                .flatMap(count -> refreshPending().thenReturn(count));
+    }
+
+    // Строки захватываются арендой ClaimedUntil: если процесс упадет во время отправки, они вернутся в работу после ее истечения
+    private Flux<OutboxItem> claimBatch() {
+        String sql = "WITH batch AS (SELECT TOP (:limit) * FROM NotificationOutbox WITH (ROWLOCK, UPDLOCK, READPAST) " +
+                "WHERE Status = 'Pending' AND NextAttemptAt <= SYSDATETIME() " +
+                "AND (ClaimedUntil IS NULL OR ClaimedUntil <= SYSDATETIME()) ORDER BY OutboxID) " +
+                "UPDATE batch SET ClaimedUntil = DATEADD(SECOND, :lease, SYSDATETIME()) " +
+                "OUTPUT inserted.OutboxID, inserted.Kind, inserted.ChatID, inserted.MessageText, inserted.RequestID, " +
+                "inserted.CommentID, inserted.ContentHash, inserted.Mention, inserted.DigestLine, inserted.Attempts, inserted.CreatedAt";
+
+        return databaseClient.sql(sql)
+                .bind("limit", batchSize)
+                .bind("lease", leaseSeconds)
+                .map((row, rowMetaData) -> new OutboxItem(
+                        row.get("OutboxID", Long.class),
+                        row.get("Kind", String.class),
+                        row.get("ChatID", Long.class),
+                        row.get("MessageText", String.class),
+                        row.get("RequestID", Integer.class),
+                        row.get("CommentID", Integer.class),
+                        row.get("ContentHash", String.class),
+                        row.get("Mention", String.class),
+                        row.get("DigestLine", String.class),
+                        row.get("Attempts", Integer.class),
+                        row.get("CreatedAt", LocalDateTime.class)))
+                .all()
+                // Порядок внутри чата должен совпадать с порядком постановки в очередь
+                .sort((a, b) -> Long.compare(a.id(), b.id()));
+    }
+
+    // Продлевает аренду строк пачки, по которым еще нет итога; markSent и markFailed снимают аренду, и такие строки не затрагиваются
+    private Flux<Long> extendLeases(List<Long> ids) {
+        Duration period = Duration.ofSeconds(Math.max(1, leaseSeconds / 3));
+        return Flux.interval(period, period)
+                .concatMap(tick -> databaseClient.sql("UPDATE NotificationOutbox SET ClaimedUntil = DATEADD(SECOND, :lease, SYSDATETIME()) " +
+                                "WHERE OutboxID IN (:ids) AND ClaimedUntil IS NOT NULL")
+                        .bind("lease", leaseSeconds)
+                        .bind("ids", ids)
+                        .fetch()
+                        .rowsUpdated()
+                        .onErrorResume(e -> {
+                            log.warn("Не удалось продлить аренду уведомлений из очереди: {}", e.getMessage());
+                            return Mono.just(0L);
+                        }));
+    }
+
+    // Уведомления со строкой сводки по одной заявке объединяются в одну единицу доставки на месте первого из них
+    private List<List<OutboxItem>> toUnits(List<OutboxItem> items) {
+        List<List<OutboxItem>> units = new ArrayList<>();
+        Map<Integer, List<OutboxItem>> digests = new HashMap<>();
+        for (OutboxItem item : items) {
+            if (item.digestLine() == null || item.requestId() == null) {
+                units.add(List.of(item));
+                continue;
+            }
+            List<OutboxItem> unit = digests.get(item.requestId());
+            if (unit == null) {
+                unit = new ArrayList<>();
+                digests.put(item.requestId(), unit);
+                units.add(unit);
+            }
+            unit.add(item);
+        }
+        return units;
+    }
+
+    private Mono<Long> deliverUnit(List<OutboxItem> unit) {
+        // Одиночное уведомление уходит в исходном виде, сводка нужна только для нескольких
+        return unit.size() == 1 ? complete(unit, send(unit.get(0))) : deliverDigest(unit);
+    }
+
+    /**
+     * Сводка по заявке: текстовые изменения и комментарии - одним сообщением (с кнопкой ответа на последний комментарий),
+     * фото - одним альбомом. Если текстовых строк нет, заголовок сводки становится подписью альбома.
+     */
+    private Mono<Long> deliverDigest(List<OutboxItem> unit) {
+        OutboxItem first = unit.get(0);
+        List<OutboxItem> texts = unit.stream().filter(item -> !NotificationOutbox.KIND_PHOTO.equals(item.kind())).toList();
+        List<OutboxItem> photos = unit.stream().filter(item -> NotificationOutbox.KIND_PHOTO.equals(item.kind())).toList();
+
+        String mention = unit.stream().map(OutboxItem::mention).filter(m -> m != null && !m.isBlank()).findFirst().orElse("");
+        String header = mention + "🧾 *СВОДКА ПО ЗАЯВКЕ \\#" + first.requestId() + "*\n\n";
+
+        Mono<Long> textMono = Mono.just(0L);
+        if (!texts.isEmpty()) {
+            List<String> lines = new ArrayList<>(texts.stream().map(OutboxItem::digestLine).toList());
+            if (!photos.isEmpty()) {
+                lines.add("📷 *Добавлено фото:* " + photos.size());
+            }
+            String message = header + String.join("\n\n", lines);
+            Optional<OutboxItem> lastComment = texts.stream()
+                    .filter(item -> NotificationOutbox.KIND_COMMENT.equals(item.kind()))
+                    .reduce((a, b) -> b);
+            Mono<Void> send = lastComment
+                    .map(comment -> notificationService.deliverCommentNotification(first.chatId(), message, comment.requestId(), comment.commentId()))
+                    .orElseGet(() -> notificationService.deliverNotification(first.chatId(), message));
+            textMono = complete(texts, send);
+        }
+
+        String caption = texts.isEmpty()
+                ? header + String.join("\n", photos.stream().map(OutboxItem::digestLine).distinct().toList())
+                : null;
+        Mono<Long> photoMono = photos.isEmpty() ? Mono.just(0L) : complete(photos, sendAlbum(first.chatId(), caption, photos));
+
+        return textMono.flatMap(textCount -> photoMono.map(photoCount -> textCount + photoCount));
+    }
+
+    // Результат отправки применяется ко всем уведомлениям единицы; возвращает число доставленных
+    private Mono<Long> complete(List<OutboxItem> items, Mono<Void> send) {
+        return send
+                .then(Flux.fromIterable(items).concatMap(this::markSent).then(Mono.just((long) items.size())))
+                .onErrorResume(e -> Flux.fromIterable(items).concatMap(item -> markFailed(item, e)).then(Mono.just(0L)));
+    }
+
+    private Mono<Void> send(OutboxItem item) {
+        return switch (item.kind()) {
+            case NotificationOutbox.KIND_COMMENT ->
+                    notificationService.deliverCommentNotification(item.chatId(), item.text(), item.requestId(), item.commentId());
+            case NotificationOutbox.KIND_PHOTO -> sendPhoto(item);
+            default -> notificationService.deliverNotification(item.chatId(), item.text());
+        };
+    }
+
+    // Фото, уже загруженное в Telegram, отправляется по сохраненному file_id; новый file_id запоминается у блоба
+    private Mono<Void> sendPhoto(OutboxItem item) {
+        String hash = item.contentHash();
+        return knownFileId(hash)
+                .flatMap(known -> notificationService.deliverPhoto(item.chatId(), item.text(), photoStorage.resource(hash), known.orElse(null))
+                        .flatMap(fileId -> rememberFileId(hash, known, fileId)))
+                .then();
+    }
+
+    // Альбом Telegram вмещает не больше 10 фото, поэтому длинные серии делятся на несколько альбомов; подпись - у первого
+    private Mono<Void> sendAlbum(Long chatId, String caption, List<OutboxItem> photos) {
+        List<String> hashes = photos.stream().map(OutboxItem::contentHash).distinct().toList();
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < hashes.size(); i += ALBUM_LIMIT) {
+            chunks.add(hashes.subList(i, Math.min(i + ALBUM_LIMIT, hashes.size())));
+        }
+
+        return Flux.range(0, chunks.size())
+                .concatMap(index -> {
+                    List<String> chunk = chunks.get(index);
+                    return Flux.fromIterable(chunk)
+                            .concatMap(this::knownFileId)
+                            .collectList()
+                            .flatMap(known -> {
+                                List<TelegramNotificationService.AlbumPhoto> album = new ArrayList<>();
+                                for (int i = 0; i < chunk.size(); i++) {
+                                    album.add(new TelegramNotificationService.AlbumPhoto(photoStorage.resource(chunk.get(i)), known.get(i).orElse(null)));
+                                }
+                                return notificationService.deliverAlbum(chatId, index == 0 ? caption : null, album)
+                                        .flatMapMany(fileIds -> Flux.range(0, Math.min(fileIds.size(), chunk.size()))
+                                                .concatMap(i -> rememberFileId(chunk.get(i), known.get(i), fileIds.get(i))))
+                                        .then();
+                            });
+                })
+                .then();
+    }
+
+    private Mono<Optional<String>> knownFileId(String hash) {
+        return databaseClient.sql("SELECT TelegramFileId FROM PhotoBlobs WHERE ContentHash = :hash")
+                .bind("hash", hash)
+                .map((row, rowMetaData) -> Optional.ofNullable(row.get("TelegramFileId", String.class)))
+                .one()
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    private Mono<Void> rememberFileId(String hash, Optional<String> known, String fileId) {
+        if (fileId == null || known.filter(fileId::equals).isPresent()) return Mono.empty();
+        return databaseClient.sql("UPDATE PhotoBlobs SET TelegramFileId = :fileId WHERE ContentHash = :hash")
+                .bind("fileId", fileId)
+                .bind("hash", hash)
+                .fetch()
+                .rowsUpdated()
+                .then();
+    }
+
+    private Mono<Void> markSent(OutboxItem item) {
+        return databaseClient.sql("UPDATE NotificationOutbox SET Status = 'Sent', Attempts = Attempts + 1, SentAt = SYSDATETIME(), " +
+                        "LastError = NULL, ClaimedUntil = NULL WHERE OutboxID = :id")
+                .bind("id", item.id())
+                .fetch()
+                .rowsUpdated()
+                .doOnSuccess(v -> {
+                    sent.increment();
+                    if (item.createdAt() != null) {
+                        deliveryLatency.record(Duration.between(item.createdAt(), LocalDateTime.now()));
+                    }
+                })
+                .then();
+    }
+
+    Mono<Void> markFailed(OutboxItem item, Throwable e) {
+        int status = e instanceof WebClientResponseException response ? response.getStatusCode().value() : 0;
+        boolean rejected = PERMANENT_REJECTIONS.contains(status);
+        // Ни ограничение частоты, ни разомкнутый предохранитель не говорят о сообщении ничего плохого:
+        // попытка не расходуется, иначе сбой бота длиннее серии повторов отправил бы всю очередь в Dead
+        long waitSeconds = -1;
+        if (status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            waitSeconds = retryAfterSeconds((WebClientResponseException) e);
+        } else if (e instanceof BotCircuitBreaker.BotUnavailableException unavailable) {
+            waitSeconds = (unavailable.retryAfter().toMillis() + 999) / 1000;
+        }
+        boolean postponed = waitSeconds >= 0;
+        int attempts = postponed ? item.attempts() : item.attempts() + 1;
+        String error = e.getMessage() != null && e.getMessage().length() > MAX_ERROR_LENGTH
+                ? e.getMessage().substring(0, MAX_ERROR_LENGTH)
+                : String.valueOf(e.getMessage());
+
+        if (rejected || attempts >= maxAttempts) {
+            log.error("Уведомление {} в чат {} не доставлено после {} попыток и перемещено в Dead: {}", item.id(), item.chatId(), attempts, error);
+            return databaseClient.sql("UPDATE NotificationOutbox SET Status = 'Dead', Attempts = :attempts, LastError = :error, " +
+                            "ClaimedUntil = NULL WHERE OutboxID = :id")
+                    .bind("attempts", attempts)
+                    .bind("error", error)
+                    .bind("id", item.id())
+                    .fetch()
+                    .rowsUpdated()
+                    .doOnSuccess(v -> dead.increment())
+                    .then();
+        }
+
+        long delaySeconds = postponed
+                ? Math.max(baseBackoffSeconds, waitSeconds)
+                : Math.min(maxBackoffSeconds, baseBackoffSeconds << Math.min(attempts - 1, 20));
+        log.warn("Уведомление {} в чат {} не доставлено (попытка {}), повтор через {} с: {}", item.id(), item.chatId(), attempts, delaySeconds, error);
+        return databaseClient.sql("UPDATE NotificationOutbox SET Attempts = :attempts, LastError = :error, " +
+                        "NextAttemptAt = DATEADD(SECOND, :delay, SYSDATETIME()), ClaimedUntil = NULL WHERE OutboxID = :id")
+                .bind("attempts", attempts)
+                .bind("error", error)
+                .bind("delay", delaySeconds)
+                .bind("id", item.id())
+                .fetch()
+                .rowsUpdated()
+                .doOnSuccess(v -> retried.increment())
+                .then();
+    }
+
+    // Retry-After допускает и число секунд, и HTTP-дату; без заголовка повтор идет с базовой задержкой
+    private static long retryAfterSeconds(WebClientResponseException e) {
+        String value = e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) return 0;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException notSeconds) {
+            try {
+                ZonedDateTime retryAt = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), retryAt).toSeconds());
+            } catch (DateTimeParseException notDate) {
+                return 0;
+            }
+        }
+    }
+
+    private Mono<Void> refreshPending() {
+        return databaseClient.sql("SELECT COUNT_BIG(*) AS Pending FROM NotificationOutbox WHERE Status = 'Pending'")
+                .map((row, rowMetaData) -> row.get("Pending", Long.class))
+                .one()
+                .doOnNext(pending::set)
+                .then();
+    }
+}
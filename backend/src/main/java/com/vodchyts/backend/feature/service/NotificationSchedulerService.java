@@ -3,16 +3,18 @@ package com.vodchyts.backend.feature.service;
 import com.vodchyts.backend.feature.entity.Notification;
 import com.vodchyts.backend.feature.entity.NotificationRecipient;
 import com.vodchyts.backend.feature.repository.ReactiveNotificationRecipientRepository;
-import com.vodchyts.backend.feature.repository.ReactiveShopContractorChatRepository;
 import org.quartz.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
@@ -116,23 +118,25 @@ public class NotificationSchedulerService {
     @Component
     public static class NotificationJob implements Job {
 
-        private ReactiveNotificationRecipientRepository recipientRepository;
-        private ReactiveShopContractorChatRepository chatRepository;
+        private static final Duration RUN_TIMEOUT = Duration.ofMinutes(2);
+
+        private DatabaseClient databaseClient;
         private TelegramNotificationService telegramService;
+        private NotificationOutbox outbox;
 
         @org.springframework.beans.factory.annotation.Autowired
-        public void setRecipientRepository(ReactiveNotificationRecipientRepository recipientRepository) {
-            this.recipientRepository = recipientRepository;
+        public void setDatabaseClient(DatabaseClient databaseClient) {
+            this.databaseClient = databaseClient;
         }
 
         @org.springframework.beans.factory.annotation.Autowired
-        public void setChatRepository(ReactiveShopContractorChatRepository chatRepository) {
-            this.chatRepository = chatRepository;
+        public void setTelegramService(TelegramNotificationService telegramService) {
+            this.telegramService = telegramService;
         }
 
         @org.springframework.beans.factory.annotation.Autowired
-        public void setTelegramService(TelegramNotificationService telegramService) {
-            this.telegramService = telegramService;
+        public void setOutbox(NotificationOutbox outbox) {
+            this.outbox = outbox;
         }
 
         @Override
@@ -154,13 +158,53 @@ public class NotificationSchedulerService {
             String fullMessage = "*" + safeTitle + "*\n\n" + safeMessage;
 
             logger.info("Начало рассылки уведомления ID={}", notificationId);
+            LocalDateTime startedAt = LocalDateTime.now();
+
+            // Получатели разворачиваются одним INSERT ... SELECT в очередь; доставку ведет диспетчер очереди
+            // со своими ограничениями, а задача дожидается постановки, чтобы Quartz знал исход запуска
+            try {
+                Long queued = outbox.enqueueForNotificationRecipients(notificationId, fullMessage).block(RUN_TIMEOUT);
+                int count = queued != null ? queued.intValue() : 0;
+                recordRun(notificationId, startedAt, count, 0, "Completed", null);
+                logger.info("Уведомление ID={} поставлено в очередь для {} чатов", notificationId, count);
+            } catch (RuntimeException e) {
+                logger.error("Ошибка рассылки уведомления ID={}: {}", notificationId, e.getMessage());
+                Long recipients = countRecipients(notificationId).onErrorReturn(0L).block(RUN_TIMEOUT);
+                recordRun(notificationId, startedAt, 0, recipients != null ? recipients.intValue() : 0, "Failed", e.getMessage());
+                throw new JobExecutionException(e);
+            }
+        }
 
-            recipientRepository.findByNotificationID(notificationId)
-                    .flatMap(recipient -> chatRepository.findById(recipient.getShopContractorChatID()))
-                    .flatMap(chat -> {
-                        return telegramService.sendNotification(chat.getTelegramID(), fullMessage);
-                    })
-                    .subscribe();
+        private Mono<Long> countRecipients(Integer notificationId) {
+            return databaseClient.sql("SELECT COUNT_BIG(DISTINCT c.TelegramID) AS cnt FROM NotificationRecipients r " +
+                            "JOIN ShopContractorChats c ON c.ShopContractorChatID = r.ShopContractorChatID " +
+                            "WHERE r.NotificationID = :notificationId AND c.TelegramID IS NOT NULL")
+                    .bind("notificationId", notificationId)
+                    .map((row, rowMetaData) -> row.get("cnt", Long.class))
+                    .one();
+        }
+
+        // Журнал запусков не должен ронять саму рассылку
+        private void recordRun(Integer notificationId, LocalDateTime startedAt, int queued, int failed, String status, String error) {
+            LocalDateTime finishedAt = LocalDateTime.now();
+            DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("INSERT INTO NotificationJobRuns " +
+                            "(NotificationID, StartedAt, FinishedAt, DurationMs, Queued, Failed, Status, Error) " +
+                            "VALUES (:notificationId, :startedAt, :finishedAt, :durationMs, :queued, :failed, :status, :error)")
+                    .bind("notificationId", notificationId)
+                    .bind("startedAt", startedAt)
+                    .bind("finishedAt", finishedAt)
+                    .bind("durationMs", Duration.between(startedAt, finishedAt).toMillis())
+                    .bind("queued", queued)
+                    .bind("failed", failed)
+                    .bind("status", status);
+            spec = error != null
+                    ? spec.bind("error", error.length() > 1000 ? error.substring(0, 1000) : error)
+                    : spec.bindNull("error", String.class);
+            try {
+                spec.fetch().rowsUpdated().block(RUN_TIMEOUT);
+            } catch (RuntimeException e) {
+                logger.warn("Не удалось записать запуск рассылки ID={}: {}", notificationId, e.getMessage());
+            }
         }
     }
 }
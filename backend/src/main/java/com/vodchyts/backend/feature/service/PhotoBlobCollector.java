@@ -0,0 +1,71 @@
+package com.vodchyts.backend.feature.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * Удаляет из хранилища файлы, на которые больше не ссылается ни одна строка RequestPhotos.
+ * Счетчик ссылок в PhotoBlobs ведет триггер; файл удаляется только после периода ожидания с момента освобождения.
+ * Строка блоба удаляется после файла: если файл оставлен (его только что загрузили заново), строка сохраняется,
+ * и следующая очистка проверит его снова.
+ */
+@Service
+public class PhotoBlobCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoBlobCollector.class);
+    // Держит список IN заметно ниже предела SQL Server в 2100 параметров
+    private static final int DELETE_BATCH = 500;
+
+    private final DatabaseClient databaseClient;
+    private final PhotoStorageService photoStorage;
+
+    @Value("${photos.gc.grace-minutes:60}")
+    private long graceMinutes;
+
+    public PhotoBlobCollector(DatabaseClient databaseClient, PhotoStorageService photoStorage) {
+        this.databaseClient = databaseClient;
+        this.photoStorage = photoStorage;
+    }
+
+    @Scheduled(cron = "0 30 3 * * *")
+    public void collectReleasedBlobs() {
+        collect().subscribe(
+                count -> log.info("Очистка хранилища фото завершена. Удалено фото: {}", count),
+                error -> log.error("Ошибка во время очистки хранилища фото.", error)
+        );
+    }
+
+    public Mono<Long> collect() {
+        Duration grace = Duration.ofMinutes(graceMinutes);
+        return databaseClient.sql("SELECT ContentHash FROM PhotoBlobs WHERE RefCount <= 0 AND ReleasedAt < :releasedBefore")
+                .bind("releasedBefore", LocalDateTime.now().minus(grace))
+                .map((row, rowMetaData) -> row.get("ContentHash", String.class))
+                .all()
+                .collectList()
+                .flatMapMany(Flux::fromIterable)
+                .concatMap(hash -> photoStorage.delete(hash, Instant.now().minus(grace))
+                        .onErrorResume(e -> {
+                            log.warn("Не удалось удалить файл фото {}: {}", hash, e.getMessage());
+                            return Mono.just(false);
+                        })
+                        .filter(Boolean::booleanValue)
+                        .map(removed -> hash))
+                .buffer(DELETE_BATCH)
+                // Строка удаляется, только если счетчик все еще нулевой: повторная ссылка, появившаяся после выборки, ее сохранит
+                .concatMap(hashes -> databaseClient.sql("DELETE FROM PhotoBlobs WHERE ContentHash IN (:hashes) AND RefCount <= 0")
+                        .bind("hashes", hashes)
+                        .fetch()
+                        .rowsUpdated())
+                .reduce(0L, Long::sum);
+    }
+}
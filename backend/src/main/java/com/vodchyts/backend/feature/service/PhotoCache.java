@@ -0,0 +1,232 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.feature.dto.PhotoContent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * LRU-кэш часто запрашиваемых фото, ограниченный суммарным объемом в байтах.
+ * get кэширует метаданные с ETag, не читая файл, чтобы на совпавший If-None-Match можно было ответить 304 без загрузки;
+ * содержимое небольших файлов (миниатюры, превью, еще не перенесенные из базы фото) читается в withPayload, только когда
+ * отдается ответ 200, и затем хранится целиком, по умолчанию вне кучи. Крупные оригиналы всегда отдаются из файла.
+ */
+@Service
+public class PhotoCache {
+
+    // Учетный вес записи без содержимого: ключ, метаданные, узел списка
+    private static final long ENTRY_OVERHEAD = 256;
+
+    public record Key(Integer photoId, String variant) {}
+
+    private record Entry(PhotoContent photo, ByteBuffer payload, long weight) {}
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes = 0;
+    // Увеличивается при каждой инвалидации, чтобы не сохранить запись, прочитанную до удаления фото
+    private long version = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final boolean offHeap;
+
+    public PhotoCache(MeterRegistry meterRegistry,
+                      @Value("${photos.cache.max-bytes:67108864}") long maxBytes,
+                      @Value("${photos.cache.max-entry-bytes:1048576}") long maxEntryBytes,
+                      @Value("${photos.cache.off-heap:true}") boolean offHeap) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.offHeap = offHeap;
+
+        FunctionCounter.builder("photos.cache.hits", hits, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("photos.cache.misses", misses, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("photos.cache.evictions", evictions, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("photos.cache.bytes", this, PhotoCache::usedBytes).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("photos.cache.entries", this, PhotoCache::size).register(meterRegistry);
+    }
+
+    public Mono<PhotoContent> get(Key key, Supplier<Mono<PhotoContent>> loader) {
+        return Mono.defer(() -> {
+            Entry cached = lookup(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return Mono.just(toContent(cached));
+            }
+            misses.incrementAndGet();
+            long loadVersion = currentVersion();
+            return loader.get()
+                    .doOnNext(photo -> {
+                        Entry entry = metadataEntry(photo);
+                        if (entry != null) put(key, entry, loadVersion);
+                    });
+        });
+    }
+
+    /**
+     * Фото с содержимым для ответа 200: небольшой файл читается один раз и сохраняется в записи кэша,
+     * крупный отдается как есть (из файла). Вызывается после проверки If-None-Match.
+     */
+    public Mono<PhotoContent> withPayload(Key key, PhotoContent photo) {
+        if (photo.resource() instanceof ByteBufferResource || photo.sizeBytes() > maxEntryBytes) {
+            return Mono.just(photo);
+        }
+        return Mono.defer(() -> {
+            long loadVersion = currentVersion();
+            return load(photo)
+                    .doOnNext(entry -> put(key, entry, loadVersion))
+                    .map(this::toContent);
+        });
+    }
+
+    public synchronized void invalidate(Integer photoId) {
+        version++;
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (Objects.equals(e.getKey().photoId(), photoId)) {
+                usedBytes -= e.getValue().weight();
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        version++;
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    // Фото из базы уже прочитано целиком, поэтому небольшое сохраняется сразу с содержимым, а крупное не кэшируется,
+    // чтобы запись не удерживала массив в куче; у файлов кэшируются только метаданные
+    private Entry metadataEntry(PhotoContent photo) {
+        if (photo.resource() instanceof ByteArrayResource array) {
+            return photo.sizeBytes() > maxEntryBytes ? null : payloadEntry(photo, array.getByteArray());
+        }
+        return new Entry(photo, null, ENTRY_OVERHEAD);
+    }
+
+    private Mono<Entry> load(PhotoContent photo) {
+        return Mono.fromCallable(() -> payloadEntry(photo, photo.resource() instanceof ByteArrayResource array
+                        ? array.getByteArray()
+                        : photo.resource().getContentAsByteArray()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Entry payloadEntry(PhotoContent photo, byte[] bytes) {
+        ByteBuffer payload = offHeap ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length);
+        payload.put(bytes).flip();
+        return new Entry(photo, payload.asReadOnlyBuffer(), ENTRY_OVERHEAD + bytes.length);
+    }
+
+    private PhotoContent toContent(Entry entry) {
+        PhotoContent photo = entry.photo();
+        if (entry.payload() == null) {
+            return photo;
+        }
+        return new PhotoContent(photo.photoId(), photo.contentHash(), photo.eTag(), photo.contentType(),
+                entry.payload().remaining(), new ByteBufferResource(entry.payload().duplicate()));
+    }
+
+    private synchronized Entry lookup(Key key) {
+        return entries.get(key);
+    }
+
+    private synchronized long currentVersion() {
+        return version;
+    }
+
+    private synchronized void put(Key key, Entry entry, long loadVersion) {
+        if (loadVersion != version || entry.weight() > maxBytes) return;
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            usedBytes -= previous.weight();
+        }
+        usedBytes += entry.weight();
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            usedBytes -= it.next().weight();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    private synchronized int size() {
+        return entries.size();
+    }
+
+    // Ресурс поверх буфера из кэша; каждый ответ читает собственную копию позиции буфера
+    private static final class ByteBufferResource extends AbstractResource {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferResource(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public String getDescription() {
+            return "кэшированное фото (" + buffer.remaining() + " байт)";
+        }
+
+        @Override
+        public long contentLength() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            ByteBuffer source = buffer.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return source.hasRemaining() ? source.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (!source.hasRemaining()) return -1;
+                    int count = Math.min(len, source.remaining());
+                    source.get(b, off, count);
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return source.remaining();
+                }
+            };
+        }
+
+        @Override
+        public byte[] getContentAsByteArray() throws IOException {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return bytes;
+        }
+    }
+}
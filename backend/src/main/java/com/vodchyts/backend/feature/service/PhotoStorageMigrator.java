@@ -0,0 +1,89 @@
+package com.vodchyts.backend.feature.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Фоновый перенос старых фото из RequestPhotos.ImageData в файловое хранилище.
+ * Строки обрабатываются небольшими пачками; после записи файла ImageData обнуляется.
+ */
+@Service
+public class PhotoStorageMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoStorageMigrator.class);
+
+    private final DatabaseClient databaseClient;
+    private final PhotoStorageService photoStorage;
+    private final PhotoThumbnailService thumbnails;
+    private final RequestReadModelService readModelService;
+
+    @Value("${photos.migration.batch-size:20}")
+    private int batchSize;
+
+    public PhotoStorageMigrator(DatabaseClient databaseClient, PhotoStorageService photoStorage, PhotoThumbnailService thumbnails,
+                                RequestReadModelService readModelService) {
+        this.databaseClient = databaseClient;
+        this.photoStorage = photoStorage;
+        this.thumbnails = thumbnails;
+        this.readModelService = readModelService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        migrate().subscribe(
+                count -> {
+                    if (count > 0) log.info("Перенесено фото в файловое хранилище: {}", count);
+                },
+                e -> log.error("Ошибка переноса фото в файловое хранилище", e)
+        );
+    }
+
+    public Mono<Long> migrate() {
+        return migrateBatch()
+                .expand(migrated -> migrated == batchSize ? migrateBatch() : Mono.empty())
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> migrateBatch() {
+        return databaseClient.sql("SELECT TOP (:limit) RequestPhotoID, ImageData FROM RequestPhotos " +
+                        "WHERE ContentHash IS NULL AND ImageData IS NOT NULL ORDER BY RequestPhotoID")
+                .bind("limit", batchSize)
+                .map((row, rowMetaData) -> Map.entry(row.get("RequestPhotoID", Integer.class), row.get("ImageData", byte[].class)))
+                .all()
+                .concatMap(entry -> photoStorage.store(entry.getValue(), "image/jpeg")
+                        .flatMap(stored -> databaseClient.sql("UPDATE RequestPhotos SET ContentHash = :hash, ContentType = :type, " +
+                                        "SizeBytes = :size, ImageData = NULL WHERE RequestPhotoID = :id AND ContentHash IS NULL")
+                                .bind("hash", stored.contentHash())
+                                .bind("type", stored.contentType())
+                                .bind("size", stored.sizeBytes())
+                                .bind("id", entry.getKey())
+                                .fetch()
+                                .rowsUpdated()
+                                .onErrorResume(PhotoStorageService::isDuplicateInRequest, e -> removeDuplicate(entry.getKey()))
+                                .then(thumbnails.generate(stored.contentHash()).onErrorReturn(false))))
+                .count();
+    }
+
+    // Такое же фото уже прикреплено к этой заявке, старая копия в ImageData больше не нужна; число фото в проекции пересчитывается
+    private Mono<Long> removeDuplicate(Integer requestPhotoId) {
+        log.info("Фото ID={} повторяет уже прикрепленное к заявке и удаляется при переносе", requestPhotoId);
+        return databaseClient.sql("SELECT RequestID FROM RequestPhotos WHERE RequestPhotoID = :id")
+                .bind("id", requestPhotoId)
+                .map((row, rowMetaData) -> row.get("RequestID", Integer.class))
+                .one()
+                .flatMap(requestId -> databaseClient.sql("DELETE FROM RequestPhotos WHERE RequestPhotoID = :id")
+                        .bind("id", requestPhotoId)
+                        .fetch()
+                        .rowsUpdated()
+                        .flatMap(deleted -> readModelService.refresh(requestId).thenReturn(deleted)))
+                .defaultIfEmpty(0L);
+    }
+}
@@ -0,0 +1,352 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Файловое хранилище фотографий, адресуемое по содержимому: файл лежит по пути root/ab/cd/&lt;sha256&gt;.
+ * Одинаковые изображения записываются на диск один раз, в RequestPhotos остаются только хэш и метаданные.
+ */
+@Service
+public class PhotoStorageService {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoStorageService.class);
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final String TMP_DIR = "tmp";
+    private static final int SIGNATURE_LENGTH = 4;
+    private static final String REQUEST_HASH_INDEX = "UQ_RequestPhotos_Request_ContentHash";
+
+    public record StoredPhoto(String contentHash, String contentType, long sizeBytes) {}
+
+    private final Path root;
+    // Холодное хранилище: пережатые копии фото давно закрытых заявок, оригиналы которых удалены
+    private final Path coldRoot;
+
+    @Value("${photos.storage.tmp-max-age-minutes:60}")
+    private long tmpMaxAgeMinutes;
+
+    private final DatabaseClient databaseClient;
+    private final PhotoCache photoCache;
+
+    public PhotoStorageService(@Value("${photos.storage.path:./data/photos}") String root,
+                               @Value("${photos.cold.path:./data/photos-cold}") String coldRoot,
+                               DatabaseClient databaseClient,
+                               PhotoCache photoCache) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.coldRoot = Paths.get(coldRoot).toAbsolutePath().normalize();
+        this.databaseClient = databaseClient;
+        this.photoCache = photoCache;
+    }
+
+    // Временные файлы загрузок, прерванных падением процесса, никто больше не удалит
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        sweepTempFiles(Instant.now().minus(Duration.ofMinutes(tmpMaxAgeMinutes))).subscribe(
+                count -> {
+                    if (count > 0) log.info("Удалено незавершенных временных файлов фото: {}", count);
+                },
+                e -> log.error("Ошибка очистки временных файлов фото", e)
+        );
+    }
+
+    public Mono<Integer> sweepTempFiles(Instant olderThan) {
+        return Mono.fromCallable(() -> {
+                    Path tmpDir = root.resolve(TMP_DIR);
+                    if (!Files.isDirectory(tmpDir)) return 0;
+                    int deleted = 0;
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(tmpDir, "*.tmp")) {
+                        for (Path file : files) {
+                            try {
+                                // Свежие файлы могут принадлежать загрузке, которая идет прямо сейчас
+                                if (Files.getLastModifiedTime(file).toInstant().isBefore(olderThan) && Files.deleteIfExists(file)) {
+                                    deleted++;
+                                }
+                            } catch (NoSuchFileException e) {
+                                // Загрузка завершилась и переименовала файл
+                            }
+                        }
+                    }
+                    return deleted;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Нарушение уникального индекса UQ_RequestPhotos_Request_ContentHash: это фото уже прикреплено к заявке
+     * параллельной загрузкой.
+     */
+    public static boolean isDuplicateInRequest(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains(REQUEST_HASH_INDEX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Mono<StoredPhoto> store(byte[] bytes, String declaredContentType) {
+        return Mono.fromCallable(() -> {
+                    String hash = sha256(bytes);
+                    Path target = resolve(hash);
+                    if (!Files.exists(target)) {
+                        Files.createDirectories(target.getParent());
+                        Files.createDirectories(root.resolve(TMP_DIR));
+                        // Пишем во временный файл и переименовываем, чтобы читатели никогда не видели недописанный файл
+                        Path tmp = Files.createTempFile(root.resolve(TMP_DIR), hash, ".tmp");
+                        try {
+                            Files.write(tmp, bytes);
+                            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                        } finally {
+                            Files.deleteIfExists(tmp);
+                        }
+                        log.debug("Фото {} записано в хранилище ({} байт)", hash, bytes.length);
+                    } else {
+                        touch(target);
+                    }
+                    String detected = detectContentType(bytes);
+                    return new StoredPhoto(hash, detected != null ? detected : declaredContentType, bytes.length);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(this::reviveIfCold);
+    }
+
+    /**
+     * Потоково записывает загружаемый файл во временный файл хранилища, не собирая его в памяти.
+     * Размер и сигнатура проверяются по мере поступления чанков, SHA-256 считается на лету;
+     * при превышении лимита или неверной сигнатуре загрузка прерывается, временный файл удаляется.
+     */
+    public Mono<StoredPhoto> store(Flux<DataBuffer> content, long maxBytes, String fileName) {
+        return Mono.defer(() -> {
+            UploadState state = new UploadState(maxBytes, fileName);
+            Path tmpDir = root.resolve(TMP_DIR);
+            return Mono.fromCallable(() -> {
+                        Files.createDirectories(tmpDir);
+                        return Files.createTempFile(tmpDir, "upload", ".tmp");
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(tmp -> DataBufferUtils.write(content.map(state::accept), tmp)
+                            .then(Mono.fromCallable(() -> state.finish(tmp)).subscribeOn(Schedulers.boundedElastic()))
+                            .doOnError(e -> deleteQuietly(tmp))
+                            .doOnCancel(() -> deleteQuietly(tmp)))
+                    .flatMap(this::reviveIfCold);
+        });
+    }
+
+    /**
+     * Содержимое, уже перенесенное в холодное хранилище, загружено заново и снова лежит оригиналом:
+     * блоб возвращается в Hot (иначе перенос его больше не выберет), а пережатая копия удаляется.
+     * Уровень в базе меняется до удаления копии, чтобы строка никогда не указывала на отсутствующий файл.
+     */
+    private Mono<StoredPhoto> reviveIfCold(StoredPhoto stored) {
+        Path cold = resolveCold(stored.contentHash());
+        return Mono.fromCallable(() -> Files.exists(cold) && Files.exists(resolve(stored.contentHash())))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(revive -> {
+                    if (!revive) return Mono.just(stored);
+                    return databaseClient.sql("UPDATE PhotoBlobs SET StorageTier = 'Hot', StoredSizeBytes = NULL, TieredAt = NULL " +
+                                    "WHERE ContentHash = :hash")
+                            .bind("hash", stored.contentHash())
+                            .fetch()
+                            .rowsUpdated()
+                            .then(Mono.fromCallable(() -> Files.deleteIfExists(cold)).subscribeOn(Schedulers.boundedElastic()))
+                            .doOnSuccess(deleted -> {
+                                photoCache.invalidateAll();
+                                log.info("Фото {} загружено повторно и возвращено из холодного хранилища", stored.contentHash());
+                            })
+                            .thenReturn(stored);
+                });
+    }
+
+    /**
+     * Файл, сохраненный не для заявки (изображение шаблона или рассылки), записывается в PhotoBlobs без ссылок:
+     * PhotoBlobCollector удалит его после периода ожидания, если к тому времени на то же содержимое не сошлется заявка.
+     * Если строка блоба уже есть, ею и так управляет счетчик ссылок, и она не меняется.
+     */
+    public Mono<Void> releaseUnreferenced(StoredPhoto photo) {
+        return databaseClient.sql("INSERT INTO PhotoBlobs (ContentHash, ContentType, SizeBytes, RefCount, ReleasedAt) " +
+                        "SELECT :hash, :contentType, :size, 0, SYSDATETIME() " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM PhotoBlobs WITH (UPDLOCK, HOLDLOCK) WHERE ContentHash = :hash)")
+                .bind("hash", photo.contentHash())
+                .bind("contentType", photo.contentType())
+                .bind("size", photo.sizeBytes())
+                .fetch()
+                .rowsUpdated()
+                // Без строки файл лишь останется на диске, поэтому ошибка не прерывает операцию
+                .onErrorResume(e -> {
+                    log.warn("Не удалось отметить фото {} для очистки: {}", photo.contentHash(), e.getMessage());
+                    return Mono.just(0L);
+                })
+                .then();
+    }
+
+    public Path resolve(String contentHash) {
+        if (contentHash == null || !HASH_PATTERN.matcher(contentHash).matches()) {
+            throw new IllegalArgumentException("Некорректный хэш фото: " + contentHash);
+        }
+        return root.resolve(contentHash.substring(0, 2)).resolve(contentHash.substring(2, 4)).resolve(contentHash);
+    }
+
+    public Path resolveCold(String contentHash) {
+        Path hot = resolve(contentHash);
+        return coldRoot.resolve(contentHash.substring(0, 2)).resolve(contentHash.substring(2, 4)).resolve(hot.getFileName() + ".jpg");
+    }
+
+    // Путь, по которому фото можно прочитать сейчас: оригинал, а если он перенесен в холодное хранилище - пережатая копия
+    public Path locate(String contentHash) {
+        Path hot = resolve(contentHash);
+        if (Files.exists(hot)) return hot;
+        Path cold = resolveCold(contentHash);
+        return Files.exists(cold) ? cold : hot;
+    }
+
+    public boolean isCold(Path located) {
+        return located.startsWith(coldRoot);
+    }
+
+    // Файловый ресурс отдается через ZeroCopyHttpOutputMessage (sendfile) без копирования в кучу
+    public Resource resource(String contentHash) {
+        return new FileSystemResource(locate(contentHash));
+    }
+
+    public static String detectContentType(byte[] head) {
+        if (head == null || head.length < 4) return null;
+        if (head[0] == (byte) 0xFF && head[1] == (byte) 0xD8 && head[2] == (byte) 0xFF) return "image/jpeg";
+        if (head[0] == (byte) 0x89 && head[1] == (byte) 0x50 && head[2] == (byte) 0x4E && head[3] == (byte) 0x47) return "image/png";
+        return null;
+    }
+
+    /**
+     * Удаляет файл вместе с его уменьшенными копиями (&lt;sha256&gt;_*) и холодной копией, если он не обновлялся позже
+     * notTouchedSince. Загрузка того же содержимого обновляет время файла, поэтому сборщик не удалит файл,
+     * на который вот-вот сошлется новая строка. Возвращает true, если файлов этого фото больше нет (в том числе если
+     * их не было), и false, если файл оставлен.
+     */
+    public Mono<Boolean> delete(String contentHash, Instant notTouchedSince) {
+        return Mono.fromCallable(() -> {
+                    Path original = resolve(contentHash);
+                    if (Files.exists(original) && Files.getLastModifiedTime(original).toInstant().isAfter(notTouchedSince)) {
+                        return false;
+                    }
+                    try (DirectoryStream<Path> siblings = Files.newDirectoryStream(original.getParent(), contentHash + "_*")) {
+                        for (Path sibling : siblings) {
+                            Files.deleteIfExists(sibling);
+                        }
+                    } catch (NoSuchFileException e) {
+                        // Каталога нет - нет и копий
+                    }
+                    Files.deleteIfExists(resolveCold(contentHash));
+                    Files.deleteIfExists(original);
+                    return true;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static void touch(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить временный файл {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(newDigest().digest(bytes));
+    }
+
+    // Состояние одной загрузки; чанки приходят последовательно, поэтому синхронизация не нужна
+    private final class UploadState {
+        private final long maxBytes;
+        private final String fileName;
+        private final MessageDigest digest = newDigest();
+        private final byte[] head = new byte[SIGNATURE_LENGTH];
+        private int headLength = 0;
+        private long size = 0;
+
+        UploadState(long maxBytes, String fileName) {
+            this.maxBytes = maxBytes;
+            this.fileName = fileName;
+        }
+
+        DataBuffer accept(DataBuffer buffer) {
+            int readable = buffer.readableByteCount();
+            size += readable;
+            if (size > maxBytes) {
+                DataBufferUtils.release(buffer);
+                throw new OperationNotAllowedException("Файл " + fileName + " превышает допустимый размер " + maxBytes / (1024 * 1024) + " МБ");
+            }
+            if (headLength < SIGNATURE_LENGTH) {
+                int take = Math.min(SIGNATURE_LENGTH - headLength, readable);
+                for (int i = 0; i < take; i++) {
+                    head[headLength++] = buffer.getByte(buffer.readPosition() + i);
+                }
+                if (headLength == SIGNATURE_LENGTH && detectContentType(head) == null) {
+                    DataBufferUtils.release(buffer);
+                    throw new OperationNotAllowedException("Файл " + fileName + " не является изображением JPEG или PNG");
+                }
+            }
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    digest.update(iterator.next());
+                }
+            }
+            return buffer;
+        }
+
+        StoredPhoto finish(Path tmp) throws IOException {
+            String contentType = detectContentType(head);
+            if (headLength < SIGNATURE_LENGTH || contentType == null) {
+                throw new OperationNotAllowedException("Файл " + fileName + " не является изображением JPEG или PNG");
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = resolve(hash);
+            if (Files.exists(target)) {
+                Files.deleteIfExists(tmp);
+                touch(target);
+            } else {
+                Files.createDirectories(target.getParent());
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return new StoredPhoto(hash, contentType, size);
+        }
+    }
+}
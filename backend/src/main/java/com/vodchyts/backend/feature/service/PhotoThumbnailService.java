@@ -0,0 +1,243 @@
+package com.vodchyts.backend.feature.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Уменьшенные JPEG-копии фотографий для галереи и бота.
+ * Копии лежат рядом с оригиналом (&lt;sha256&gt;_thumb, &lt;sha256&gt;_preview); в базе хранится только отметка
+ * PhotoBlobs.RenditionsReady о том, что фото уже обработано.
+ */
+@Service
+public class PhotoThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoThumbnailService.class);
+    private static final float JPEG_QUALITY = 0.8f;
+
+    public enum Rendition {
+        THUMB(200),
+        PREVIEW(800);
+
+        private final int maxSide;
+
+        Rendition(int maxSide) {
+            this.maxSide = maxSide;
+        }
+
+        public int maxSide() {
+            return maxSide;
+        }
+
+        // Пустое или неизвестное значение параметра size означает оригинал
+        public static Optional<Rendition> fromParam(String size) {
+            if (size == null || size.isBlank()) return Optional.empty();
+            return Arrays.stream(values())
+                    .filter(r -> r.name().equalsIgnoreCase(size.trim()))
+                    .findFirst();
+        }
+    }
+
+    private final PhotoStorageService photoStorage;
+    private final DatabaseClient databaseClient;
+
+    // Около 160 МБ под пиксели ARGB; PNG в пределах лимита размера файла может объявить куда большие размеры
+    @Value("${photos.max-decode-pixels:40000000}")
+    private long maxDecodePixels;
+
+    public PhotoThumbnailService(PhotoStorageService photoStorage, DatabaseClient databaseClient) {
+        this.photoStorage = photoStorage;
+        this.databaseClient = databaseClient;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        backfill().subscribe(
+                count -> {
+                    if (count > 0) log.info("Созданы миниатюры для {} фото", count);
+                },
+                e -> log.error("Ошибка создания миниатюр для существующих фото", e)
+        );
+    }
+
+    // Досоздает копии для фото, которые еще не проверялись; уже обработанные помечены в PhotoBlobs.RenditionsReady
+    public Mono<Long> backfill() {
+        return databaseClient.sql("SELECT ContentHash FROM PhotoBlobs WHERE RenditionsReady = 0 AND RefCount > 0")
+                .map((row, rowMetaData) -> row.get("ContentHash", String.class))
+                .all()
+                .concatMap(hash -> generate(hash)
+                        .onErrorResume(e -> {
+                            log.warn("Не удалось создать миниатюры для фото {}: {}", hash, e.getMessage());
+                            return Mono.just(false);
+                        }))
+                .filter(Boolean::booleanValue)
+                .count();
+    }
+
+    private enum Outcome { CREATED, UP_TO_DATE, UNAVAILABLE }
+
+    /**
+     * Создает все недостающие копии фото. Возвращает true, если была создана хотя бы одна.
+     * Копия не нужна, если оригинал и так не больше ее размера: это проверяется по заголовку файла, и такой
+     * оригинал не декодируется; нужные копии создаются из одного декодирования оригинала.
+     * Фото больше photos.max-decode-pixels не декодируется вовсе и остается без копий.
+     * Обработанное фото помечается в PhotoBlobs, чтобы при следующем запуске backfill его не проверял.
+     */
+    public Mono<Boolean> generate(String contentHash) {
+        return Mono.fromCallable(() -> {
+                    Rendition[] missing = Arrays.stream(Rendition.values())
+                            .filter(r -> !Files.exists(path(contentHash, r)))
+                            .toArray(Rendition[]::new);
+                    if (missing.length == 0) return Outcome.UP_TO_DATE;
+
+                    Path original = photoStorage.locate(contentHash);
+                    if (!Files.exists(original)) return Outcome.UNAVAILABLE;
+                    Dimension size = dimensions(original);
+                    if (size == null) {
+                        log.warn("Фото {} не удалось прочитать", contentHash);
+                        return Outcome.UNAVAILABLE;
+                    }
+                    Rendition[] needed = Arrays.stream(missing)
+                            .filter(r -> Math.max(size.width, size.height) > r.maxSide())
+                            .toArray(Rendition[]::new);
+                    if (needed.length == 0) return Outcome.UP_TO_DATE;
+                    if (!withinPixelLimit(size, maxDecodePixels)) {
+                        log.warn("Фото {} размером {}x{} больше лимита декодирования, миниатюры не создаются",
+                                contentHash, size.width, size.height);
+                        return Outcome.UP_TO_DATE;
+                    }
+
+                    BufferedImage source = ImageIO.read(original.toFile());
+                    if (source == null) {
+                        log.warn("Фото {} не удалось декодировать", contentHash);
+                        return Outcome.UNAVAILABLE;
+                    }
+                    for (Rendition rendition : needed) {
+                        write(scale(source, rendition.maxSide()), path(contentHash, rendition), JPEG_QUALITY);
+                    }
+                    return Outcome.CREATED;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(outcome -> outcome == Outcome.UNAVAILABLE
+                        ? Mono.just(false)
+                        : markReady(contentHash).thenReturn(outcome == Outcome.CREATED));
+    }
+
+    /**
+     * Путь к готовой копии. Если копии еще нет (фото перенесено мигратором после старта), она создается на лету;
+     * пусто, если копия не нужна (оригинал мал) или ее не удалось создать.
+     */
+    public Mono<Path> resolve(String contentHash, Rendition rendition) {
+        Path path = path(contentHash, rendition);
+        return Mono.fromCallable(() -> Files.exists(path))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(exists -> exists
+                        ? Mono.just(path)
+                        : generate(contentHash)
+                                .onErrorReturn(false)
+                                .filter(created -> Files.exists(path))
+                                .map(created -> path));
+    }
+
+    private Mono<Void> markReady(String contentHash) {
+        return databaseClient.sql("UPDATE PhotoBlobs SET RenditionsReady = 1 WHERE ContentHash = :hash AND RenditionsReady = 0")
+                .bind("hash", contentHash)
+                .fetch()
+                .rowsUpdated()
+                .onErrorResume(e -> {
+                    log.warn("Не удалось отметить миниатюры фото {}: {}", contentHash, e.getMessage());
+                    return Mono.just(0L);
+                })
+                .then();
+    }
+
+    // Размеры изображения из заголовка файла, без декодирования пикселей
+    static Dimension dimensions(Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Декодер сразу выделяет память под все пиксели, поэтому размер проверяется по заголовку до декодирования
+    static boolean withinPixelLimit(Dimension size, long maxPixels) {
+        return (long) size.width * size.height <= maxPixels;
+    }
+
+    public Path path(String contentHash, Rendition rendition) {
+        Path original = photoStorage.resolve(contentHash);
+        return original.resolveSibling(contentHash + "_" + rendition.name().toLowerCase());
+    }
+
+    static BufferedImage scale(BufferedImage source, int maxSide) {
+        double ratio = (double) maxSide / Math.max(source.getWidth(), source.getHeight());
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        // JPEG без альфа-канала: прозрачные области PNG заливаются белым
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    // Пишет JPEG без метаданных (EXIF исходного файла не переносится)
+    static void write(BufferedImage image, Path target, float quality) throws IOException {
+        Files.createDirectories(target.getParent());
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(tmp.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.vodchyts.backend.feature.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+
+/**
+ * Переносит фото заявок, закрытых дольше заданного срока, в холодное хранилище.
+ * Оригинал пережимается до ограниченного размера и качества JPEG (без EXIF) и удаляется из основного хранилища;
+ * после восстановления заявки фото продолжают отдаваться из холодной копии. Повторная загрузка того же содержимого
+ * возвращает его в основное хранилище (см. PhotoStorageService).
+ */
+@Service
+public class PhotoTieringService {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoTieringService.class);
+
+    private record Tiered(long bytesBefore, long bytesAfter, FileTime originalModifiedAt) {}
+
+    private final DatabaseClient databaseClient;
+    private final PhotoStorageService photoStorage;
+    private final PhotoCache photoCache;
+
+    @Value("${photos.tiering.closed-days:90}")
+    private int closedDays;
+
+    @Value("${photos.tiering.max-side:1600}")
+    private int maxSide;
+
+    @Value("${photos.tiering.quality:0.7}")
+    private float quality;
+
+    @Value("${photos.tiering.batch-size:500}")
+    private int batchSize;
+
+    @Value("${photos.max-decode-pixels:40000000}")
+    private long maxDecodePixels;
+
+    public PhotoTieringService(DatabaseClient databaseClient, PhotoStorageService photoStorage, PhotoCache photoCache) {
+        this.databaseClient = databaseClient;
+        this.photoStorage = photoStorage;
+        this.photoCache = photoCache;
+    }
+
+    @Scheduled(cron = "0 0 4 * * *") // Каждый день в 4:00 ночи
+    public void tierClosedRequestPhotos() {
+        log.info("Запуск задачи по переносу фото закрытых заявок в холодное хранилище...");
+        tier().subscribe(
+                count -> log.info("Перенос фото в холодное хранилище завершен. Перенесено {} фото.", count),
+                error -> log.error("Ошибка во время переноса фото в холодное хранилище.", error)
+        );
+    }
+
+    public Mono<Integer> tier() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        // Файл переносится, только если все ссылающиеся на него заявки закрыты дольше срока
+        String sql = "SELECT TOP (:limit) b.ContentHash FROM PhotoBlobs b " +
+                "WHERE b.StorageTier = 'Hot' AND b.RefCount > 0 AND NOT EXISTS (" +
+                "SELECT 1 FROM RequestPhotos p JOIN Requests r ON r.RequestID = p.RequestID " +
+                "WHERE p.ContentHash = b.ContentHash AND (r.Status <> 'Closed' OR r.ClosedAt IS NULL OR r.ClosedAt > :closedBefore)) " +
+                "ORDER BY b.CreatedAt";
+
+        return databaseClient.sql(sql)
+                .bind("limit", batchSize)
+                .bind("closedBefore", startedAt.minusDays(closedDays))
+                .map((row, rowMetaData) -> row.get("ContentHash", String.class))
+                .all()
+                .concatMap(hash -> moveToCold(hash)
+                        .onErrorResume(e -> {
+                            log.warn("Не удалось перенести фото {} в холодное хранилище: {}", hash, e.getMessage());
+                            return Mono.empty();
+                        }))
+                .collectList()
+                .flatMap(tiered -> {
+                    if (tiered.isEmpty()) return Mono.just(0);
+                    photoCache.invalidateAll();
+                    long before = tiered.stream().mapToLong(Tiered::bytesBefore).sum();
+                    long after = tiered.stream().mapToLong(Tiered::bytesAfter).sum();
+                    log.info("Холодное хранилище: освобождено {} КБ ({} -> {} байт)", (before - after) / 1024, before, after);
+                    return databaseClient.sql("INSERT INTO PhotoTieringRuns (StartedAt, FinishedAt, PhotosTiered, BytesBefore, BytesAfter) " +
+                                    "VALUES (:startedAt, :finishedAt, :count, :before, :after)")
+                            .bind("startedAt", startedAt)
+                            .bind("finishedAt", LocalDateTime.now())
+                            .bind("count", tiered.size())
+                            .bind("before", before)
+                            .bind("after", after)
+                            .fetch()
+                            .rowsUpdated()
+                            .thenReturn(tiered.size());
+                });
+    }
+
+    // Порядок важен: холодная копия пишется и фиксируется в базе до удаления оригинала, чтобы фото всегда было доступно.
+    // Если за время пережатия то же фото загрузили заново (время оригинала обновилось или появилась ссылка из
+    // незакрытой заявки), перенос отменяется и копия удаляется
+    private Mono<Tiered> moveToCold(String hash) {
+        return Mono.fromCallable(() -> recompress(hash))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(tiered -> Mono.fromCallable(() -> modifiedAt(hash).equals(tiered.originalModifiedAt()))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMap(unchanged -> !unchanged ? Mono.just(0L) : databaseClient.sql(
+                                        "UPDATE PhotoBlobs SET StorageTier = 'Cold', StoredSizeBytes = :size, TieredAt = SYSDATETIME() " +
+                                        "WHERE ContentHash = :hash AND StorageTier = 'Hot' AND NOT EXISTS (" +
+                                        "SELECT 1 FROM RequestPhotos p JOIN Requests r ON r.RequestID = p.RequestID " +
+                                        "WHERE p.ContentHash = :hash AND (r.Status <> 'Closed' OR r.ClosedAt IS NULL OR r.ClosedAt > :closedBefore))")
+                                .bind("size", tiered.bytesAfter())
+                                .bind("hash", hash)
+                                .bind("closedBefore", LocalDateTime.now().minusDays(closedDays))
+                                .fetch()
+                                .rowsUpdated())
+                        .flatMap(updated -> updated > 0
+                                ? Mono.fromCallable(() -> Files.deleteIfExists(photoStorage.resolve(hash)))
+                                        .subscribeOn(Schedulers.boundedElastic())
+                                        .thenReturn(tiered)
+                                : Mono.fromCallable(() -> Files.deleteIfExists(photoStorage.resolveCold(hash)))
+                                        .subscribeOn(Schedulers.boundedElastic())
+                                        .doOnNext(deleted -> log.info("Фото {} загружено повторно во время переноса, перенос отменен", hash))
+                                        .then(Mono.empty())));
+    }
+
+    private FileTime modifiedAt(String hash) throws IOException {
+        return Files.getLastModifiedTime(photoStorage.resolve(hash));
+    }
+
+    private Tiered recompress(String hash) throws Exception {
+        Path original = photoStorage.resolve(hash);
+        Path cold = photoStorage.resolveCold(hash);
+        FileTime modifiedAt = Files.getLastModifiedTime(original);
+        long bytesBefore = Files.size(original);
+
+        Dimension size = PhotoThumbnailService.dimensions(original);
+        if (size == null) {
+            throw new IllegalStateException("изображение не удалось прочитать");
+        }
+        if (!PhotoThumbnailService.withinPixelLimit(size, maxDecodePixels)) {
+            throw new IllegalStateException("изображение " + size.width + "x" + size.height + " больше лимита декодирования");
+        }
+        BufferedImage source = ImageIO.read(original.toFile());
+        if (source == null) {
+            throw new IllegalStateException("изображение не удалось декодировать");
+        }
+        int side = Math.min(maxSide, Math.max(source.getWidth(), source.getHeight()));
+        PhotoThumbnailService.write(PhotoThumbnailService.scale(source, side), cold, quality);
+        return new Tiered(bytesBefore, Files.size(cold), modifiedAt);
+    }
+}
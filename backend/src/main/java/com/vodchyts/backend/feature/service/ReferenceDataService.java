@@ -0,0 +1,121 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.feature.entity.Shop;
+import com.vodchyts.backend.feature.entity.ShopContractorChat;
+import com.vodchyts.backend.feature.entity.UrgencyCategory;
+import com.vodchyts.backend.feature.entity.WorkCategory;
+import com.vodchyts.backend.feature.repository.ReactiveShopContractorChatRepository;
+import com.vodchyts.backend.feature.repository.ReactiveShopRepository;
+import com.vodchyts.backend.feature.repository.ReactiveUrgencyCategoryRepository;
+import com.vodchyts.backend.feature.repository.ReactiveWorkCategoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Снимок справочников (магазины, виды работ, срочности, чаты) в памяти.
+ * Снимок неизменяемый и заменяется целиком; сервисы справочников вызывают reload() после каждого изменения.
+ */
+@Service
+public class ReferenceDataService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReferenceDataService.class);
+
+    public record Snapshot(long version,
+                           Map<Integer, Shop> shops,
+                           Map<Integer, WorkCategory> workCategories,
+                           Map<Integer, UrgencyCategory> urgencyCategories,
+                           Map<Integer, List<ShopContractorChat>> chatsByShop) {
+
+        public Optional<Shop> shop(Integer shopId) {
+            return Optional.ofNullable(shopId).map(shops::get);
+        }
+
+        public Optional<WorkCategory> workCategory(Integer workCategoryId) {
+            return Optional.ofNullable(workCategoryId).map(workCategories::get);
+        }
+
+        public Optional<UrgencyCategory> urgency(Integer urgencyId) {
+            return Optional.ofNullable(urgencyId).map(urgencyCategories::get);
+        }
+
+        public List<Integer> shopIdsManagedBy(Integer userId) {
+            return shops.values().stream()
+                    .filter(shop -> Objects.equals(shop.getUserID(), userId))
+                    .map(Shop::getShopID)
+                    .sorted()
+                    .toList();
+        }
+
+        // Чат конкретного подрядчика в магазине, иначе общий чат магазина (ContractorID IS NULL)
+        public Optional<Long> chatTelegramId(Integer shopId, Integer contractorId) {
+            List<ShopContractorChat> chats = chatsByShop.getOrDefault(shopId, List.of());
+            Optional<ShopContractorChat> specific = contractorId == null ? Optional.empty() : chats.stream()
+                    .filter(c -> contractorId.equals(c.getContractorID()))
+                    .findFirst();
+            return specific.or(() -> chats.stream().filter(c -> c.getContractorID() == null).findFirst())
+                    .map(ShopContractorChat::getTelegramID);
+        }
+    }
+
+    private final ReactiveShopRepository shopRepository;
+    private final ReactiveWorkCategoryRepository workCategoryRepository;
+    private final ReactiveUrgencyCategoryRepository urgencyCategoryRepository;
+    private final ReactiveShopContractorChatRepository chatRepository;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    public ReferenceDataService(ReactiveShopRepository shopRepository,
+                                ReactiveWorkCategoryRepository workCategoryRepository,
+                                ReactiveUrgencyCategoryRepository urgencyCategoryRepository,
+                                ReactiveShopContractorChatRepository chatRepository) {
+        this.shopRepository = shopRepository;
+        this.workCategoryRepository = workCategoryRepository;
+        this.urgencyCategoryRepository = urgencyCategoryRepository;
+        this.chatRepository = chatRepository;
+    }
+
+    public Mono<Snapshot> snapshot() {
+        return Mono.defer(() -> {
+            Snapshot snapshot = current.get();
+            return snapshot != null ? Mono.just(snapshot) : load();
+        });
+    }
+
+    public Mono<Void> reload() {
+        return load()
+                .doOnNext(snapshot -> log.debug("Справочники перезагружены, версия {}", snapshot.version()))
+                .then();
+    }
+
+    public Mono<Long> resolveChatTelegramId(Integer shopId, Integer contractorId) {
+        return snapshot().flatMap(s -> Mono.justOrEmpty(s.chatTelegramId(shopId, contractorId)));
+    }
+
+    private Mono<Snapshot> load() {
+        return Mono.defer(() -> {
+            // Версия берется до чтения: если параллельно стартовала более поздняя загрузка, ее результат не будет перезаписан
+            long version = versions.incrementAndGet();
+            return Mono.zip(
+                            shopRepository.findAll().collectMap(Shop::getShopID),
+                            workCategoryRepository.findAll().collectMap(WorkCategory::getWorkCategoryID),
+                            urgencyCategoryRepository.findAll().collectMap(UrgencyCategory::getUrgencyID),
+                            chatRepository.findAll().collect(Collectors.groupingBy(ShopContractorChat::getShopID)))
+                    .map(t -> new Snapshot(version,
+                            Map.copyOf(t.getT1()),
+                            Map.copyOf(t.getT2()),
+                            Map.copyOf(t.getT3()),
+                            t.getT4().entrySet().stream()
+                                    .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> List.copyOf(e.getValue())))))
+                    .map(loaded -> current.accumulateAndGet(loaded,
+                            (prev, next) -> prev == null || next.version() > prev.version() ? next : prev));
+        });
+    }
+}
@@ -0,0 +1,450 @@
+package com.vodchyts.backend.feature.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vodchyts.backend.exception.OperationNotAllowedException;
+import com.vodchyts.backend.feature.dto.RequestImportResponse;
+import com.vodchyts.backend.feature.entity.Shop;
+import com.vodchyts.backend.feature.entity.UrgencyCategory;
+import com.vodchyts.backend.feature.entity.WorkCategory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Потоковый импорт заявок из CSV или NDJSON.
+ * Файл читается построчно по мере поступления, справочники разрешаются по именам из памяти,
+ * строки вставляются пачками без уведомлений. В конце возвращается отчет с ошибками по строкам.
+ */
+@Service
+public class RequestImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestImportService.class);
+
+    // 12 параметров на строку: 150 строк укладываются в лимит SQL Server в 2100 параметров
+    private static final int MAX_ROWS_PER_STATEMENT = 150;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final Set<String> STATUSES = Set.of("In work", "Done", "Closed");
+    private static final Map<String, String> STATUS_ALIASES = Map.of(
+            "в работе", "In work",
+            "выполнена", "Done",
+            "закрыта", "Closed"
+    );
+    private static final Map<String, String> URGENCY_ALIASES = Map.of(
+            "аварийная", "Emergency",
+            "срочная", "Urgent",
+            "плановая", "Planned",
+            "настраиваемая", "Customizable",
+            "заметки", "Notes"
+    );
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final ReferenceDataService referenceData;
+    private final RequestReadModelService readModelService;
+    private final RequestSearchIndex searchIndex;
+    private final UpdateBroadcaster updateBroadcaster;
+    private final ObjectMapper objectMapper;
+
+    @Value("${requests.import.batch-size:500}")
+    private int batchSize;
+
+    public RequestImportService(DatabaseClient databaseClient, TransactionalOperator transactionalOperator,
+                                ReferenceDataService referenceData, RequestReadModelService readModelService,
+                                RequestSearchIndex searchIndex, UpdateBroadcaster updateBroadcaster, ObjectMapper objectMapper) {
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.referenceData = referenceData;
+        this.readModelService = readModelService;
+        this.searchIndex = searchIndex;
+        this.updateBroadcaster = updateBroadcaster;
+        this.objectMapper = objectMapper;
+    }
+
+    private record ImportRow(long row, String description, Integer shopId, Integer workCategoryId, Integer urgencyId,
+                             Integer contractorId, String status, LocalDateTime createdAt, LocalDateTime closedAt,
+                             Integer customDays, LocalDateTime deadline, boolean overdue) {}
+
+    // Результат разбора строки: либо готовая к вставке строка, либо ошибка
+    private record Parsed(long row, ImportRow value, String error) {}
+
+    private record Lookups(Map<String, Integer> shops, Map<String, Integer> workCategories,
+                           Map<String, UrgencyCategory> urgencies, Map<String, Integer> contractors) {}
+
+    private static final class Report {
+        private long total;
+        private long imported;
+        private long failed;
+        private final List<RequestImportResponse.RowError> errors = new ArrayList<>();
+        private boolean truncated;
+
+        void fail(long row, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new RequestImportResponse.RowError(row, message));
+            } else {
+                truncated = true;
+            }
+        }
+    }
+
+    public Mono<RequestImportResponse> importRequests(FilePart file, Integer createdByUserId) {
+        String filename = Optional.ofNullable(file.filename()).orElse("").toLowerCase(Locale.ROOT);
+        boolean ndjson = filename.endsWith(".ndjson") || filename.endsWith(".jsonl") || filename.endsWith(".json");
+        if (!ndjson && !filename.endsWith(".csv")) {
+            return Mono.error(new OperationNotAllowedException("Поддерживаются только файлы .csv и .ndjson"));
+        }
+
+        long started = System.currentTimeMillis();
+        Report report = new Report();
+
+        Flux<String> lines = StringDecoder.textPlainOnly(List.of("\r\n", "\n"), true)
+                .decode(file.content(), ResolvableType.forClass(String.class), null, null);
+
+        return loadLookups()
+                .flatMap(lookups -> {
+                    LineParser parser = ndjson ? new NdjsonParser() : new CsvParser();
+                    LocalDateTime now = LocalDateTime.now();
+
+                    return lines
+                            .index()
+                            .filter(line -> !line.getT2().isBlank())
+                            .<Parsed>handle((line, sink) -> {
+                                long rowNumber = line.getT1() + 1;
+                                String text = rowNumber == 1 ? stripBom(line.getT2()) : line.getT2();
+                                try {
+                                    Map<String, String> fields = parser.parse(text);
+                                    if (fields != null) {
+                                        sink.next(toRow(rowNumber, fields, lookups, now));
+                                    }
+                                } catch (IllegalArgumentException e) {
+                                    sink.next(new Parsed(rowNumber, null, e.getMessage()));
+                                }
+                            })
+                            .doOnNext(parsed -> {
+                                report.total++;
+                                if (parsed.error() != null) {
+                                    report.fail(parsed.row(), parsed.error());
+                                }
+                            })
+                            .filter(parsed -> parsed.error() == null)
+                            .map(Parsed::value)
+                            .buffer(Math.max(1, batchSize))
+                            .concatMap(batch -> insertBatch(batch, createdByUserId)
+                                    .doOnNext(count -> report.imported += count)
+                                    .onErrorResume(e -> {
+                                        log.warn("Не удалось импортировать пачку из {} заявок: {}", batch.size(), e.getMessage());
+                                        batch.forEach(row -> report.fail(row.row(), "Ошибка записи пачки: " + e.getMessage()));
+                                        return Mono.empty();
+                                    }))
+                            .then();
+                })
+                .then(Mono.fromSupplier(() -> {
+                    long duration = Math.max(1, System.currentTimeMillis() - started);
+                    double rate = report.imported * 1000.0 / duration;
+                    log.info("Импорт заявок из {}: строк {}, импортировано {}, ошибок {}, {} мс ({} строк/с)",
+                            file.filename(), report.total, report.imported, report.failed, duration, String.format("%.1f", rate));
+                    return new RequestImportResponse(report.total, report.imported, report.failed,
+                            List.copyOf(report.errors), report.truncated, duration, rate);
+                }))
+                .doOnSuccess(response -> {
+                    if (response.importedCount() > 0) {
+                        updateBroadcaster.publish("REQUESTS_UPDATED");
+                    }
+                });
+    }
+
+    private Mono<Lookups> loadLookups() {
+        Mono<Map<String, Integer>> contractorsMono = databaseClient.sql(
+                        "SELECT u.UserID, u.Login FROM Users u JOIN Roles r ON u.RoleID = r.RoleID WHERE r.RoleName = 'Contractor'")
+                .map(row -> Map.entry(key(row.get("Login", String.class)), row.get("UserID", Integer.class)))
+                .all()
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        return Mono.zip(referenceData.snapshot(), contractorsMono)
+                .map(tuple -> {
+                    ReferenceDataService.Snapshot ref = tuple.getT1();
+                    Map<String, Integer> shops = new HashMap<>();
+                    for (Shop shop : ref.shops().values()) shops.put(key(shop.getShopName()), shop.getShopID());
+                    Map<String, Integer> workCategories = new HashMap<>();
+                    for (WorkCategory wc : ref.workCategories().values()) workCategories.put(key(wc.getWorkCategoryName()), wc.getWorkCategoryID());
+                    Map<String, UrgencyCategory> urgencies = new HashMap<>();
+                    for (UrgencyCategory uc : ref.urgencyCategories().values()) urgencies.put(key(uc.getUrgencyName()), uc);
+                    URGENCY_ALIASES.forEach((alias, name) -> {
+                        UrgencyCategory uc = urgencies.get(key(name));
+                        if (uc != null) urgencies.putIfAbsent(alias, uc);
+                    });
+                    return new Lookups(shops, workCategories, urgencies, tuple.getT2());
+                });
+    }
+
+    private Parsed toRow(long rowNumber, Map<String, String> fields, Lookups lookups, LocalDateTime now) {
+        String description = fields.get("description");
+        if (description == null || description.isBlank()) {
+            return new Parsed(rowNumber, null, "Не заполнено описание");
+        }
+        if (description.length() > 2000) {
+            return new Parsed(rowNumber, null, "Описание длиннее 2000 символов");
+        }
+
+        Integer shopId = lookups.shops().get(key(fields.get("shop")));
+        if (shopId == null) {
+            return new Parsed(rowNumber, null, "Магазин не найден: " + fields.get("shop"));
+        }
+        Integer workCategoryId = lookups.workCategories().get(key(fields.get("workcategory")));
+        if (workCategoryId == null) {
+            return new Parsed(rowNumber, null, "Вид работ не найден: " + fields.get("workcategory"));
+        }
+        UrgencyCategory urgency = lookups.urgencies().get(key(fields.get("urgency")));
+        if (urgency == null) {
+            return new Parsed(rowNumber, null, "Срочность не найдена: " + fields.get("urgency"));
+        }
+
+        Integer contractorId = null;
+        String contractor = fields.get("contractor");
+        if (contractor != null && !contractor.isBlank()) {
+            contractorId = lookups.contractors().get(key(contractor));
+            if (contractorId == null) {
+                return new Parsed(rowNumber, null, "Подрядчик не найден: " + contractor);
+            }
+        }
+
+        String rawStatus = fields.get("status");
+        String status = rawStatus == null || rawStatus.isBlank() ? "In work"
+                : STATUS_ALIASES.getOrDefault(key(rawStatus), rawStatus.trim());
+        if (!STATUSES.contains(status)) {
+            return new Parsed(rowNumber, null, "Недопустимый статус: " + rawStatus);
+        }
+
+        LocalDateTime createdAt = parseDateTime(fields.get("createdat"), "createdAt");
+        if (createdAt == null) createdAt = now;
+        LocalDateTime closedAt = parseDateTime(fields.get("closedat"), "closedAt");
+        if ("Closed".equals(status) && closedAt == null) closedAt = now;
+
+        Integer customDays = null;
+        String rawDays = fields.get("customdays");
+        if (rawDays != null && !rawDays.isBlank()) {
+            try {
+                customDays = Integer.parseInt(rawDays.trim());
+            } catch (NumberFormatException e) {
+                return new Parsed(rowNumber, null, "Некорректное количество дней: " + rawDays);
+            }
+            if (customDays < 1) {
+                return new Parsed(rowNumber, null, "Количество дней должно быть больше 0");
+            }
+        }
+
+        boolean isCustomizable = "Customizable".equalsIgnoreCase(urgency.getUrgencyName());
+        if (isCustomizable && customDays == null) {
+            return new Parsed(rowNumber, null, "Для настраиваемой срочности нужно указать customDays");
+        }
+        Integer daysForTask = isCustomizable ? customDays : urgency.getDefaultDays();
+        LocalDateTime deadline = daysForTask != null ? createdAt.plusDays(daysForTask) : null;
+        boolean overdue = deadline != null && "In work".equals(status)
+                && !"Notes".equalsIgnoreCase(urgency.getUrgencyName()) && now.isAfter(deadline);
+
+        return new Parsed(rowNumber, new ImportRow(rowNumber, description.trim(), shopId, workCategoryId, urgency.getUrgencyID(),
+                contractorId, status, createdAt, closedAt, isCustomizable ? customDays : null, deadline, overdue), null);
+    }
+
+    private Mono<Long> insertBatch(List<ImportRow> batch, Integer createdByUserId) {
+        List<List<ImportRow>> chunks = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i += MAX_ROWS_PER_STATEMENT) {
+            chunks.add(batch.subList(i, Math.min(i + MAX_ROWS_PER_STATEMENT, batch.size())));
+        }
+
+        return Flux.fromIterable(chunks)
+                .concatMap(chunk -> insertChunk(chunk, createdByUserId))
+                .collectList()
+                .flatMap(inserted -> {
+                    List<Integer> ids = new ArrayList<>(inserted.size());
+                    List<Map.Entry<Integer, Integer>> customDays = new ArrayList<>();
+                    for (Map.Entry<ImportRow, Integer> entry : inserted) {
+                        ids.add(entry.getValue());
+                        if (entry.getKey().customDays() != null) {
+                            customDays.add(Map.entry(entry.getValue(), entry.getKey().customDays()));
+                        }
+                    }
+                    return insertCustomDays(customDays)
+                            .then(readModelService.refresh(ids))
+                            .thenReturn(inserted);
+                })
+                .as(transactionalOperator::transactional)
+                .map(inserted -> {
+                    inserted.forEach(entry -> searchIndex.add(entry.getValue(), entry.getKey().description()));
+                    return (long) inserted.size();
+                });
+    }
+
+    // MERGE вместо INSERT, чтобы OUTPUT вернул номер исходной строки вместе с новым RequestID
+    private Flux<Map.Entry<ImportRow, Integer>> insertChunk(List<ImportRow> chunk, Integer createdByUserId) {
+        StringBuilder sql = new StringBuilder("MERGE Requests AS t USING (VALUES ");
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) sql.append(", ");
+            sql.append("(").append(i).append(", :d").append(i).append(", :s").append(i).append(", :w").append(i)
+                    .append(", :u").append(i).append(", :c").append(i).append(", :st").append(i).append(", :ca").append(i)
+                    .append(", :cl").append(i).append(", :o").append(i).append(", :dl").append(i).append(")");
+        }
+        sql.append(") AS src (Idx, Description, ShopID, WorkCategoryID, UrgencyID, AssignedContractorID, Status, CreatedAt, ClosedAt, IsOverdue, Deadline) ")
+                .append("ON 1 = 0 WHEN NOT MATCHED THEN INSERT (Description, ShopID, WorkCategoryID, UrgencyID, AssignedContractorID, ")
+                .append("CreatedByUserID, Status, CreatedAt, ClosedAt, IsOverdue, Deadline) ")
+                .append("VALUES (src.Description, src.ShopID, src.WorkCategoryID, src.UrgencyID, src.AssignedContractorID, ")
+                .append(":createdBy, src.Status, src.CreatedAt, src.ClosedAt, src.IsOverdue, src.Deadline) ")
+                .append("OUTPUT src.Idx, inserted.RequestID;");
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        spec = createdByUserId != null ? spec.bind("createdBy", createdByUserId) : spec.bindNull("createdBy", Integer.class);
+        for (int i = 0; i < chunk.size(); i++) {
+            ImportRow row = chunk.get(i);
+            spec = spec.bind("d" + i, row.description())
+                    .bind("s" + i, row.shopId())
+                    .bind("w" + i, row.workCategoryId())
+                    .bind("u" + i, row.urgencyId())
+                    .bind("st" + i, row.status())
+                    .bind("ca" + i, row.createdAt())
+                    .bind("o" + i, row.overdue());
+            spec = row.contractorId() != null ? spec.bind("c" + i, row.contractorId()) : spec.bindNull("c" + i, Integer.class);
+            spec = row.closedAt() != null ? spec.bind("cl" + i, row.closedAt()) : spec.bindNull("cl" + i, LocalDateTime.class);
+            spec = row.deadline() != null ? spec.bind("dl" + i, row.deadline()) : spec.bindNull("dl" + i, LocalDateTime.class);
+        }
+
+        return spec.map(row -> Map.entry(chunk.get(row.get("Idx", Integer.class)), row.get("RequestID", Integer.class)))
+                .all();
+    }
+
+    private Mono<Void> insertCustomDays(List<Map.Entry<Integer, Integer>> customDays) {
+        // 2 параметра на строку
+        int rowsPerStatement = 1000;
+        return Flux.range(0, (customDays.size() + rowsPerStatement - 1) / rowsPerStatement)
+                .concatMap(part -> {
+                    List<Map.Entry<Integer, Integer>> chunk = customDays.subList(part * rowsPerStatement,
+                            Math.min((part + 1) * rowsPerStatement, customDays.size()));
+                    StringBuilder sql = new StringBuilder("INSERT INTO RequestCustomDays (RequestID, Days) VALUES ");
+                    for (int i = 0; i < chunk.size(); i++) {
+                        if (i > 0) sql.append(", ");
+                        sql.append("(:r").append(i).append(", :d").append(i).append(")");
+                    }
+                    DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+                    for (int i = 0; i < chunk.size(); i++) {
+                        spec = spec.bind("r" + i, chunk.get(i).getKey()).bind("d" + i, chunk.get(i).getValue());
+                    }
+                    return spec.fetch().rowsUpdated();
+                })
+                .then();
+    }
+
+    private static LocalDateTime parseDateTime(String value, String field) {
+        if (value == null || value.isBlank()) return null;
+        String trimmed = value.trim();
+        try {
+            return trimmed.length() <= 10 ? LocalDate.parse(trimmed).atStartOfDay() : LocalDateTime.parse(trimmed.replace(' ', 'T'));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Некорректная дата в поле " + field + ": " + value);
+        }
+    }
+
+    private static String key(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String stripBom(String line) {
+        return line.startsWith("\uFEFF") ? line.substring(1) : line;
+    }
+
+    // Разбор одной строки файла в поля с нормализованными именами (нижний регистр); null - строка не содержит данных
+    private interface LineParser {
+        Map<String, String> parse(String line);
+    }
+
+    private final class NdjsonParser implements LineParser {
+        @Override
+        public Map<String, String> parse(String line) {
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(line);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Некорректный JSON: " + e.getMessage());
+            }
+            if (node == null || !node.isObject()) {
+                throw new IllegalArgumentException("Ожидался JSON-объект");
+            }
+            Map<String, String> fields = new HashMap<>();
+            node.fields().forEachRemaining(field -> {
+                if (!field.getValue().isNull()) {
+                    fields.put(key(field.getKey()), field.getValue().asText());
+                }
+            });
+            return fields;
+        }
+    }
+
+    // Первая строка - заголовок; разделитель (',' или ';') определяется по нему. Переводы строк внутри кавычек не поддерживаются
+    private static final class CsvParser implements LineParser {
+        private List<String> header;
+        private char separator = ',';
+
+        @Override
+        public Map<String, String> parse(String line) {
+            if (header == null) {
+                separator = line.indexOf(';') >= 0 && line.indexOf(',') < 0 ? ';' : ',';
+                header = split(line, separator).stream().map(RequestImportService::key).toList();
+                return null;
+            }
+            List<String> values = split(line, separator);
+            if (values.size() > header.size()) {
+                throw new IllegalArgumentException("Лишние поля: ожидалось " + header.size() + ", получено " + values.size());
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < values.size(); i++) {
+                fields.put(header.get(i), values.get(i));
+            }
+            return fields;
+        }
+
+        private static List<String> split(String line, char separator) {
+            List<String> values = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                            current.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        current.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == separator) {
+                    values.add(current.toString());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("Незакрытая кавычка");
+            }
+            values.add(current.toString());
+            return values;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.feature.dto.RequestChange;
+import com.vodchyts.backend.feature.dto.RequestResponse;
+import io.r2dbc.spi.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Поддерживает денормализованную таблицу RequestReadModel, из которой читается список заявок.
+ * Все методы пересчитывают строки проекции из исходных таблиц и должны вызываться в той же транзакции,
+ * что и изменение данных.
+ */
+@Service
+public class RequestReadModelService {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestReadModelService.class);
+
+    private static final String SOURCE_SQL =
+            "SELECT r.RequestID, r.Description, r.ShopID, s.ShopName, r.WorkCategoryID, wc.WorkCategoryName, " +
+                    "r.UrgencyID, uc.UrgencyName, r.AssignedContractorID, u.Login AS AssignedContractorName, " +
+                    "u.TelegramUsername AS ContractorTgUsername, r.Status, r.CreatedAt, r.ClosedAt, r.IsOverdue, r.Deadline, " +
+                    "CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END AS DaysForTask, " +
+                    "(SELECT COUNT(*) FROM RequestComments rc WHERE rc.RequestID = r.RequestID) AS CommentCount, " +
+                    "(SELECT COUNT(*) FROM RequestPhotos rp WHERE rp.RequestID = r.RequestID) AS PhotoCount " +
+                    "FROM Requests r " +
+                    "LEFT JOIN Shops s ON r.ShopID = s.ShopID " +
+                    "LEFT JOIN WorkCategories wc ON r.WorkCategoryID = wc.WorkCategoryID " +
+                    "LEFT JOIN UrgencyCategories uc ON r.UrgencyID = uc.UrgencyID " +
+                    "LEFT JOIN Users u ON r.AssignedContractorID = u.UserID " +
+                    "OUTER APPLY (SELECT TOP 1 d.Days FROM RequestCustomDays d WHERE d.RequestID = r.RequestID) rcd ";
+
+    private static final String MERGE_BODY =
+            "ON t.RequestID = src.RequestID " +
+                    "WHEN MATCHED THEN UPDATE SET " +
+                    "t.Description = src.Description, t.ShopID = src.ShopID, t.ShopName = src.ShopName, " +
+                    "t.WorkCategoryID = src.WorkCategoryID, t.WorkCategoryName = src.WorkCategoryName, " +
+                    "t.UrgencyID = src.UrgencyID, t.UrgencyName = src.UrgencyName, " +
+                    "t.AssignedContractorID = src.AssignedContractorID, t.AssignedContractorName = src.AssignedContractorName, " +
+                    "t.ContractorTgUsername = src.ContractorTgUsername, t.Status = src.Status, t.CreatedAt = src.CreatedAt, " +
+                    "t.ClosedAt = src.ClosedAt, t.IsOverdue = src.IsOverdue, t.DaysForTask = src.DaysForTask, " +
+                    "t.Deadline = src.Deadline, " +
+                    "t.CommentCount = src.CommentCount, t.PhotoCount = src.PhotoCount " +
+                    "WHEN NOT MATCHED BY TARGET THEN INSERT (RequestID, Description, ShopID, ShopName, WorkCategoryID, WorkCategoryName, " +
+                    "UrgencyID, UrgencyName, AssignedContractorID, AssignedContractorName, ContractorTgUsername, Status, CreatedAt, " +
+                    "ClosedAt, IsOverdue, DaysForTask, Deadline, CommentCount, PhotoCount) " +
+                    "VALUES (src.RequestID, src.Description, src.ShopID, src.ShopName, src.WorkCategoryID, src.WorkCategoryName, " +
+                    "src.UrgencyID, src.UrgencyName, src.AssignedContractorID, src.AssignedContractorName, src.ContractorTgUsername, " +
+                    "src.Status, src.CreatedAt, src.ClosedAt, src.IsOverdue, src.DaysForTask, " +
+                    "src.Deadline, src.CommentCount, src.PhotoCount)";
+
+    private static final List<String> COLUMNS = List.of(
+            "RequestID", "Description", "ShopID", "ShopName", "WorkCategoryID", "WorkCategoryName", "UrgencyID", "UrgencyName",
+            "AssignedContractorID", "AssignedContractorName", "ContractorTgUsername", "Status", "CreatedAt", "ClosedAt",
+            "IsOverdue", "DaysForTask", "CommentCount", "PhotoCount");
+
+    // Строка проекции до изменения возвращается с префиксом Old, после изменения - без префикса
+    private static final String OLD_PREFIX = "Old";
+    private static final String OUTPUT_CLAUSE = " OUTPUT " +
+            COLUMNS.stream().map(c -> "deleted." + c + " AS " + OLD_PREFIX + c).collect(Collectors.joining(", ")) + ", " +
+            COLUMNS.stream().map(c -> "inserted." + c + " AS " + c).collect(Collectors.joining(", "));
+
+    private final DatabaseClient databaseClient;
+
+    public RequestReadModelService(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Mono<Void> refresh(Integer requestId) {
+        return merge("r.RequestID = :id", requestId);
+    }
+
+    /**
+     * Пересчитывает строку заявки и возвращает ее состояние до и после в одном запросе (MERGE ... OUTPUT).
+     * before равен null, если строки в проекции еще не было.
+     */
+    public Mono<RequestChange> refreshReturning(Integer requestId) {
+        return mergeReturning("r.RequestID = :id", requestId).next();
+    }
+
+    // Пакетный вариант для массовых операций; размер списка ограничивает вызывающий (не более 2100 параметров)
+    public Flux<RequestChange> refreshReturning(List<Integer> requestIds) {
+        if (requestIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return mergeReturning("r.RequestID IN (:id)", requestIds);
+    }
+
+    // Удаляет строку проекции и возвращает ее последнее состояние; вызывается перед удалением самой заявки
+    public Mono<RequestResponse> removeReturning(Integer requestId) {
+        String sql = "DELETE FROM RequestReadModel OUTPUT " +
+                COLUMNS.stream().map(c -> "deleted." + c).collect(Collectors.joining(", ")) +
+                " WHERE RequestID = :id";
+
+        return databaseClient.sql(sql)
+                .bind("id", requestId)
+                .map((row, rowMetaData) -> toResponse(row, ""))
+                .one();
+    }
+
+    public Mono<Void> refresh(List<Integer> requestIds) {
+        if (requestIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return merge("r.RequestID IN (:id)", requestIds);
+    }
+
+    public Mono<Void> refreshByShop(Integer shopId) {
+        return merge("r.ShopID = :id", shopId);
+    }
+
+    public Mono<Void> refreshByWorkCategory(Integer workCategoryId) {
+        return merge("r.WorkCategoryID = :id", workCategoryId);
+    }
+
+    public Mono<Void> refreshByUrgency(Integer urgencyId) {
+        return merge("r.UrgencyID = :id", urgencyId);
+    }
+
+    public Mono<Void> refreshByContractor(Integer contractorId) {
+        return merge("r.AssignedContractorID = :id", contractorId);
+    }
+
+    // Полная пересборка проекции: добавляет недостающие строки и удаляет лишние
+    public Mono<Void> rebuild() {
+        String sql = "MERGE RequestReadModel WITH (HOLDLOCK) AS t USING (" + SOURCE_SQL + ") AS src " +
+                MERGE_BODY + " WHEN NOT MATCHED BY SOURCE THEN DELETE;";
+
+        return databaseClient.sql(sql)
+                .fetch()
+                .rowsUpdated()
+                .doOnSuccess(rows -> log.info("Проекция списка заявок пересобрана, строк: {}", rows))
+                .then();
+    }
+
+    public static RequestResponse toResponse(Row row, String prefix) {
+        return new RequestResponse(
+                row.get(prefix + "RequestID", Integer.class),
+                row.get(prefix + "Description", String.class),
+                row.get(prefix + "ShopName", String.class),
+                row.get(prefix + "ShopID", Integer.class),
+                row.get(prefix + "WorkCategoryName", String.class),
+                row.get(prefix + "WorkCategoryID", Integer.class),
+                row.get(prefix + "UrgencyName", String.class),
+                row.get(prefix + "UrgencyID", Integer.class),
+                row.get(prefix + "AssignedContractorName", String.class),
+                row.get(prefix + "AssignedContractorID", Integer.class),
+                row.get(prefix + "Status", String.class),
+                row.get(prefix + "CreatedAt", LocalDateTime.class),
+                row.get(prefix + "ClosedAt", LocalDateTime.class),
+                null,
+                row.get(prefix + "DaysForTask", Integer.class),
+                row.get(prefix + "IsOverdue", Boolean.class),
+                Optional.ofNullable(row.get(prefix + "CommentCount", Long.class)).orElse(0L),
+                Optional.ofNullable(row.get(prefix + "PhotoCount", Long.class)).orElse(0L),
+                row.get(prefix + "ContractorTgUsername", String.class)
+        );
+    }
+
+    private Flux<RequestChange> mergeReturning(String predicate, Object id) {
+        String sql = "MERGE RequestReadModel WITH (HOLDLOCK) AS t USING (" + SOURCE_SQL + "WHERE " + predicate + ") AS src " +
+                MERGE_BODY + OUTPUT_CLAUSE + ";";
+
+        return databaseClient.sql(sql)
+                .bind("id", id)
+                .map((row, rowMetaData) -> new RequestChange(
+                        row.get(OLD_PREFIX + "RequestID", Integer.class) != null ? toResponse(row, OLD_PREFIX) : null,
+                        toResponse(row, "")))
+                .all();
+    }
+
+    private Mono<Void> merge(String predicate, Object id) {
+        if (id == null) {
+            return Mono.empty();
+        }
+        String sql = "MERGE RequestReadModel WITH (HOLDLOCK) AS t USING (" + SOURCE_SQL + "WHERE " + predicate + ") AS src " +
+                MERGE_BODY + ";";
+
+        return databaseClient.sql(sql)
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated()
+                .then();
+    }
+}
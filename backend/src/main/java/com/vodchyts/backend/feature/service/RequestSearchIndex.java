@@ -0,0 +1,233 @@
+package com.vodchyts.backend.feature.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Триграммный инвертированный индекс по описаниям заявок и текстам комментариев.
+ * Дает getAllRequests набор кандидатов, содержащих все триграммы запроса, отсортированный по релевантности;
+ * окончательно совпадение подстроки проверяет SQL.
+ */
+@Service
+public class RequestSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestSearchIndex.class);
+    private static final int GRAM = 3;
+
+    private record Index(Map<String, Set<Integer>> postings, Map<Integer, Set<String>> documents) {
+        static Index empty() {
+            return new Index(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+    }
+
+    private final DatabaseClient databaseClient;
+
+    private volatile Index index = Index.empty();
+    private volatile boolean ready = false;
+    // Заявки, измененные во время перестроения: снимок мог их не увидеть, поэтому после замены они перечитываются
+    private Set<Integer> changedDuringRebuild;
+
+    @Value("${search.index.max-candidates:500}")
+    private int maxCandidates;
+
+    public RequestSearchIndex(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild().subscribe(
+                null,
+                e -> log.error("Не удалось построить поисковый индекс заявок", e)
+        );
+    }
+
+    public Mono<Void> rebuild() {
+        Flux<Map.Entry<Integer, String>> descriptions = databaseClient.sql("SELECT RequestID, Description FROM Requests")
+                .map(row -> Map.entry(row.get("RequestID", Integer.class), Objects.toString(row.get("Description", String.class), "")))
+                .all();
+        Flux<Map.Entry<Integer, String>> comments = databaseClient.sql("SELECT RequestID, CommentText FROM RequestComments")
+                .map(row -> Map.entry(row.get("RequestID", Integer.class), Objects.toString(row.get("CommentText", String.class), "")))
+                .all();
+
+        return Mono.fromRunnable(this::startTrackingChanges)
+                .thenMany(Flux.concat(descriptions, comments))
+                .collect(HashMap<Integer, StringBuilder>::new, (texts, entry) ->
+                        texts.computeIfAbsent(entry.getKey(), id -> new StringBuilder()).append(' ').append(entry.getValue()))
+                .map(texts -> {
+                    Index built = Index.empty();
+                    texts.forEach((requestId, text) -> put(built, requestId, text.toString()));
+                    return built;
+                })
+                .flatMap(built -> {
+                    Set<Integer> changed;
+                    synchronized (this) {
+                        index = built;
+                        ready = true;
+                        changed = changedDuringRebuild;
+                        changedDuringRebuild = null;
+                    }
+                    log.info("Поисковый индекс заявок построен: {} заявок, {} триграмм", built.documents().size(), built.postings().size());
+                    return Flux.fromIterable(changed != null ? changed : Set.<Integer>of())
+                            .concatMap(this::reindex)
+                            .then();
+                })
+                .doOnError(e -> stopTrackingChanges());
+    }
+
+    public Mono<Void> reindex(Integer requestId) {
+        if (requestId == null || !track(requestId)) {
+            return Mono.empty();
+        }
+        String sql = "SELECT r.Description AS Text FROM Requests r WHERE r.RequestID = :id " +
+                "UNION ALL SELECT c.CommentText AS Text FROM RequestComments c WHERE c.RequestID = :id";
+
+        return databaseClient.sql(sql)
+                .bind("id", requestId)
+                .map(row -> Objects.toString(row.get("Text", String.class), ""))
+                .all()
+                .collectList()
+                .doOnNext(texts -> {
+                    synchronized (this) {
+                        remove(index, requestId);
+                        if (!texts.isEmpty()) {
+                            put(index, requestId, String.join(" ", texts));
+                        }
+                    }
+                })
+                .onErrorResume(e -> {
+                    log.warn("Не удалось обновить поисковый индекс для заявки {}: {}", requestId, e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    // Индексация по уже известному тексту, без чтения из БД (новые заявки без комментариев)
+    public synchronized void add(Integer requestId, String text) {
+        if (!track(requestId)) return;
+        remove(index, requestId);
+        put(index, requestId, text);
+    }
+
+    public synchronized void remove(Integer requestId) {
+        if (!track(requestId)) return;
+        remove(index, requestId);
+    }
+
+    /**
+     * Кандидаты для поискового запроса в порядке убывания релевантности: заявки, в тексте которых есть все
+     * триграммы запроса; выше те, где запрос составляет большую долю текста.
+     * Пустой Optional означает, что индекс использовать нельзя (короткий запрос, индекс еще не построен или
+     * кандидатов больше search.index.max-candidates) и нужно искать через LIKE.
+     */
+    public Optional<List<Integer>> search(String term) {
+        Set<String> queryGrams = trigrams(normalize(term));
+        if (!ready || queryGrams.isEmpty()) {
+            return Optional.empty();
+        }
+        Index current = index;
+
+        // Пересекаем списки, начиная с самого короткого
+        List<Set<Integer>> lists = new ArrayList<>();
+        for (String gram : queryGrams) {
+            Set<Integer> ids = current.postings().get(gram);
+            if (ids == null) {
+                return Optional.of(List.of());
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Integer> matched = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !matched.isEmpty(); i++) {
+            matched.retainAll(lists.get(i));
+        }
+
+        if (matched.size() > maxCandidates) {
+            return Optional.empty();
+        }
+        Map<Integer, Double> scores = new HashMap<>();
+        for (Integer id : matched) {
+            Set<String> grams = current.documents().get(id);
+            scores.put(id, grams == null || grams.isEmpty() ? 0.0 : (double) queryGrams.size() / grams.size());
+        }
+        List<Integer> ranked = scores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.<Integer, Double>comparingByKey().reversed()))
+                .map(Map.Entry::getKey)
+                .toList();
+        return Optional.of(ranked);
+    }
+
+    private synchronized void startTrackingChanges() {
+        changedDuringRebuild = new HashSet<>();
+    }
+
+    private synchronized void stopTrackingChanges() {
+        changedDuringRebuild = null;
+    }
+
+    // Запоминает изменение на время перестроения; false - индекс еще не построен и применять изменение некуда
+    private synchronized boolean track(Integer requestId) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(requestId);
+        }
+        return ready;
+    }
+
+    private static void remove(Index index, Integer requestId) {
+        Set<String> grams = index.documents().remove(requestId);
+        if (grams == null) return;
+        for (String gram : grams) {
+            Set<Integer> ids = index.postings().get(gram);
+            if (ids != null) {
+                ids.remove(requestId);
+                if (ids.isEmpty()) {
+                    index.postings().remove(gram);
+                }
+            }
+        }
+    }
+
+    private static void put(Index index, Integer requestId, String text) {
+        Set<String> grams = trigrams(normalize(text));
+        index.documents().put(requestId, grams);
+        for (String gram : grams) {
+            index.postings().computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(requestId);
+        }
+    }
+
+    private static String normalize(String text) {
+        if (text == null) return "";
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c == 'ё' || c == 'Ё' ? 'е' : c));
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    private static Set<String> trigrams(String normalized) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
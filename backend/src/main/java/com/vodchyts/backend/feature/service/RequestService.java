@@ -1,5 +1,6 @@
 package com.vodchyts.backend.feature.service;
 
+import com.vodchyts.backend.common.pagination.KeysetCursor;
 import com.vodchyts.backend.exception.OperationNotAllowedException;
 import com.vodchyts.backend.exception.UserNotFoundException;
 import com.vodchyts.backend.feature.dto.*;
@@ -7,113 +8,126 @@ import com.vodchyts.backend.feature.entity.*;
 import com.vodchyts.backend.feature.repository.*;
 import io.r2dbc.spi.Row;
 import io.r2dbc.spi.RowMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
-import org.springframework.data.relational.core.query.Criteria;
-import org.springframework.data.relational.core.query.Query;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.function.Tuple2;
+import reactor.util.function.Tuple3;
 import reactor.util.function.Tuples;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Service
 public class RequestService {
 
+    private static final Logger log = LoggerFactory.getLogger(RequestService.class);
     private static final long MAX_SINGLE_FILE_SIZE = 5 * 1024 * 1024;
     private static final List<String> ALLOWED_MIMES = List.of("image/jpeg", "image/png");
+    private static final int ARCHIVE_CHUNK_SIZE = 64 * 1024;
+    private static final Set<String> STATUSES = Set.of("In work", "Done", "Closed");
 
-    private final R2dbcEntityTemplate template;
     private final DatabaseClient databaseClient;
     private final ReactiveRequestRepository requestRepository;
     private final ReactiveRequestCustomDayRepository customDayRepository;
     private final ReactiveRequestCommentRepository commentRepository;
     private final ReactiveRequestPhotoRepository photoRepository;
-    private final ReactiveRoleRepository roleRepository;
-    private final ReactiveUserRepository userRepository;
-    private final ReactiveShopRepository shopRepository;
     private final TelegramNotificationService notificationService;
-    private final ReactiveShopContractorChatRepository chatRepository;
-    private final ReactiveWorkCategoryRepository workCategoryRepository;
-    private final ReactiveUrgencyCategoryRepository urgencyCategoryRepository;
     private final WebNotificationService webNotificationService;
     private final UpdateBroadcaster updateBroadcaster;
-
-    public RequestService(R2dbcEntityTemplate template, DatabaseClient databaseClient, ReactiveRequestRepository requestRepository, ReactiveRequestCustomDayRepository customDayRepository, ReactiveRequestCommentRepository commentRepository, ReactiveRequestPhotoRepository photoRepository, ReactiveRoleRepository roleRepository, ReactiveUserRepository userRepository, ReactiveShopRepository shopRepository, TelegramNotificationService notificationService, ReactiveShopContractorChatRepository chatRepository, ReactiveWorkCategoryRepository workCategoryRepository, ReactiveUrgencyCategoryRepository urgencyCategoryRepository, WebNotificationService webNotificationService, UpdateBroadcaster updateBroadcaster) {
-        this.template = template;
+    private final RequestReadModelService readModelService;
+    private final TransactionalOperator transactionalOperator;
+    private final ListCountCache countCache;
+    private final RequestSearchIndex searchIndex;
+    private final UserDirectoryService userDirectory;
+    private final ReferenceDataService referenceData;
+    private final PhotoStorageService photoStorage;
+    private final PhotoThumbnailService thumbnails;
+    private final PhotoCache photoCache;
+    private final NotificationOutbox outbox;
+
+    @Value("${requests.bulk.max-size:500}")
+    private int bulkMaxSize;
+
+    // Сколько файлов одной загрузки обрабатывается параллельно
+    @Value("${photos.upload.concurrency:2}")
+    private int uploadConcurrency;
+
+    public RequestService(DatabaseClient databaseClient, ReactiveRequestRepository requestRepository, ReactiveRequestCustomDayRepository customDayRepository, ReactiveRequestCommentRepository commentRepository, ReactiveRequestPhotoRepository photoRepository, TelegramNotificationService notificationService, WebNotificationService webNotificationService, UpdateBroadcaster updateBroadcaster, RequestReadModelService readModelService, TransactionalOperator transactionalOperator, ListCountCache countCache, RequestSearchIndex searchIndex, UserDirectoryService userDirectory, ReferenceDataService referenceData, PhotoStorageService photoStorage, PhotoThumbnailService thumbnails, PhotoCache photoCache, NotificationOutbox outbox) {
         this.databaseClient = databaseClient;
         this.requestRepository = requestRepository;
         this.customDayRepository = customDayRepository;
         this.commentRepository = commentRepository;
         this.photoRepository = photoRepository;
-        this.roleRepository = roleRepository;
-        this.userRepository = userRepository;
-        this.shopRepository = shopRepository;
         this.notificationService = notificationService;
-        this.chatRepository = chatRepository;
-        this.workCategoryRepository = workCategoryRepository;
-        this.urgencyCategoryRepository = urgencyCategoryRepository;
         this.webNotificationService = webNotificationService;
         this.updateBroadcaster = updateBroadcaster;
+        this.readModelService = readModelService;
+        this.transactionalOperator = transactionalOperator;
+        this.countCache = countCache;
+        this.searchIndex = searchIndex;
+        this.userDirectory = userDirectory;
+        this.referenceData = referenceData;
+        this.photoStorage = photoStorage;
+        this.thumbnails = thumbnails;
+        this.photoCache = photoCache;
+        this.outbox = outbox;
     }
 
 
-    public static final BiFunction<Row, RowMetadata, RequestResponse> MAPPING_FUNCTION = (row, rowMetaData) -> new RequestResponse(
-            row.get("RequestID", Integer.class),
-            row.get("Description", String.class),
-            row.get("ShopName", String.class),
-            row.get("ShopID", Integer.class),
-            row.get("WorkCategoryName", String.class),
-            row.get("WorkCategoryID", Integer.class),
-            row.get("UrgencyName", String.class),
-            row.get("UrgencyID", Integer.class),
-            row.get("AssignedContractorName", String.class),
-            row.get("AssignedContractorID", Integer.class),
-            row.get("Status", String.class),
-            row.get("CreatedAt", LocalDateTime.class),
-            row.get("ClosedAt", LocalDateTime.class),
-            null,
-            row.get("DaysForTask", Integer.class),
-            row.get("IsOverdue", Boolean.class),
-            Optional.ofNullable(row.get("CommentCount", Long.class)).orElse(0L),
-            Optional.ofNullable(row.get("PhotoCount", Long.class)).orElse(0L),
-            row.get("ContractorTgUsername", String.class)
-    );
+    private static final String READ_MODEL_COLUMNS =
+            "v.RequestID, v.Description, v.ShopID, v.ShopName, v.WorkCategoryID, v.WorkCategoryName, v.UrgencyID, v.UrgencyName, " +
+                    "v.AssignedContractorID, v.AssignedContractorName, v.ContractorTgUsername, v.Status, v.CreatedAt, v.ClosedAt, " +
+                    "v.IsOverdue, v.DaysForTask, v.CommentCount, v.PhotoCount";
+
+    // Поиск подстроки в описании заявки и в ее комментариях - по тем же текстам, что индексирует RequestSearchIndex
+    private static final String SEARCH_PREDICATE =
+            "(UPPER(v.Description) LIKE UPPER(:searchTerm) OR EXISTS (SELECT 1 FROM RequestComments sc " +
+                    "WHERE sc.RequestID = v.RequestID AND UPPER(sc.CommentText) LIKE UPPER(:searchTerm)))";
+
+    public static final BiFunction<Row, RowMetadata, RequestResponse> MAPPING_FUNCTION =
+            (row, rowMetaData) -> RequestReadModelService.toResponse(row, "");
 
     public Mono<PagedResponse<RequestResponse>> getAllRequests(
             boolean archived, String searchTerm, Integer shopId, Integer workCategoryId,
             Integer urgencyId, Integer contractorId, String status, Boolean overdue,
             LocalDate startDate, LocalDate endDate,
-            List<String> sort, int page, int size,
+            List<String> sort, int page, int size, String after,
             String username
     ) {
-        return userRepository.findByLogin(username)
+        return userDirectory.findByLogin(username)
                 .switchIfEmpty(Mono.error(new UserNotFoundException("Текущий пользователь не найден")))
-                .flatMap(user -> roleRepository.findById(user.getRoleID())
+                .flatMap(userEntry -> Mono.justOrEmpty(userEntry.role())
                         .flatMap(role -> {
-                            StringBuilder sqlBuilder = new StringBuilder(
-                                    "SELECT r.RequestID, r.Description, r.ShopID, r.WorkCategoryID, r.UrgencyID, r.AssignedContractorID, r.Status, r.CreatedAt, r.ClosedAt, r.IsOverdue, " +
-                                            "s.ShopName, wc.WorkCategoryName, uc.UrgencyName, u.Login as AssignedContractorName, u.TelegramUsername as ContractorTgUsername, " +
-                                            "CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END as DaysForTask, " +
-                                            "(SELECT COUNT(*) FROM RequestComments rc WHERE rc.RequestID = r.RequestID) as CommentCount, " +
-                                            "(SELECT COUNT(*) FROM RequestPhotos rp WHERE rp.RequestID = r.RequestID) as PhotoCount " +
-                                            "FROM Requests r " +
-                                            "LEFT JOIN Shops s ON r.ShopID = s.ShopID " +
-                                            "LEFT JOIN WorkCategories wc ON r.WorkCategoryID = wc.WorkCategoryID " +
-                                            "LEFT JOIN UrgencyCategories uc ON r.UrgencyID = uc.UrgencyID " +
-                                            "LEFT JOIN Users u ON r.AssignedContractorID = u.UserID " +
-                                            "LEFT JOIN RequestCustomDays rcd ON r.RequestID = rcd.RequestID "
-                            );
+                            User user = userEntry.user();
+                            StringBuilder sqlBuilder = new StringBuilder("SELECT " + READ_MODEL_COLUMNS + " FROM RequestReadModel v");
 
                             List<String> conditions = new ArrayList<>();
                             Map<String, Object> bindings = new HashMap<>();
@@ -126,60 +140,71 @@ public class RequestService {
                             } else {
                                 statuses = List.of("In work", "Done");
                             }
-                            conditions.add("r.Status IN (:statuses)");
+                            conditions.add("v.Status IN (:statuses)");
                             bindings.put("statuses", statuses);
 
                             if (overdue != null && overdue) {
-                                conditions.add("r.IsOverdue = :isOverdue");
+                                conditions.add("v.IsOverdue = :isOverdue");
                                 bindings.put("isOverdue", true);
                             }
-                            if (searchTerm != null && !searchTerm.isBlank()) {
-                                conditions.add("UPPER(r.Description) LIKE UPPER(:searchTerm)");
+                            // Кандидаты из триграммного индекса сужают выборку до нескольких строк, а LIKE подтверждает
+                            // совпадение подстроки; без индекса (короткий запрос, индекс строится, слишком много
+                            // кандидатов) остается только LIKE. Остальные фильтры применяются в том же WHERE
+                            boolean searching = searchTerm != null && !searchTerm.isBlank();
+                            List<Integer> searchCandidates = searching ? searchIndex.search(searchTerm).orElse(null) : null;
+                            if (searching) {
+                                if (searchCandidates != null) {
+                                    if (searchCandidates.isEmpty()) {
+                                        conditions.add("1 = 0");
+                                    } else {
+                                        conditions.add("v.RequestID IN (:searchIds)");
+                                        bindings.put("searchIds", searchCandidates);
+                                    }
+                                }
+                                conditions.add(SEARCH_PREDICATE);
                                 bindings.put("searchTerm", "%" + searchTerm + "%");
                             }
                             if (workCategoryId != null) {
-                                conditions.add("r.WorkCategoryID = :workCatId");
+                                conditions.add("v.WorkCategoryID = :workCatId");
                                 bindings.put("workCatId", workCategoryId);
                             }
                             if (urgencyId != null) {
-                                conditions.add("r.UrgencyID = :urgencyId");
+                                conditions.add("v.UrgencyID = :urgencyId");
                                 bindings.put("urgencyId", urgencyId);
                             }
 
+                            // Полуоткрытые диапазоны по хранимым столбцам, чтобы работали индексы
                             if (startDate != null) {
-                                conditions.add("CAST(r.CreatedAt AS DATE) >= :startDate");
-                                bindings.put("startDate", startDate);
+                                conditions.add("v.CreatedAt >= :startDate");
+                                bindings.put("startDate", startDate.atStartOfDay());
                             }
                             if (endDate != null) {
-                                String deadlineCalculation = "DATEADD(day, CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END, r.CreatedAt)";
-
-                                conditions.add("CAST(" + deadlineCalculation + " AS DATE) <= :endDate");
-                                bindings.put("endDate", endDate);
+                                conditions.add("v.Deadline < :endDate");
+                                bindings.put("endDate", endDate.plusDays(1).atStartOfDay());
                             }
 
                             Mono<Void> roleConditionsMono = Mono.just(user).flatMap(u -> {
                                 String userRole = role.getRoleName();
                                 if (shopId != null) {
-                                    conditions.add("r.ShopID = :shopId");
+                                    conditions.add("v.ShopID = :shopId");
                                     bindings.put("shopId", shopId);
                                 }
                                 if ("RetailAdmin".equals(userRole)) {
                                     if (contractorId != null) {
-                                        conditions.add("r.AssignedContractorID = :contractorId");
+                                        conditions.add("v.AssignedContractorID = :contractorId");
                                         bindings.put("contractorId", contractorId);
                                     }
                                 } else if ("Contractor".equals(userRole)) {
-                                    conditions.add("r.AssignedContractorID = :userId");
+                                    conditions.add("v.AssignedContractorID = :userId");
                                     bindings.put("userId", u.getUserID());
                                 } else if ("StoreManager".equals(userRole)) {
-                                    return shopRepository.findAllByUserID(u.getUserID())
-                                            .map(Shop::getShopID)
-                                            .collectList()
+                                    return referenceData.snapshot()
+                                            .map(ref -> ref.shopIdsManagedBy(u.getUserID()))
                                             .doOnNext(shopIds -> {
                                                 if (shopIds.isEmpty()) {
                                                     conditions.add("1 = 0");
                                                 } else {
-                                                    conditions.add("r.ShopID IN (:shopIds)");
+                                                    conditions.add("v.ShopID IN (:shopIds)");
                                                     bindings.put("shopIds", shopIds);
                                                 }
                                             }).then();
@@ -193,14 +218,34 @@ public class RequestService {
                                 }
 
                                 String countSql = "SELECT COUNT(*) FROM (" + sqlBuilder.toString() + ") as count_subquery";
-                                DatabaseClient.GenericExecuteSpec countSpec = databaseClient.sql(countSql);
-                                for (Map.Entry<String, Object> entry : bindings.entrySet()) {
-                                    countSpec = countSpec.bind(entry.getKey(), entry.getValue());
+                                Map<String, Object> countBindings = new HashMap<>(bindings);
+                                Mono<ListCountCache.Total> countMono = countCache.count(ListCountCache.REQUESTS, countKey(conditions, countBindings), () -> {
+                                    DatabaseClient.GenericExecuteSpec countSpec = databaseClient.sql(countSql);
+                                    for (Map.Entry<String, Object> entry : countBindings.entrySet()) {
+                                        countSpec = countSpec.bind(entry.getKey(), entry.getValue());
+                                    }
+                                    return countSpec.map(row -> row.get(0, Long.class)).one();
+                                });
+
+                                List<SortColumn> sortColumns = parseSortColumns(sort);
+                                List<KeysetCursor.SortKey> sortKeys = sortColumns.stream().map(SortColumn::key).toList();
+
+                                // Keyset-режим: вместо OFFSET продолжаем сразу после последней строки предыдущей страницы
+                                if (after != null && !after.isBlank()) {
+                                    List<Object> cursorValues = KeysetCursor.decode(after, sortKeys);
+                                    String cursorCondition = KeysetCursor.condition(sortKeys, cursorValues, bindings);
+                                    sqlBuilder.append(conditions.isEmpty() ? " WHERE " : " AND ").append(cursorCondition);
                                 }
-                                Mono<Long> countMono = countSpec.map(row -> row.get(0, Long.class)).one();
 
-                                sqlBuilder.append(parseSortToSql(sort));
-                                sqlBuilder.append(" OFFSET ").append((long) page * size).append(" ROWS FETCH NEXT ").append(size).append(" ROWS ONLY");
+                                long offset = (after != null && !after.isBlank()) ? 0 : (long) page * size;
+                                boolean rankBySearch = searchCandidates != null && !searchCandidates.isEmpty()
+                                        && (sort == null || sort.isEmpty()) && (after == null || after.isBlank());
+                                if (rankBySearch) {
+                                    sqlBuilder.append(rankOrderBy(searchCandidates));
+                                } else {
+                                    sqlBuilder.append(KeysetCursor.orderBy(sortKeys));
+                                }
+                                sqlBuilder.append(" OFFSET ").append(offset).append(" ROWS FETCH NEXT ").append(size).append(" ROWS ONLY");
 
                                 DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sqlBuilder.toString());
                                 for (Map.Entry<String, Object> entry : bindings.entrySet()) {
@@ -213,9 +258,15 @@ public class RequestService {
                                 return Mono.zip(resultFlux.collectList(), countMono)
                                         .map(tuple -> {
                                             List<RequestResponse> content = tuple.getT1();
-                                            long total = tuple.getT2();
+                                            long total = tuple.getT2().value();
                                             int totalPages = (total == 0) ? 0 : (int) Math.ceil((double) total / size);
-                                            return new PagedResponse<>(content, page, total, totalPages);
+                                            String nextCursor = null;
+                                            if (!rankBySearch && size > 0 && content.size() == size) {
+                                                RequestResponse last = content.get(content.size() - 1);
+                                                List<Object> lastValues = sortColumns.stream().map(c -> c.value().apply(last)).toList();
+                                                nextCursor = KeysetCursor.encode(sortKeys, lastValues);
+                                            }
+                                            return new PagedResponse<>(content, page, total, totalPages, nextCursor, tuple.getT2().cached());
                                         });
 
                             }));
@@ -243,58 +294,76 @@ public class RequestService {
         };
     }
 
-    private String parseSortToSql(List<String> sortParams) {
-        if (sortParams == null || sortParams.isEmpty()) {
-            return " ORDER BY r.RequestID DESC";
+    // Порядок по релевантности из поискового индекса; id целочисленные, поэтому подставляются литералами
+    private String rankOrderBy(List<Integer> rankedIds) {
+        StringBuilder sb = new StringBuilder(" ORDER BY CASE v.RequestID");
+        for (int i = 0; i < rankedIds.size(); i++) {
+            sb.append(" WHEN ").append(rankedIds.get(i).intValue()).append(" THEN ").append(i);
         }
-        final String deadlineExpression = "DATEADD(day, CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END, r.CreatedAt)";
-
-        Map<String, String> columnMapping = Map.of(
-                "requestID", "r.RequestID",
-                "description", "r.Description",
-                "shopName", "s.ShopName",
-                "workCategoryName", "wc.WorkCategoryName",
-                "urgencyName", "uc.UrgencyName",
-                "assignedContractorName", "AssignedContractorName",
-                "status", "r.Status",
-                "daysRemaining", deadlineExpression
+        return sb.append(" END, v.RequestID DESC").toString();
+    }
+
+    // Кандидаты из поискового индекса (до сотен id) в ключ не входят: итог определяет сам поисковый запрос,
+    // а LIKE сравнивает его без учета регистра
+    private static String countKey(List<String> conditions, Map<String, Object> bindings) {
+        Map<String, Object> keyBindings = new HashMap<>(bindings);
+        keyBindings.remove("searchIds");
+        keyBindings.computeIfPresent("searchTerm", (name, value) -> value.toString().toUpperCase(Locale.ROOT));
+        List<String> keyConditions = conditions.stream().filter(c -> !c.contains(":searchIds")).toList();
+        return ListCountCache.filterKey(keyConditions, keyBindings);
+    }
+
+    private record SortColumn(KeysetCursor.SortKey key, Function<RequestResponse, Object> value) {}
+
+    private static LocalDateTime deadlineOf(RequestResponse response) {
+        return response.daysForTask() != null ? response.createdAt().plusDays(response.daysForTask()) : null;
+    }
+
+    /**
+     * Разбирает параметры сортировки. В конец всегда добавляется v.RequestID, чтобы порядок был однозначным
+     * и по последней строке страницы можно было построить курсор.
+     */
+    private List<SortColumn> parseSortColumns(List<String> sortParams) {
+        Map<String, Map.Entry<String, Function<RequestResponse, Object>>> columnMapping = Map.of(
+                "requestID", Map.entry("v.RequestID", RequestResponse::requestID),
+                "description", Map.entry("v.Description", RequestResponse::description),
+                "shopName", Map.entry("v.ShopName", RequestResponse::shopName),
+                "workCategoryName", Map.entry("v.WorkCategoryName", RequestResponse::workCategoryName),
+                "urgencyName", Map.entry("v.UrgencyName", RequestResponse::urgencyName),
+                "assignedContractorName", Map.entry("v.AssignedContractorName", RequestResponse::assignedContractorName),
+                "status", Map.entry("v.Status", RequestResponse::status),
+                "daysRemaining", Map.entry("v.Deadline", RequestService::deadlineOf)
         );
 
-        String orders = sortParams.stream()
-                .map(param -> {
-                    String[] parts = param.split(",");
-                    String field = parts[0];
-                    String direction = (parts.length > 1 && "desc".equalsIgnoreCase(parts[1])) ? "DESC" : "ASC";
-                    String dbColumn = columnMapping.get(field);
-                    if (dbColumn == null) return null;
-                    return dbColumn + " " + direction;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.joining(", "));
+        List<SortColumn> columns = new ArrayList<>();
+        if (sortParams != null) {
+            for (String param : sortParams) {
+                String[] parts = param.split(",");
+                String field = parts[0];
+                boolean descending = parts.length > 1 && "desc".equalsIgnoreCase(parts[1]);
+                var column = columnMapping.get(field);
+                if (column == null) continue;
+                columns.add(new SortColumn(new KeysetCursor.SortKey(column.getKey(), descending), column.getValue()));
+            }
+        }
 
-        return orders.isEmpty() ? " ORDER BY r.RequestID DESC" : " ORDER BY " + orders;
+        if (columns.isEmpty()) {
+            columns.add(new SortColumn(new KeysetCursor.SortKey("v.RequestID", true), RequestResponse::requestID));
+        } else if (columns.stream().noneMatch(c -> "v.RequestID".equals(c.key().expression()))) {
+            columns.add(new SortColumn(new KeysetCursor.SortKey("v.RequestID", false), RequestResponse::requestID));
+        }
+        return columns;
     }
 
     public Mono<RequestResponse> createAndEnrichRequest(CreateRequestRequest dto, Integer createdByUserId) {
         return createRequest(dto, createdByUserId)
-                .flatMap(request -> enrichRequest(request.getRequestID()))
-                .flatMap(this::sendCreationNotification);
+                .flatMap(response -> searchIndex.reindex(response.requestID()).thenReturn(response))
+                .flatMap(this::sendCreationWebNotification);
     }
 
     private Mono<RequestResponse> enrichRequest(Integer requestId) {
         //noinspection SqlResolve
-        String sql = "SELECT r.RequestID, r.Description, r.ShopID, r.WorkCategoryID, r.UrgencyID, r.AssignedContractorID, r.Status, r.CreatedAt, r.ClosedAt, r.IsOverdue, " +
-                "s.ShopName, wc.WorkCategoryName, uc.UrgencyName, u.Login as AssignedContractorName, u.TelegramUsername as ContractorTgUsername, " +
-                "CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END as DaysForTask, " +
-                "(SELECT COUNT(*) FROM RequestComments rc WHERE rc.RequestID = r.RequestID) as CommentCount, " +
-                "(SELECT COUNT(*) FROM RequestPhotos rp WHERE rp.RequestID = r.RequestID) as PhotoCount " +
-                "FROM Requests r " +
-                "LEFT JOIN Shops s ON r.ShopID = s.ShopID " +
-                "LEFT JOIN WorkCategories wc ON r.WorkCategoryID = wc.WorkCategoryID " +
-                "LEFT JOIN UrgencyCategories uc ON r.UrgencyID = uc.UrgencyID " +
-                "LEFT JOIN Users u ON r.AssignedContractorID = u.UserID " +
-                "LEFT JOIN RequestCustomDays rcd ON r.RequestID = rcd.RequestID " +
-                "WHERE r.RequestID = :requestId";
+        String sql = "SELECT " + READ_MODEL_COLUMNS + " FROM RequestReadModel v WHERE v.RequestID = :requestId";
 
         return databaseClient.sql(sql)
                 .bind("requestId", requestId)
@@ -303,6 +372,13 @@ public class RequestService {
                 .map(this::withCalculatedDaysRemaining);
     }
 
+    private RequestChange withCalculatedDaysRemaining(RequestChange change) {
+        return new RequestChange(
+                change.before() != null ? withCalculatedDaysRemaining(change.before()) : null,
+                withCalculatedDaysRemaining(change.after())
+        );
+    }
+
     private RequestResponse withCalculatedDaysRemaining(RequestResponse response) {
         Integer daysRemaining = null;
 
@@ -327,7 +403,8 @@ public class RequestService {
         );
     }
 
-    protected Mono<Request> createRequest(CreateRequestRequest dto, Integer createdByUserId) {
+    // Возвращает уже обогащенную строку, полученную из MERGE ... OUTPUT при обновлении проекции
+    protected Mono<RequestResponse> createRequest(CreateRequestRequest dto, Integer createdByUserId) {
         Request request = new Request();
         request.setDescription(dto.description());
         request.setShopID(dto.shopID());
@@ -339,76 +416,89 @@ public class RequestService {
         request.setCreatedAt(LocalDateTime.now());
         request.setIsOverdue(false);
 
-        return requestRepository.save(request)
-                .flatMap(savedRequest -> {
-                    if (dto.customDays() != null) {
-                        return template.selectOne(Query.query(Criteria.where("UrgencyID").is(dto.urgencyID())), UrgencyCategory.class)
-                                .flatMap(urgency -> {
-                                    if ("Customizable".equalsIgnoreCase(urgency.getUrgencyName())) {
-                                        RequestCustomDay customDay = new RequestCustomDay();
-                                        customDay.setRequestID(savedRequest.getRequestID());
-                                        customDay.setDays(dto.customDays());
-                                        return customDayRepository.save(customDay).thenReturn(savedRequest);
-                                    }
-                                    return Mono.just(savedRequest);
-                                });
-                    }
-                    return Mono.just(savedRequest);
+        return referenceData.snapshot()
+                .flatMap(ref -> Mono.justOrEmpty(ref.urgency(dto.urgencyID())))
+                .switchIfEmpty(Mono.error(new RuntimeException("Срочность не найдена")))
+                .flatMap(urgency -> {
+                    boolean isCustomizable = "Customizable".equalsIgnoreCase(urgency.getUrgencyName());
+                    Integer daysForTask = isCustomizable ? dto.customDays() : urgency.getDefaultDays();
+                    request.setDeadline(daysForTask != null ? request.getCreatedAt().plusDays(daysForTask) : null);
+
+                    return requestRepository.save(request)
+                            .flatMap(savedRequest -> {
+                                if (isCustomizable && dto.customDays() != null) {
+                                    RequestCustomDay customDay = new RequestCustomDay();
+                                    customDay.setRequestID(savedRequest.getRequestID());
+                                    customDay.setDays(dto.customDays());
+                                    return customDayRepository.save(customDay).thenReturn(savedRequest);
+                                }
+                                return Mono.just(savedRequest);
+                            });
                 })
+                .flatMap(savedRequest -> readModelService.refreshReturning(savedRequest.getRequestID()))
+                .flatMap(change -> enqueueCreationNotification(change.after()).thenReturn(change))
+                .as(transactionalOperator::transactional)
+                .map(change -> withCalculatedDaysRemaining(change.after()))
                 .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"));
     }
 
-    public Mono<RequestResponse> updateAndEnrichRequest(Integer requestId, UpdateRequestRequest dto) {
+    public Mono<RequestChange> updateAndEnrichRequest(Integer requestId, UpdateRequestRequest dto) {
         return updateRequest(requestId, dto)
                 .flatMap(tuple -> {
                     Request savedReq = tuple.getT1();
                     List<String> changes = tuple.getT2();
+                    RequestChange change = withCalculatedDaysRemaining(tuple.getT3());
 
                     if (changes.isEmpty()) {
-                        return Mono.just(savedReq);
+                        return Mono.just(change);
                     }
 
-                    Mono<String> mentionMono = savedReq.getAssignedContractorID() != null ?
-                            userRepository.findById(savedReq.getAssignedContractorID())
-                                    .map(u -> (u.getTelegramUsername() != null && !u.getTelegramUsername().isBlank()) ? "@" + notificationService.escapeMarkdown(u.getTelegramUsername()) + "\n" : "")
-                                    .defaultIfEmpty("") : Mono.just("");
-
-                    return mentionMono.flatMap(mention -> {
-                        String msg = mention + "✏️ *ЗАЯВКА \\#" + requestId + " ОБНОВЛЕНА*\n\n" + String.join("\n", changes);
-
-                        Mono<Void> tg = chatRepository.findTelegramIdByRequestId(requestId)
-                                .flatMap(chatId -> notificationService.sendNotification(chatId, msg))
-                                .onErrorResume(e -> Mono.empty()).then();
-
-                        Mono<Void> web = webNotificationService.send(
-                                requestId,
-                                "Обновление заявки #" + requestId,
-                                "Администратор изменил параметры заявки.",
-                                savedReq.getAssignedContractorID()
-                        );
+                    return webNotificationService.send(
+                            requestId,
+                            "Обновление заявки #" + requestId,
+                            "Администратор изменил параметры заявки.",
+                            savedReq.getAssignedContractorID()
+                    ).thenReturn(change);
+                });
+    }
 
-                        return Mono.when(tg, web).thenReturn(savedReq);
-                    });
-                })
-                .flatMap(request -> enrichRequest(request.getRequestID()));
+    // Ставится в очередь в транзакции изменения заявки; ошибка записи в очередь откатывает и само изменение
+    private Mono<Void> enqueueUpdateNotification(Request savedReq, List<String> changes) {
+        if (changes.isEmpty()) {
+            return Mono.empty();
+        }
+        Integer requestId = savedReq.getRequestID();
+        Mono<String> mentionMono = savedReq.getAssignedContractorID() != null ?
+                userDirectory.findById(savedReq.getAssignedContractorID()).map(UserDirectoryService.Entry::user)
+                        .map(u -> (u.getTelegramUsername() != null && !u.getTelegramUsername().isBlank()) ? "@" + notificationService.escapeMarkdown(u.getTelegramUsername()) + "\n" : "")
+                        .defaultIfEmpty("") : Mono.just("");
+
+        return mentionMono.flatMap(mention -> {
+            String msg = mention + "✏️ *ЗАЯВКА \\#" + requestId + " ОБНОВЛЕНА*\n\n" + String.join("\n", changes);
+            NotificationOutbox.Digest digest = new NotificationOutbox.Digest(requestId, mention, "✏️ *Изменения:*\n" + String.join("\n", changes));
+            return referenceData.resolveChatTelegramId(savedReq.getShopID(), savedReq.getAssignedContractorID())
+                    .flatMap(chatId -> outbox.enqueueText(chatId, msg, digest));
+        });
     }
 
-    protected Mono<Tuple2<Request, List<String>>> updateRequest(Integer requestId, UpdateRequestRequest dto) {
+    protected Mono<Tuple3<Request, List<String>, RequestChange>> updateRequest(Integer requestId, UpdateRequestRequest dto) {
         Mono<Request> requestMono = requestRepository.findById(requestId);
 
-        Mono<UrgencyCategory> urgencyMono = urgencyCategoryRepository.findById(dto.urgencyID())
+        Mono<ReferenceDataService.Snapshot> refMono = referenceData.snapshot();
+
+        Mono<UrgencyCategory> urgencyMono = refMono.flatMap(ref -> Mono.justOrEmpty(ref.urgency(dto.urgencyID())))
                 .switchIfEmpty(Mono.error(new RuntimeException("Срочность не найдена")));
 
         Mono<Integer> oldCustomDaysMono = customDayRepository.findByRequestID(requestId)
                 .map(RequestCustomDay::getDays)
                 .defaultIfEmpty(0);
 
-        Mono<String> shopNameMono = shopRepository.findById(dto.shopID())
-                .map(Shop::getShopName).defaultIfEmpty("Неизвестный магазин");
-        Mono<String> workNameMono = workCategoryRepository.findById(dto.workCategoryID())
-                .map(WorkCategory::getWorkCategoryName).defaultIfEmpty("Неизвестный вид работ");
+        Mono<String> shopNameMono = refMono.map(ref -> ref.shop(dto.shopID())
+                .map(Shop::getShopName).orElse("Неизвестный магазин"));
+        Mono<String> workNameMono = refMono.map(ref -> ref.workCategory(dto.workCategoryID())
+                .map(WorkCategory::getWorkCategoryName).orElse("Неизвестный вид работ"));
         Mono<String> contractorNameMono = dto.assignedContractorID() != null
-                ? userRepository.findById(dto.assignedContractorID()).map(User::getLogin).defaultIfEmpty("Не назначен")
+                ? userDirectory.findById(dto.assignedContractorID()).map(e -> e.user().getLogin()).defaultIfEmpty("Не назначен")
                 : Mono.just("Не назначен");
 
         return Mono.zip(requestMono, urgencyMono, shopNameMono, workNameMono, contractorNameMono, oldCustomDaysMono)
@@ -484,6 +574,7 @@ public class RequestService {
                         LocalDateTime deadline = request.getCreatedAt().plusDays(daysForTask);
                         boolean isNowOverdue = LocalDateTime.now().isAfter(deadline);
 
+                        request.setDeadline(deadline);
                         request.setIsOverdue(isNowOverdue);
 
                         if ("In work".equalsIgnoreCase(request.getStatus())) {
@@ -494,6 +585,7 @@ public class RequestService {
                             }
                         }
                     } else {
+                        request.setDeadline(null);
                         request.setIsOverdue(false);
                     }
 
@@ -511,29 +603,262 @@ public class RequestService {
                             }));
 
                     return customDaysLogic.then(updatedRequestMono)
-                            .map(savedReq -> Tuples.of(savedReq, changes))
+                            .flatMap(savedReq -> readModelService.refreshReturning(requestId).map(change -> Tuples.of(savedReq, changes, change)))
+                            .flatMap(result -> enqueueUpdateNotification(result.getT1(), changes).thenReturn(result))
+                            .as(transactionalOperator::transactional)
+                            .flatMap(result -> searchIndex.reindex(requestId).thenReturn(result))
                             .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"));
                 });
     }
 
-    public Mono<Void> deleteRequest(Integer requestId) {
-        return requestRepository.deleteById(requestId)
-                .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"));
+    /**
+     * Массовое изменение статуса, исполнителя и/или срочности.
+     * Все изменения выполняются несколькими UPDATE по списку ID в одной транзакции, проекция обновляется одним MERGE.
+     */
+    public Mono<List<RequestChange>> bulkUpdateRequests(BulkRequestUpdateRequest dto) {
+        List<Integer> ids = dto.requestIds().stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) {
+            return Mono.error(new OperationNotAllowedException("Нужно выбрать хотя бы одну заявку"));
+        }
+        if (ids.size() > bulkMaxSize) {
+            return Mono.error(new OperationNotAllowedException("За один раз можно изменить не более " + bulkMaxSize + " заявок"));
+        }
+        if (dto.status() == null && dto.assignedContractorID() == null && dto.urgencyID() == null) {
+            return Mono.error(new OperationNotAllowedException("Не указано ни одного изменения"));
+        }
+        if (dto.status() != null && !STATUSES.contains(dto.status())) {
+            return Mono.error(new OperationNotAllowedException("Недопустимый статус: " + dto.status()));
+        }
+
+        Mono<Void> contractorCheck = dto.assignedContractorID() == null ? Mono.empty() :
+                userDirectory.findById(dto.assignedContractorID())
+                        .switchIfEmpty(Mono.error(new UserNotFoundException("Пользователь с ID " + dto.assignedContractorID() + " не найден")))
+                        .flatMap(entry -> "Contractor".equals(entry.roleName()) ? Mono.<Void>empty()
+                                : Mono.error(new OperationNotAllowedException("Пользователь '" + entry.user().getLogin() + "' не является подрядчиком")))
+                        .then();
+
+        Mono<Optional<UrgencyCategory>> urgencyMono = dto.urgencyID() == null ? Mono.just(Optional.empty()) :
+                referenceData.snapshot()
+                        .flatMap(ref -> Mono.justOrEmpty(ref.urgency(dto.urgencyID())))
+                        .switchIfEmpty(Mono.error(new RuntimeException("Срочность не найдена")))
+                        .map(Optional::of);
+
+        return contractorCheck.then(urgencyMono)
+                .flatMap(urgencyOpt -> {
+                    LocalDateTime now = LocalDateTime.now();
+                    boolean isCustomizable = urgencyOpt.map(u -> "Customizable".equalsIgnoreCase(u.getUrgencyName())).orElse(false);
+                    if (isCustomizable && dto.customDays() == null) {
+                        return Mono.error(new OperationNotAllowedException("Для настраиваемой срочности нужно указать количество дней"));
+                    }
+
+                    List<String> sets = new ArrayList<>();
+                    Map<String, Object> bindings = new HashMap<>();
+                    bindings.put("ids", ids);
+
+                    if (dto.status() != null) {
+                        sets.add("ClosedAt = CASE WHEN Status <> 'Closed' AND :status = 'Closed' THEN :now ELSE ClosedAt END");
+                        sets.add("Status = :status");
+                        bindings.put("status", dto.status());
+                        bindings.put("now", now);
+                    }
+                    if (dto.assignedContractorID() != null) {
+                        sets.add("AssignedContractorID = :contractorId");
+                        bindings.put("contractorId", dto.assignedContractorID());
+                    }
+
+                    Mono<Void> customDaysLogic = Mono.empty();
+                    if (urgencyOpt.isPresent()) {
+                        UrgencyCategory urgency = urgencyOpt.get();
+                        Integer daysForTask = isCustomizable ? dto.customDays() : urgency.getDefaultDays();
+
+                        sets.add("UrgencyID = :urgencyId");
+                        bindings.put("urgencyId", urgency.getUrgencyID());
+                        if (daysForTask != null) {
+                            sets.add("Deadline = DATEADD(day, :days, CreatedAt)");
+                            sets.add("IsOverdue = CASE WHEN DATEADD(day, :days, CreatedAt) < :now THEN 1 ELSE 0 END");
+                            bindings.put("days", daysForTask);
+                            bindings.put("now", now);
+                        } else {
+                            sets.add("Deadline = NULL");
+                            sets.add("IsOverdue = 0");
+                        }
+
+                        customDaysLogic = databaseClient.sql("DELETE FROM RequestCustomDays WHERE RequestID IN (:ids)")
+                                .bind("ids", ids)
+                                .fetch().rowsUpdated()
+                                .then(Mono.defer(() -> !isCustomizable ? Mono.empty() :
+                                        databaseClient.sql("INSERT INTO RequestCustomDays (RequestID, Days) " +
+                                                        "SELECT RequestID, :days FROM Requests WHERE RequestID IN (:ids)")
+                                                .bind("days", dto.customDays())
+                                                .bind("ids", ids)
+                                                .fetch().rowsUpdated()
+                                                .then()));
+                    }
+
+                    DatabaseClient.GenericExecuteSpec update = databaseClient.sql(
+                            "UPDATE Requests SET " + String.join(", ", sets) + " WHERE RequestID IN (:ids)");
+                    for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+                        update = update.bind(binding.getKey(), binding.getValue());
+                    }
+
+                    return update.fetch().rowsUpdated()
+                            .then(customDaysLogic)
+                            .thenMany(readModelService.refreshReturning(ids))
+                            .collectList()
+                            .flatMap(changes -> enqueueBulkNotifications(changedByBulk(changes), dto).thenReturn(changes))
+                            .as(transactionalOperator::transactional);
+                })
+                .map(changes -> changes.stream().map(this::withCalculatedDaysRemaining).toList())
+                .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"))
+                .flatMap(changes -> sendBulkWebNotifications(changedByBulk(changes)).thenReturn(changes));
+    }
+
+    private static List<RequestResponse> changedByBulk(List<RequestChange> changes) {
+        return changes.stream()
+                .filter(c -> c.before() == null
+                        || !Objects.equals(c.before().status(), c.after().status())
+                        || !Objects.equals(c.before().assignedContractorID(), c.after().assignedContractorID())
+                        || !Objects.equals(c.before().urgencyID(), c.after().urgencyID())
+                        || !Objects.equals(c.before().daysForTask(), c.after().daysForTask()))
+                .map(RequestChange::after)
+                .toList();
+    }
+
+    // Одно сообщение на чат со списком затронутых заявок вместо отдельного сообщения на каждую; пишется в транзакции изменения
+    private Mono<Void> enqueueBulkNotifications(List<RequestResponse> changed, BulkRequestUpdateRequest dto) {
+        if (changed.isEmpty()) {
+            return Mono.empty();
+        }
+
+        List<String> lines = new ArrayList<>();
+        if (dto.status() != null) {
+            lines.add("📊 *Статус:* " + getStatusDisplayName(dto.status()));
+        }
+        if (dto.assignedContractorID() != null) {
+            lines.add("👷 *Исполнитель:* " + notificationService.escapeMarkdown(changed.get(0).assignedContractorName()));
+        }
+        if (dto.urgencyID() != null) {
+            String localizedUrgency = getUrgencyDisplayName(changed.get(0).urgencyName());
+            if ("Customizable".equalsIgnoreCase(changed.get(0).urgencyName()) && dto.customDays() != null) {
+                localizedUrgency += " \\(" + dto.customDays() + " дн\\.\\)";
+            }
+            lines.add("🔥 *Срочность:* " + localizedUrgency);
+        }
+
+        return referenceData.snapshot().flatMap(ref -> {
+            Map<Long, List<RequestResponse>> byChat = new LinkedHashMap<>();
+            for (RequestResponse r : changed) {
+                ref.chatTelegramId(r.shopID(), r.assignedContractorID())
+                        .ifPresent(chatId -> byChat.computeIfAbsent(chatId, k -> new ArrayList<>()).add(r));
+            }
+
+            return Flux.fromIterable(byChat.entrySet())
+                    .concatMap(group -> {
+                        String mention = group.getValue().stream()
+                                .map(RequestResponse::contractorTgUsername)
+                                .filter(u -> u != null && !u.isBlank())
+                                .distinct()
+                                .map(u -> "@" + notificationService.escapeMarkdown(u))
+                                .reduce((a, b) -> a + " " + b)
+                                .map(m -> m + "\n")
+                                .orElse("");
+                        String numbers = group.getValue().stream()
+                                .map(r -> "\\#" + r.requestID())
+                                .reduce((a, b) -> a + ", " + b)
+                                .orElse("");
+                        String msg = mention + "✏️ *ЗАЯВКИ ОБНОВЛЕНЫ \\(" + group.getValue().size() + "\\)*\n\n" +
+                                String.join("\n", lines) + "\n\n📋 *Заявки:* " + numbers;
+
+                        return outbox.enqueueText(group.getKey(), msg);
+                    })
+                    .then();
+        });
+    }
+
+    private Mono<Void> sendBulkWebNotifications(List<RequestResponse> changed) {
+        if (changed.isEmpty()) {
+            return Mono.empty();
+        }
+        Set<Integer> contractorIds = new HashSet<>();
+        changed.forEach(r -> {
+            if (r.assignedContractorID() != null) contractorIds.add(r.assignedContractorID());
+        });
+        String numbers = changed.stream().map(r -> "#" + r.requestID()).reduce((a, b) -> a + ", " + b).orElse("");
+        return webNotificationService.sendToAdminsAnd(
+                null,
+                "Массовое изменение заявок (" + changed.size() + ")",
+                "Администратор изменил заявки: " + numbers,
+                contractorIds
+        );
+    }
+
+    // Возвращает последнее состояние удаленной заявки для аудита (пусто, если заявки не было)
+    public Mono<RequestResponse> deleteRequest(Integer requestId) {
+        return readModelService.removeReturning(requestId)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(deleted -> requestRepository.deleteById(requestId).thenReturn(deleted))
+                .as(transactionalOperator::transactional)
+                .flatMap(deleted -> Mono.justOrEmpty(deleted.map(this::withCalculatedDaysRemaining)))
+                .doOnSuccess(v -> {
+                    searchIndex.remove(requestId);
+                    updateBroadcaster.publish("REQUESTS_UPDATED");
+                });
     }
 
     public Flux<Integer> getPhotoIdsForRequest(Integer requestId) {
-        return photoRepository.findByRequestID(requestId)
-                .map(RequestPhoto::getRequestPhotoID);
+        return photoRepository.findIdsByRequestID(requestId);
     }
 
-    public Mono<byte[]> getPhotoById(Integer photoId) {
-        return photoRepository.findById(photoId)
-                .map(RequestPhoto::getImageData);
+    public Mono<PhotoContent> getPhotoById(Integer photoId) {
+        return getPhotoById(photoId, null);
+    }
+
+    // size: thumb или preview - уменьшенная копия; если копия не нужна или недоступна, отдается оригинал
+    public Mono<PhotoContent> getPhotoById(Integer photoId, String size) {
+        Optional<PhotoThumbnailService.Rendition> rendition = PhotoThumbnailService.Rendition.fromParam(size);
+        return photoCache.get(photoCacheKey(photoId, rendition), () -> loadPhoto(photoId, rendition));
+    }
+
+    // Содержимое для ответа 200; getPhotoById его не читает, чтобы 304 обходился без загрузки фото
+    public Mono<PhotoContent> getPhotoBody(PhotoContent photo, String size) {
+        return photoCache.withPayload(photoCacheKey(photo.photoId(), PhotoThumbnailService.Rendition.fromParam(size)), photo);
+    }
+
+    private static PhotoCache.Key photoCacheKey(Integer photoId, Optional<PhotoThumbnailService.Rendition> rendition) {
+        return new PhotoCache.Key(photoId, rendition.map(Enum::name).orElse("ORIGINAL"));
+    }
+
+    private Mono<PhotoContent> loadPhoto(Integer photoId, Optional<PhotoThumbnailService.Rendition> rendition) {
+        return photoRepository.findMetadataById(photoId)
+                .flatMap(photo -> {
+                    String hash = photo.getContentHash();
+                    if (hash != null) {
+                        // Оригинал из холодного хранилища пережат, поэтому у него свой ETag и тип
+                        Mono<PhotoContent> original = Mono.fromCallable(() -> photoStorage.locate(hash))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .map(path -> photoStorage.isCold(path)
+                                        ? new PhotoContent(photo.getRequestPhotoID(), hash, hash + "-cold", MediaType.IMAGE_JPEG_VALUE,
+                                                path.toFile().length(), new FileSystemResource(path))
+                                        : new PhotoContent(photo.getRequestPhotoID(), hash, hash, photo.getContentType(),
+                                                Optional.ofNullable(photo.getSizeBytes()).orElse(0L), new FileSystemResource(path)));
+                        return Mono.justOrEmpty(rendition)
+                                .flatMap(r -> thumbnails.resolve(hash, r)
+                                        .map(path -> new PhotoContent(photo.getRequestPhotoID(), hash, hash + "-" + r.name().toLowerCase(),
+                                                MediaType.IMAGE_JPEG_VALUE, path.toFile().length(), new FileSystemResource(path))))
+                                .switchIfEmpty(original);
+                    }
+                    // Строка еще не перенесена мигратором - отдаем содержимое из базы
+                    return photoRepository.findById(photoId)
+                            .flatMap(legacy -> Mono.justOrEmpty(legacy.getImageData()))
+                            .map(bytes -> new PhotoContent(photo.getRequestPhotoID(), null, null, MediaType.IMAGE_JPEG_VALUE, bytes.length, new ByteArrayResource(bytes)));
+                });
     }
 
     public Flux<CommentResponse> getCommentsForRequest(Integer requestId) {
         return commentRepository.findByRequestIDOrderByCreatedAtAsc(requestId)
-                .flatMap(comment -> userRepository.findById(comment.getUserID())
+                .flatMap(comment -> userDirectory.findById(comment.getUserID())
+                        .map(UserDirectoryService.Entry::user)
                         .map(user -> new CommentResponse(
                                 comment.getCommentID(),
                                 comment.getRequestID(),
@@ -571,7 +896,7 @@ public class RequestService {
     public Mono<CommentResponse> addCommentToRequest(Integer requestId, CreateCommentRequest dto, Integer userId) {
         return requestRepository.findById(requestId)
                 .switchIfEmpty(Mono.error(new RuntimeException("Заявка с ID " + requestId + " не найдена")))
-                .zipWith(userRepository.findById(userId))
+                .zipWith(userDirectory.findById(userId).map(UserDirectoryService.Entry::user))
                 .flatMap(tuple -> {
                     Request request = tuple.getT1();
                     User user = tuple.getT2();
@@ -591,61 +916,62 @@ public class RequestService {
                         newComment.setCreatedAt(LocalDateTime.now());
                         newComment.setParentCommentID(dto.parentCommentID());
 
-                        return commentRepository.save(newComment)
-                                .flatMap(savedComment -> {
-                                    String author = notificationService.escapeMarkdown(user.getLogin());
-                                    String safeText = notificationService.escapeMarkdown(dto.commentText());
-
-                                    // Получаем ник подрядчика (ЕСЛИ комментарий пишет НЕ сам подрядчик)
-                                    boolean isContractorCommenting = Objects.equals(request.getAssignedContractorID(), userId);
-                                    Mono<String> mentionMono = (!isContractorCommenting && request.getAssignedContractorID() != null) ?
-                                            userRepository.findById(request.getAssignedContractorID())
-                                                    .map(u -> (u.getTelegramUsername() != null && !u.getTelegramUsername().isBlank()) ? "@" + notificationService.escapeMarkdown(u.getTelegramUsername()) + "\n" : "")
-                                                    .defaultIfEmpty("") : Mono.just("");
-
-                                    return mentionMono.flatMap(mention -> {
-                                        Mono<Void> tgMono;
-
-                                        if (dto.parentCommentID() != null) {
-                                            tgMono = commentRepository.findById(dto.parentCommentID())
-                                                    .flatMap(parentComment -> {
-                                                        String parentText = parentComment.getCommentText();
-                                                        String parentSnippet = parentText.length() > 50
-                                                                ? parentText.substring(0, 47) + "..."
-                                                                : parentText;
-
-                                                        String safeParentSnippet = notificationService.escapeMarkdown(parentSnippet);
-
-                                                        String msg = String.format(
-                                                                "%s↩️ *ОТВЕТ пользователю в заявке \\#%d*\n" +
-                                                                        "💬 _На комментарий: \"%s\"_\n" +
-                                                                        "👤 *От:* %s\n\n%s",
-                                                                mention, requestId, safeParentSnippet, author, safeText
-                                                        );
-
-                                                        return chatRepository.findTelegramIdByRequestId(requestId)
-                                                                .flatMap(chatId -> notificationService.sendCommentNotification(chatId, msg, requestId, savedComment.getCommentID()));
-                                                    });
-                                        } else {
-                                            String msg = String.format("%s💬 *Новый комментарий к заявке \\#%d*\n👤 *От:* %s\n\n%s", mention, requestId, author, safeText);
-                                            tgMono = chatRepository.findTelegramIdByRequestId(requestId)
-                                                    .flatMap(chatId -> notificationService.sendCommentNotification(chatId, msg, requestId, savedComment.getCommentID()));
-                                        }
+                        String author = notificationService.escapeMarkdown(user.getLogin());
+                        String safeText = notificationService.escapeMarkdown(dto.commentText());
+
+                        // Получаем ник подрядчика (ЕСЛИ комментарий пишет НЕ сам подрядчик)
+                        boolean isContractorCommenting = Objects.equals(request.getAssignedContractorID(), userId);
+                        Mono<String> mentionMono = (!isContractorCommenting && request.getAssignedContractorID() != null) ?
+                                userDirectory.findById(request.getAssignedContractorID()).map(UserDirectoryService.Entry::user)
+                                        .map(u -> (u.getTelegramUsername() != null && !u.getTelegramUsername().isBlank()) ? "@" + notificationService.escapeMarkdown(u.getTelegramUsername()) + "\n" : "")
+                                        .defaultIfEmpty("") : Mono.just("");
 
-                                        Mono<Void> webMono = webNotificationService.send(
+                        // Текст уведомления готовится до сохранения, чтобы поставить его в очередь в той же транзакции
+                        Mono<Tuple2<String, NotificationOutbox.Digest>> tgMessageMono = mentionMono.flatMap(mention -> {
+                            if (dto.parentCommentID() != null) {
+                                return commentRepository.findById(dto.parentCommentID())
+                                        .map(parentComment -> {
+                                            String parentText = parentComment.getCommentText();
+                                            String parentSnippet = parentText.length() > 50
+                                                    ? parentText.substring(0, 47) + "..."
+                                                    : parentText;
+
+                                            String safeParentSnippet = notificationService.escapeMarkdown(parentSnippet);
+
+                                            String msg = String.format(
+                                                    "%s↩️ *ОТВЕТ пользователю в заявке \\#%d*\n" +
+                                                            "💬 _На комментарий: \"%s\"_\n" +
+                                                            "👤 *От:* %s\n\n%s",
+                                                    mention, requestId, safeParentSnippet, author, safeText
+                                            );
+                                            String line = String.format("↩️ *%s* \\(ответ на \"%s\"\\): %s", author, safeParentSnippet, safeText);
+                                            return Tuples.of(msg, new NotificationOutbox.Digest(requestId, mention, line));
+                                        });
+                            }
+                            String msg = String.format("%s💬 *Новый комментарий к заявке \\#%d*\n👤 *От:* %s\n\n%s", mention, requestId, author, safeText);
+                            String line = String.format("💬 *%s:* %s", author, safeText);
+                            return Mono.just(Tuples.of(msg, new NotificationOutbox.Digest(requestId, mention, line)));
+                        });
+
+                        return tgMessageMono.map(Optional::of).defaultIfEmpty(Optional.empty())
+                                .flatMap(tgMessage -> commentRepository.save(newComment)
+                                        .flatMap(savedComment -> readModelService.refresh(requestId).thenReturn(savedComment))
+                                        .flatMap(savedComment -> Mono.justOrEmpty(tgMessage)
+                                                .flatMap(msg -> referenceData.resolveChatTelegramId(request.getShopID(), request.getAssignedContractorID())
+                                                        .flatMap(chatId -> outbox.enqueueComment(chatId, msg.getT1(), savedComment.getCommentID(), msg.getT2())))
+                                                .thenReturn(savedComment))
+                                        .as(transactionalOperator::transactional))
+                                .flatMap(savedComment -> searchIndex.reindex(requestId).thenReturn(savedComment))
+                                .flatMap(savedComment -> webNotificationService.send(
                                                 requestId,
                                                 "Новый комментарий #" + requestId,
                                                 "Автор: " + user.getLogin() + ". Текст: " + dto.commentText(),
                                                 request.getAssignedContractorID()
-                                        );
-
-                                        return Mono.when(tgMono.onErrorResume(e -> Mono.empty()), webMono)
-                                                .thenReturn(savedComment);
-                                    });
-                                });
+                                        )
+                                        .thenReturn(savedComment));
                     });
                 })
-                .flatMap(savedComment -> userRepository.findById(userId).map(user -> new CommentResponse(
+                .flatMap(savedComment -> userDirectory.findById(userId).map(UserDirectoryService.Entry::user).map(user -> new CommentResponse(
                         savedComment.getCommentID(),
                         savedComment.getRequestID(),
                         user.getLogin(),
@@ -657,15 +983,133 @@ public class RequestService {
                 .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"));
     }
 
-    public Flux<byte[]> getPhotosForRequest(Integer requestId) {
-        return photoRepository.findByRequestID(requestId)
-                .map(RequestPhoto::getImageData);
+    /**
+     * ZIP-архив всех фото заявки, который пишется в ответ по мере чтения клиентом.
+     * До начала ответа читаются только метаданные и проверяется наличие файлов: фото без файла пропускается,
+     * а не обрывает уже начатый архив. Каждый элемент пишется своим OutputStreamPublisher, который блокирует запись,
+     * пока нет спроса; еще не перенесенное из базы фото читается непосредственно перед своим элементом,
+     * поэтому в памяти одновременно не больше одного изображения.
+     */
+    public Flux<DataBuffer> getPhotosArchive(Integer requestId) {
+        return requestRepository.existsById(requestId)
+                .flatMapMany(exists -> {
+                    if (!exists) return Flux.error(new RuntimeException("Заявка с ID " + requestId + " не найдена"));
+                    return photoRepository.findMetadataByRequestID(requestId)
+                            .concatMap(photo -> archivable(requestId, photo))
+                            .collectList()
+                            .flatMapMany(photos -> {
+                                ZipStream archive = new ZipStream();
+                                AtomicInteger index = new AtomicInteger(1);
+                                return Flux.fromIterable(photos)
+                                        .concatMap(photo -> archiveEntry(archive, index, requestId, photo))
+                                        .concatWith(archive.part(ZipOutputStream::finish));
+                            });
+                });
+    }
+
+    private Mono<RequestPhoto> archivable(Integer requestId, RequestPhoto photo) {
+        if (photo.getContentHash() == null) return Mono.just(photo);
+        return Mono.fromCallable(() -> Files.exists(photoStorage.locate(photo.getContentHash())))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(present -> {
+                    if (present) return Mono.just(photo);
+                    log.warn("Файл фото {} заявки {} не найден, фото не попадет в архив", photo.getContentHash(), requestId);
+                    return Mono.empty();
+                });
+    }
+
+    private Flux<DataBuffer> archiveEntry(ZipStream archive, AtomicInteger index, Integer requestId, RequestPhoto photo) {
+        String extension = "image/png".equals(photo.getContentType()) ? "png" : "jpg";
+        if (photo.getContentHash() == null) {
+            return photoRepository.findById(photo.getRequestPhotoID())
+                    .filter(legacy -> legacy.getImageData() != null)
+                    .flatMapMany(legacy -> archive.part(zip -> {
+                        zip.putNextEntry(new ZipEntry(entryName(requestId, index.getAndIncrement(), extension)));
+                        zip.write(legacy.getImageData());
+                        zip.closeEntry();
+                    }));
+        }
+        return archive.part(zip -> {
+            InputStream file = openPhoto(photo.getContentHash());
+            if (file == null) {
+                log.warn("Файл фото {} заявки {} пропал во время выгрузки архива", photo.getContentHash(), requestId);
+                return;
+            }
+            try (InputStream in = file) {
+                zip.putNextEntry(new ZipEntry(entryName(requestId, index.getAndIncrement(), extension)));
+                in.transferTo(zip);
+                zip.closeEntry();
+            }
+        });
+    }
+
+    private static String entryName(Integer requestId, int index, String extension) {
+        return String.format("request_%d_photo_%02d.%s", requestId, index, extension);
+    }
+
+    /**
+     * Общий ZipOutputStream архива, который пишется по частям: каждая часть перенаправляет его вывод в свой поток
+     * OutputStreamPublisher. Части подписываются строго по очереди (concatMap), поэтому поток части меняется только
+     * между ними; closeEntry выталкивает данные элемента целиком, finish дописывает оглавление архива.
+     */
+    private static final class ZipStream {
+
+        interface Part {
+            void writeTo(ZipOutputStream zip) throws IOException;
+        }
+
+        private volatile OutputStream target = OutputStream.nullOutputStream();
+        private final ZipOutputStream zip = new ZipOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                target.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                target.write(b, off, len);
+            }
+        });
+
+        ZipStream() {
+            // JPEG и PNG уже сжаты, повторное сжатие только тратит CPU
+            zip.setLevel(Deflater.NO_COMPRESSION);
+        }
+
+        Flux<DataBuffer> part(Part part) {
+            return Flux.from(DataBufferUtils.outputStreamPublisher(
+                    out -> {
+                        target = out;
+                        try {
+                            part.writeTo(zip);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException("Не удалось сформировать архив фото", e);
+                        } finally {
+                            target = OutputStream.nullOutputStream();
+                        }
+                    },
+                    DefaultDataBufferFactory.sharedInstance,
+                    task -> Schedulers.boundedElastic().schedule(task),
+                    ARCHIVE_CHUNK_SIZE));
+        }
+    }
+
+    // Файл открывается до записи заголовка элемента; если его только что перенесли в холодное хранилище, путь ищется заново
+    private InputStream openPhoto(String contentHash) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                return Files.newInputStream(photoStorage.locate(contentHash));
+            } catch (NoSuchFileException e) {
+                // повторяем с новым путем
+            }
+        }
+        return null;
     }
 
     public Mono<Void> addPhotosToRequest(Integer requestId, Flux<FilePart> filePartFlux, Integer userId) {
         return requestRepository.findById(requestId)
                 .switchIfEmpty(Mono.error(new RuntimeException("Заявка с ID " + requestId + " не найдена")))
-                .zipWith(userRepository.findById(userId))
+                .zipWith(userDirectory.findById(userId).map(UserDirectoryService.Entry::user))
                 .flatMap(tuple -> {
                     Request request = tuple.getT1();
                     User user = tuple.getT2();
@@ -678,7 +1122,7 @@ public class RequestService {
                         // Получаем ник подрядчика (ЕСЛИ фото грузит НЕ сам подрядчик)
                         boolean isContractorUploading = Objects.equals(request.getAssignedContractorID(), userId);
                         Mono<String> mentionMono = (!isContractorUploading && request.getAssignedContractorID() != null) ?
-                                userRepository.findById(request.getAssignedContractorID())
+                                userDirectory.findById(request.getAssignedContractorID()).map(UserDirectoryService.Entry::user)
                                         .map(u -> (u.getTelegramUsername() != null && !u.getTelegramUsername().isBlank()) ? "@" + notificationService.escapeMarkdown(u.getTelegramUsername()) + "\n" : "")
                                         .defaultIfEmpty("") : Mono.just("");
 
@@ -691,27 +1135,37 @@ public class RequestService {
                                             return Mono.error(new OperationNotAllowedException("Файл " + filePart.filename() + " имеет недопустимый тип данных"));
                                         }
 
-                                        return DataBufferUtils.join(filePart.content())
-                                                .flatMap(dataBuffer -> {
-                                                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                                                    dataBuffer.read(bytes);
-                                                    DataBufferUtils.release(dataBuffer);
-
+                                        // Файл пишется на диск по чанкам, в память целиком не попадает
+                                        return photoStorage.store(filePart.content(), MAX_SINGLE_FILE_SIZE, filePart.filename())
+                                                // То же фото, повторно присланное в эту заявку, не добавляется и не рассылается второй раз
+                                                .filterWhen(stored -> photoRepository.existsByRequestIDAndContentHash(requestId, stored.contentHash()).map(exists -> !exists))
+                                                .flatMap(stored -> {
                                                     RequestPhoto photo = new RequestPhoto();
                                                     photo.setRequestID(requestId);
-                                                    photo.setImageData(bytes);
-
+                                                    photo.setContentHash(stored.contentHash());
+                                                    photo.setContentType(stored.contentType());
+                                                    photo.setSizeBytes(stored.sizeBytes());
+                                                    photo.setCreatedAt(LocalDateTime.now());
+                                                    String author = notificationService.escapeMarkdown(user.getLogin());
+                                                    String caption = String.format("%s📷 *Новое фото к заявке \\#%d*\n👤 *Добавил:* %s", mention, requestId, author);
                                                     return photoRepository.save(photo)
-                                                            .flatMap(savedPhoto -> chatRepository.findTelegramIdByRequestId(requestId)
-                                                                    .flatMap(chatId -> {
-                                                                        String author = notificationService.escapeMarkdown(user.getLogin());
-                                                                        String caption = String.format("%s📷 *Новое фото к заявке \\#%d*\n👤 *Добавил:* %s", mention, requestId, author);
-                                                                        return notificationService.sendPhoto(chatId, caption, bytes);
-                                                                    })
-                                                                    .onErrorResume(e -> Mono.empty())
-                                                                    .thenReturn(savedPhoto));
-                                                });
-                                    })
+                                                            .flatMap(savedPhoto -> readModelService.refresh(requestId).thenReturn(savedPhoto))
+                                                            .flatMap(savedPhoto -> referenceData.resolveChatTelegramId(request.getShopID(), request.getAssignedContractorID())
+                                                                    .flatMap(chatId -> outbox.enqueuePhoto(chatId, caption, savedPhoto.getContentHash(),
+                                                                            new NotificationOutbox.Digest(requestId, mention, "📷 *Фото добавил:* " + author)))
+                                                                    .thenReturn(savedPhoto))
+                                                            .as(transactionalOperator::transactional)
+                                                            // Проверка выше не защищает от параллельной загрузки того же фото, ее страхует уникальный индекс
+                                                            .onErrorResume(PhotoStorageService::isDuplicateInRequest, e -> Mono.empty());
+                                                })
+                                                // Миниатюры создаются сразу, чтобы галерея не ждала их при первом просмотре
+                                                .flatMap(savedPhoto -> thumbnails.generate(savedPhoto.getContentHash())
+                                                        .onErrorResume(e -> {
+                                                            log.warn("Не удалось создать миниатюры для фото {}: {}", savedPhoto.getContentHash(), e.getMessage());
+                                                            return Mono.just(false);
+                                                        })
+                                                        .thenReturn(savedPhoto));
+                                    }, uploadConcurrency)
                                     .collectList()
                                     .flatMap(savedPhotos -> {
                                         if (savedPhotos.isEmpty()) return Mono.empty();
@@ -728,7 +1182,7 @@ public class RequestService {
                 .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"));
     }
 
-    public Mono<RequestResponse> completeRequest(Integer requestId, Integer contractorId) {
+    public Mono<RequestChange> completeRequest(Integer requestId, Integer contractorId) {
         return requestRepository.findById(requestId)
                 .switchIfEmpty(Mono.error(new RuntimeException("Заявка с ID " + requestId + " не найдена")))
                 .flatMap(request -> {
@@ -741,7 +1195,7 @@ public class RequestService {
 
                     request.setStatus("Done");
 
-                    Mono<UrgencyCategory> urgencyMono = urgencyCategoryRepository.findById(request.getUrgencyID());
+                    Mono<UrgencyCategory> urgencyMono = referenceData.snapshot().flatMap(ref -> Mono.justOrEmpty(ref.urgency(request.getUrgencyID())));
                     Mono<RequestCustomDay> customDayMono = customDayRepository.findByRequestID(requestId)
                             .defaultIfEmpty(new RequestCustomDay());
 
@@ -761,24 +1215,26 @@ public class RequestService {
 
                         request.setIsOverdue(isOverdue);
 
-                        return requestRepository.save(request);
+                        return requestRepository.save(request)
+                                .then(readModelService.refreshReturning(requestId))
+                                .as(transactionalOperator::transactional);
                     });
                 })
-                .flatMap(savedRequest -> {
+                .flatMap(change -> {
                     return webNotificationService.send(
-                            savedRequest.getRequestID(),
-                            "✅ Заявка выполнена #" + savedRequest.getRequestID(),
+                            requestId,
+                            "✅ Заявка выполнена #" + requestId,
                             "Исполнитель отметил заявку как выполненную.",
                             null
-                    ).thenReturn(savedRequest);
+                    ).thenReturn(change);
                 })
-                .flatMap(savedRequest -> enrichRequest(savedRequest.getRequestID()))
+                .map(this::withCalculatedDaysRemaining)
                 .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"));
     }
 
     private Mono<Boolean> canUserModify(Request request, User user) {
-        return roleRepository.findById(user.getRoleID()).flatMap(role -> {
-            String roleName = role.getRoleName();
+        return userDirectory.findById(user.getUserID()).flatMap(entry -> {
+            String roleName = entry.roleName();
             if ("RetailAdmin".equals(roleName)) {
                 return Mono.just(true);
             }
@@ -789,7 +1245,7 @@ public class RequestService {
         });
     }
 
-    public Mono<RequestResponse> restoreRequest(Integer requestId) {
+    public Mono<RequestChange> restoreRequest(Integer requestId) {
         return requestRepository.findById(requestId)
                 .switchIfEmpty(Mono.error(new RuntimeException("Заявка с ID " + requestId + " не найдена")))
                 .flatMap(request -> {
@@ -800,7 +1256,7 @@ public class RequestService {
                     request.setStatus("In work");
                     request.setClosedAt(null);
 
-                    Mono<UrgencyCategory> urgencyMono = urgencyCategoryRepository.findById(request.getUrgencyID());
+                    Mono<UrgencyCategory> urgencyMono = referenceData.snapshot().flatMap(ref -> Mono.justOrEmpty(ref.urgency(request.getUrgencyID())));
                     Mono<RequestCustomDay> customDayMono = customDayRepository.findByRequestID(requestId)
                             .defaultIfEmpty(new RequestCustomDay());
 
@@ -816,6 +1272,8 @@ public class RequestService {
                                 boolean isOverdue = false;
                                 long tempDaysOverdue = 0;
 
+                                request.setDeadline(daysForTask != null ? request.getCreatedAt().plusDays(daysForTask) : null);
+
                                 if (daysForTask != null) {
                                     LocalDateTime deadline = request.getCreatedAt().plusDays(daysForTask);
                                     isOverdue = LocalDateTime.now().isAfter(deadline);
@@ -832,7 +1290,7 @@ public class RequestService {
 
                                 // Ищем пользователя и формируем упоминание (mention)
                                 Mono<String> mentionMono = request.getAssignedContractorID() != null ?
-                                        userRepository.findById(request.getAssignedContractorID())
+                                        userDirectory.findById(request.getAssignedContractorID()).map(UserDirectoryService.Entry::user)
                                                 .map(u -> (u.getTelegramUsername() != null && !u.getTelegramUsername().isBlank())
                                                         ? "@" + notificationService.escapeMarkdown(u.getTelegramUsername()) + "\n"
                                                         : "")
@@ -855,24 +1313,22 @@ public class RequestService {
                                     String finalMessage = msgBuilder.toString();
 
                                     return requestRepository.save(request)
-                                            .flatMap(savedReq -> {
-                                                Mono<Void> tg = chatRepository.findTelegramIdByRequestId(requestId)
-                                                        .flatMap(chatId -> notificationService.sendNotification(chatId, finalMessage))
-                                                        .onErrorResume(e -> Mono.empty());
-
-                                                Mono<Void> web = webNotificationService.send(
-                                                        requestId,
-                                                        "🔄 Восстановление заявки #" + requestId,
-                                                        "Заявка была возвращена из архива в работу.",
-                                                        savedReq.getAssignedContractorID()
-                                                );
-
-                                                return Mono.when(tg, web).thenReturn(savedReq);
-                                            });
+                                            .flatMap(savedReq -> readModelService.refreshReturning(requestId).map(change -> Tuples.of(savedReq, change)))
+                                            .flatMap(result -> referenceData.resolveChatTelegramId(result.getT1().getShopID(), result.getT1().getAssignedContractorID())
+                                                    .flatMap(chatId -> outbox.enqueueText(chatId, finalMessage))
+                                                    .thenReturn(result))
+                                            .as(transactionalOperator::transactional)
+                                            .flatMap(result -> webNotificationService.send(
+                                                            requestId,
+                                                            "🔄 Восстановление заявки #" + requestId,
+                                                            "Заявка была возвращена из архива в работу.",
+                                                            result.getT1().getAssignedContractorID()
+                                                    )
+                                                    .thenReturn(result.getT2()));
                                 });
                             });
                 })
-                .flatMap(savedRequest -> enrichRequest(savedRequest.getRequestID()))
+                .map(this::withCalculatedDaysRemaining)
                 .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"));
     }
 
@@ -884,7 +1340,10 @@ public class RequestService {
                             if ("Closed".equalsIgnoreCase(request.getStatus())) {
                                 return Mono.error(new OperationNotAllowedException("Нельзя удалять фото из закрытой заявки."));
                             }
-                            return photoRepository.deleteById(photoId);
+                            return photoRepository.deleteById(photoId)
+                                    .then(readModelService.refresh(photo.getRequestID()))
+                                    .as(transactionalOperator::transactional)
+                                    .doOnSuccess(v -> photoCache.invalidate(photoId));
                         })
                 )
                 .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"));
@@ -900,8 +1359,8 @@ public class RequestService {
                 dto.customDays()
         );
         return createRequest(baseDto, dto.createdByUserID())
-                .flatMap(request -> enrichRequest(request.getRequestID()))
-                .flatMap(this::sendCreationNotification);
+                .flatMap(response -> searchIndex.reindex(response.requestID()).thenReturn(response))
+                .flatMap(this::sendCreationWebNotification);
     }
 
     public Mono<RequestResponse> getRequestById(Integer requestId) {
@@ -914,11 +1373,15 @@ public class RequestService {
                 .flatMap(comment ->
                         commentRepository.deleteByParentCommentID(commentId)
                                 .then(commentRepository.deleteById(commentId))
+                                .then(readModelService.refresh(comment.getRequestID()))
+                                .as(transactionalOperator::transactional)
+                                .then(searchIndex.reindex(comment.getRequestID()))
                 )
                 .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"));
     }
 
-    private Mono<RequestResponse> sendCreationNotification(RequestResponse response) {
+    // Сообщение в чат ставится в очередь в транзакции создания заявки: без заявки нет и уведомления, и наоборот
+    private Mono<Void> enqueueCreationNotification(RequestResponse response) {
         String descriptionShort = response.description() != null && response.description().length() > 100
                 ? response.description().substring(0, 100) + "..."
                 : response.description();
@@ -946,29 +1409,17 @@ public class RequestService {
                 safeDescription
         );
 
-        Mono<Void> tgNotification = chatRepository.findTelegramIdByRequestId(response.requestID())
-                .flatMap(chatId -> notificationService.sendNotification(chatId, msg))
-                .onErrorResume(e -> Mono.empty())
-                .then();
-
-        Mono<Void> webNotification = webNotificationService.send(
-                response.requestID(),
-                "Новая заявка #" + response.requestID(),
-                "Магазин: " + response.shopName() + ". " + response.description(),
-                response.assignedContractorID()
-        );
-
-        return Mono.when(tgNotification, webNotification)
-                .thenReturn(response);
+        return referenceData.resolveChatTelegramId(response.shopID(), response.assignedContractorID())
+                .flatMap(chatId -> outbox.enqueueText(chatId, msg));
     }
 
-    private boolean isValidImageSignature(byte[] data) {
-        if (data.length < 4) return false;
-
-        boolean isJpeg = data[0] == (byte) 0xFF && data[1] == (byte) 0xD8 && data[2] == (byte) 0xFF;
-        boolean isPng = data[0] == (byte) 0x89 && data[1] == (byte) 0x50 &&
-                data[2] == (byte) 0x4E && data[3] == (byte) 0x47;
-
-        return isJpeg || isPng;
+    private Mono<RequestResponse> sendCreationWebNotification(RequestResponse response) {
+        return webNotificationService.send(
+                        response.requestID(),
+                        "Новая заявка #" + response.requestID(),
+                        "Магазин: " + response.shopName() + ". " + response.description(),
+                        response.assignedContractorID()
+                )
+                .thenReturn(response);
     }
 }
\ No newline at end of file
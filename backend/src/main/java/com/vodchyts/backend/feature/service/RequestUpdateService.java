@@ -1,7 +1,6 @@
 package com.vodchyts.backend.feature.service;
 
 import com.vodchyts.backend.feature.entity.Request;
-import com.vodchyts.backend.feature.entity.RequestCustomDay;
 import com.vodchyts.backend.feature.entity.UrgencyCategory;
 import com.vodchyts.backend.feature.repository.*;
 import jakarta.annotation.PostConstruct;
@@ -12,13 +11,14 @@ import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.scheduling.support.CronTrigger;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Mono;
 
 import java.time.DayOfWeek;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ScheduledFuture;
 
@@ -32,9 +32,7 @@ public class RequestUpdateService {
 
     private final R2dbcEntityTemplate template;
     private final ReactiveRequestRepository requestRepository;
-    private final ReactiveUrgencyCategoryRepository urgencyCategoryRepository;
-    private final ReactiveRequestCustomDayRepository customDayRepository;
-    private final ReactiveShopContractorChatRepository chatRepository;
+    private final ReferenceDataService referenceData;
     private final TelegramNotificationService notificationService;
     private final WebNotificationService webNotificationService;
     private final TaskScheduler taskScheduler;
@@ -43,23 +41,27 @@ public class RequestUpdateService {
     private final UpdateBroadcaster updateBroadcaster;
     private long currentCheckInterval = 30000;
     private String currentReminderCron = "0 0 10 * * MON-FRI";
-    private final ReactiveUserRepository userRepository;
+    private final RequestReadModelService readModelService;
+    private final UserDirectoryService userDirectory;
+    private final NotificationOutbox outbox;
+    private final TransactionalOperator transactionalOperator;
 
     public RequestUpdateService(R2dbcEntityTemplate template,
                                 ReactiveRequestRepository requestRepository,
-                                ReactiveUrgencyCategoryRepository urgencyCategoryRepository,
-                                ReactiveRequestCustomDayRepository customDayRepository,
-                                ReactiveShopContractorChatRepository chatRepository,
-                                TelegramNotificationService notificationService, WebNotificationService webNotificationService, UpdateBroadcaster updateBroadcaster, ReactiveUserRepository userRepository) {
+                                ReferenceDataService referenceData,
+                                TelegramNotificationService notificationService, WebNotificationService webNotificationService, UpdateBroadcaster updateBroadcaster,
+                                RequestReadModelService readModelService, UserDirectoryService userDirectory, NotificationOutbox outbox,
+                                TransactionalOperator transactionalOperator) {
         this.template = template;
         this.requestRepository = requestRepository;
-        this.urgencyCategoryRepository = urgencyCategoryRepository;
-        this.customDayRepository = customDayRepository;
-        this.chatRepository = chatRepository;
+        this.referenceData = referenceData;
         this.notificationService = notificationService;
         this.webNotificationService = webNotificationService;
         this.updateBroadcaster = updateBroadcaster;
-        this.userRepository = userRepository;
+        this.readModelService = readModelService;
+        this.userDirectory = userDirectory;
+        this.outbox = outbox;
+        this.transactionalOperator = transactionalOperator;
 
         ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
         scheduler.setPoolSize(2);
@@ -120,13 +122,17 @@ public class RequestUpdateService {
 
 
     public Mono<Void> updateRequestDate(Integer requestId, LocalDateTime newDate) {
-        String sql = "UPDATE Requests SET CreatedAt = :newDate WHERE RequestID = :requestId";
+        // Срок сдвигается вместе с датой создания, длительность задачи сохраняется
+        String sql = "UPDATE Requests SET Deadline = CASE WHEN Deadline IS NULL THEN NULL " +
+                "ELSE DATEADD(day, DATEDIFF(day, CreatedAt, Deadline), :newDate) END, " +
+                "CreatedAt = :newDate WHERE RequestID = :requestId";
 
         return template.getDatabaseClient().sql(sql)
                 .bind("newDate", newDate)
                 .bind("requestId", requestId)
                 .fetch()
                 .rowsUpdated()
+                .flatMap(rows -> readModelService.refresh(requestId).thenReturn(rows))
                 .flatMap(rows -> {
                     updateBroadcaster.publish("REQUESTS_UPDATED");
                     return updateOverdueStatus(true);
@@ -149,61 +155,49 @@ public class RequestUpdateService {
     private Mono<Long> updateOverdueStatus(boolean sendNotification) {
         log.info("Проверка статусов просрочки...");
 
-        Flux<Request> requestsToCheck = template.select(
-                query(where("Status").in("In work", "Done")),
-                Request.class
-        );
-
-        Mono<Map<Integer, UrgencyCategory>> urgencyMapMono = urgencyCategoryRepository.findAll().collectMap(UrgencyCategory::getUrgencyID);
-        Mono<Map<Integer, RequestCustomDay>> customDaysMapMono = customDayRepository.findAll().collectMap(RequestCustomDay::getRequestID);
-
-        return Mono.zip(urgencyMapMono, customDaysMapMono)
+        // Выбираем только заявки, у которых признак просрочки расходится со сроком
+        String sql = "SELECT r.RequestID FROM Requests r " +
+                "JOIN UrgencyCategories uc ON r.UrgencyID = uc.UrgencyID " +
+                "WHERE r.Status IN ('In work', 'Done') AND (" +
+                "(r.IsOverdue = 0 AND r.Deadline < :now AND uc.UrgencyName <> 'Notes') OR " +
+                "(r.IsOverdue = 1 AND (r.Deadline IS NULL OR r.Deadline >= :now OR uc.UrgencyName = 'Notes')))";
+
+        LocalDateTime now = LocalDateTime.now();
+        Mono<List<Integer>> idsMono = template.getDatabaseClient().sql(sql)
+                .bind("now", now)
+                .map(row -> row.get("RequestID", Integer.class))
+                .all()
+                .collectList();
+        Mono<Map<Integer, UrgencyCategory>> urgencyMapMono = referenceData.snapshot().map(ReferenceDataService.Snapshot::urgencyCategories);
+
+        return Mono.zip(idsMono, urgencyMapMono)
                 .flatMapMany(tuple -> {
-                    Map<Integer, UrgencyCategory> urgencyMap = tuple.getT1();
-                    Map<Integer, RequestCustomDay> customDaysMap = tuple.getT2();
+                    Map<Integer, UrgencyCategory> urgencyMap = tuple.getT2();
 
-                    return requestsToCheck.flatMap(request -> {
+                    return requestRepository.findAllById(tuple.getT1()).flatMap(request -> {
                         UrgencyCategory urgency = urgencyMap.get(request.getUrgencyID());
                         if (urgency == null) return Mono.empty();
 
-                        if ("Notes".equalsIgnoreCase(urgency.getUrgencyName())) {
-                            if (Boolean.TRUE.equals(request.getIsOverdue())) {
-                                request.setIsOverdue(false);
-                                return requestRepository.save(request);
-                            }
-                            return Mono.empty();
-                        }
-
-                        Integer daysForTask = "Customizable".equalsIgnoreCase(urgency.getUrgencyName())
-                                ? customDaysMap.getOrDefault(request.getRequestID(), new RequestCustomDay()).getDays()
-                                : urgency.getDefaultDays();
-
-                        if (daysForTask == null) return Mono.empty();
-
-                        LocalDateTime deadline = request.getCreatedAt().plusDays(daysForTask);
-                        boolean isNowOverdue = LocalDateTime.now().isAfter(deadline);
-
-                        boolean isTransitionToOverdue = isNowOverdue && (request.getIsOverdue() == null || !request.getIsOverdue());
-
-                        if (isNowOverdue != (request.getIsOverdue() != null && request.getIsOverdue())) {
-                            request.setIsOverdue(isNowOverdue);
-
-                            return requestRepository.save(request)
-                                    .flatMap(savedReq -> {
-                                        updateBroadcaster.publish("REQUESTS_UPDATED");
-                                        if ("In work".equalsIgnoreCase(savedReq.getStatus()) &&
-                                                isTransitionToOverdue &&
-                                                sendNotification &&
-                                                !isWeekend()) {
-
-                                            long realDaysOverdue = Duration.between(deadline, LocalDateTime.now()).toDays();
-                                            long daysReported = Math.max(1, realDaysOverdue);
-                                            return sendOverdueAlert(savedReq, daysReported);
-                                        }
-                                        return Mono.just(savedReq);
-                                    });
-                        }
-                        return Mono.empty();
+                        boolean isNotes = "Notes".equalsIgnoreCase(urgency.getUrgencyName());
+                        LocalDateTime deadline = request.getDeadline();
+                        boolean isNowOverdue = !isNotes && deadline != null && now.isAfter(deadline);
+                        boolean wasOverdue = Boolean.TRUE.equals(request.getIsOverdue());
+
+                        if (isNowOverdue == wasOverdue) return Mono.empty();
+
+                        request.setIsOverdue(isNowOverdue);
+                        boolean alert = "In work".equalsIgnoreCase(request.getStatus()) && isNowOverdue && sendNotification && !isWeekend();
+                        long daysReported = alert ? Math.max(1, Duration.between(deadline, LocalDateTime.now()).toDays()) : 0;
+
+                        // Признак просрочки и сообщение в чат фиксируются одной транзакцией
+                        return requestRepository.save(request)
+                                .flatMap(savedReq -> readModelService.refresh(savedReq.getRequestID()).thenReturn(savedReq))
+                                .flatMap(savedReq -> alert ? enqueueOverdueAlert(savedReq, daysReported).thenReturn(savedReq) : Mono.just(savedReq))
+                                .as(transactionalOperator::transactional)
+                                .flatMap(savedReq -> {
+                                    updateBroadcaster.publish("REQUESTS_UPDATED");
+                                    return alert ? sendOverdueWebAlert(savedReq, daysReported).thenReturn(savedReq) : Mono.just(savedReq);
+                                });
                     });
                 })
                 .count()
@@ -213,38 +207,24 @@ public class RequestUpdateService {
     public void sendDailyReminders() {
         log.info("Запуск рассылки напоминаний...");
 
-        Flux<Request> overdueRequests = template.select(query(where("Status").is("In work").and("IsOverdue").is(true)), Request.class);
-        Mono<Map<Integer, UrgencyCategory>> urgencyMapMono = urgencyCategoryRepository.findAll().collectMap(UrgencyCategory::getUrgencyID);
-        Mono<Map<Integer, RequestCustomDay>> customDaysMapMono = customDayRepository.findAll().collectMap(RequestCustomDay::getRequestID);
-
-        Mono.zip(urgencyMapMono, customDaysMapMono)
-                .flatMapMany(tuple -> {
-                    Map<Integer, UrgencyCategory> urgencyMap = tuple.getT1();
-                    Map<Integer, RequestCustomDay> customDaysMap = tuple.getT2();
-
-                    return overdueRequests.flatMap(request -> {
-                        UrgencyCategory urgency = urgencyMap.get(request.getUrgencyID());
-                        if (urgency == null) return Mono.empty();
-
-                        Integer daysForTask = "Customizable".equalsIgnoreCase(urgency.getUrgencyName())
-                                ? customDaysMap.getOrDefault(request.getRequestID(), new RequestCustomDay()).getDays()
-                                : urgency.getDefaultDays();
-
-                        if (daysForTask == null) return Mono.empty();
-
-                        LocalDateTime deadline = request.getCreatedAt().plusDays(daysForTask);
-                        long daysOverdue = Duration.between(deadline, LocalDateTime.now()).toDays();
-
-                        if (daysOverdue >= 1) {
-                            return sendOverdueAlert(request, daysOverdue);
-                        }
-                        return Mono.empty();
-                    });
+        template.select(query(where("Status").is("In work").and("IsOverdue").is(true).and("Deadline").isNotNull()), Request.class)
+                .flatMap(request -> {
+                    long daysOverdue = Duration.between(request.getDeadline(), LocalDateTime.now()).toDays();
+
+                    if (daysOverdue >= 1) {
+                        return enqueueOverdueAlert(request, daysOverdue)
+                                .then(sendOverdueWebAlert(request, daysOverdue))
+                                .onErrorResume(e -> {
+                                    log.error("Не удалось отправить напоминание по заявке {}", request.getRequestID(), e);
+                                    return Mono.empty();
+                                });
+                    }
+                    return Mono.empty();
                 })
                 .subscribe();
     }
 
-    private Mono<Void> sendOverdueAlert(Request request, long daysOverdue) {
+    private Mono<Void> enqueueOverdueAlert(Request request, long daysOverdue) {
         String icon = daysOverdue == 1 ? "⚠️" : "🔥";
         String rawDescription = request.getDescription() != null ?
                 (request.getDescription().length() > 50 ? request.getDescription().substring(0, 50) + "..." : request.getDescription())
@@ -253,7 +233,7 @@ public class RequestUpdateService {
         String safeDescription = notificationService.escapeMarkdown(rawDescription);
 
         Mono<String> mentionMono = request.getAssignedContractorID() != null ?
-                userRepository.findById(request.getAssignedContractorID())
+                userDirectory.findById(request.getAssignedContractorID()).map(UserDirectoryService.Entry::user)
                         .map(u -> (u.getTelegramUsername() != null && !u.getTelegramUsername().isBlank()) ? "@" + notificationService.escapeMarkdown(u.getTelegramUsername()) + " " : "")
                         .defaultIfEmpty("") : Mono.just("");
 
@@ -261,22 +241,20 @@ public class RequestUpdateService {
             String message = String.format("%s%s *ЗАЯВКА \\#%d ПРОСРОЧЕНА*\n\nСрок истек: *%d дн\\. назад*\nОписание: %s",
                     mention, icon, request.getRequestID(), daysOverdue, safeDescription);
 
-            Mono<Void> tgNotification = chatRepository.findTelegramIdByRequestId(request.getRequestID())
-                    .flatMap(chatId -> notificationService.sendNotification(chatId, message))
-                    .onErrorResume(e -> Mono.empty())
-                    .then();
-
-            Mono<Void> webNotification = webNotificationService.send(
-                    request.getRequestID(),
-                    "⚠️ ПРОСРОЧКА #" + request.getRequestID(),
-                    "Заявка просрочена на " + daysOverdue + " дн.! Описание: " + request.getDescription(),
-                    request.getAssignedContractorID()
-            );
-
-            return Mono.when(tgNotification, webNotification);
+            return referenceData.resolveChatTelegramId(request.getShopID(), request.getAssignedContractorID())
+                    .flatMap(chatId -> outbox.enqueueText(chatId, message));
         });
     }
 
+    private Mono<Void> sendOverdueWebAlert(Request request, long daysOverdue) {
+        return webNotificationService.send(
+                request.getRequestID(),
+                "⚠️ ПРОСРОЧКА #" + request.getRequestID(),
+                "Заявка просрочена на " + daysOverdue + " дн.! Описание: " + request.getDescription(),
+                request.getAssignedContractorID()
+        );
+    }
+
     private boolean isWeekend() {
         DayOfWeek today = LocalDate.now().getDayOfWeek();
         return today == DayOfWeek.SATURDAY || today == DayOfWeek.SUNDAY;
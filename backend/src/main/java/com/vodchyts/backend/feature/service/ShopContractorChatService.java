@@ -30,6 +30,9 @@ public class ShopContractorChatService {
     private final ReactiveShopRepository shopRepository;
     private final DatabaseClient databaseClient;
     private final TelegramNotificationService notificationService;
+    private final UpdateBroadcaster updateBroadcaster;
+    private final ListCountCache countCache;
+    private final ReferenceDataService referenceData;
 
     public static final BiFunction<Row, RowMetadata, ShopContractorChatResponse> MAPPING_FUNCTION = (row, rowMetaData) -> new ShopContractorChatResponse(
             row.get("ShopContractorChatID", Integer.class),
@@ -40,13 +43,16 @@ public class ShopContractorChatService {
             row.get("TelegramID", Long.class)
     );
 
-    public ShopContractorChatService(ReactiveShopContractorChatRepository chatRepository, ReactiveUserRepository userRepository, ReactiveRoleRepository roleRepository, ReactiveShopRepository shopRepository, DatabaseClient databaseClient, TelegramNotificationService notificationService) {
+    public ShopContractorChatService(ReactiveShopContractorChatRepository chatRepository, ReactiveUserRepository userRepository, ReactiveRoleRepository roleRepository, ReactiveShopRepository shopRepository, DatabaseClient databaseClient, TelegramNotificationService notificationService, UpdateBroadcaster updateBroadcaster, ListCountCache countCache, ReferenceDataService referenceData) {
         this.chatRepository = chatRepository;
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.shopRepository = shopRepository;
         this.databaseClient = databaseClient;
         this.notificationService = notificationService;
+        this.updateBroadcaster = updateBroadcaster;
+        this.countCache = countCache;
+        this.referenceData = referenceData;
     }
 
     public Mono<PagedResponse<ShopContractorChatResponse>> getAllChats(List<String> sort, int page, int size) {
@@ -56,13 +62,14 @@ public class ShopContractorChatService {
                 "LEFT JOIN Users u ON scc.ContractorID = u.UserID";
 
         String countSql = "SELECT COUNT(*) FROM ShopContractorChats";
-        Mono<Long> countMono = databaseClient.sql(countSql).map(row -> row.get(0, Long.class)).one();
+        Mono<ListCountCache.Total> countMono = countCache.count(ListCountCache.CHATS, "all",
+                () -> databaseClient.sql(countSql).map(row -> row.get(0, Long.class)).one());
 
         String sortedSql = sql + parseSortToSql(sort) + " OFFSET " + ((long) page * size) + " ROWS FETCH NEXT " + size + " ROWS ONLY";
         Flux<ShopContractorChatResponse> contentFlux = databaseClient.sql(sortedSql).map(MAPPING_FUNCTION).all();
 
         return Mono.zip(contentFlux.collectList(), countMono)
-                .map(tuple -> new PagedResponse<>(tuple.getT1(), page, tuple.getT2(), (int) Math.ceil((double) tuple.getT2() / size)));
+                .map(tuple -> new PagedResponse<>(tuple.getT1(), page, tuple.getT2().value(), (int) Math.ceil((double) tuple.getT2().value() / size), tuple.getT2().cached()));
     }
 
     private String parseSortToSql(List<String> sortParams) {
@@ -144,7 +151,9 @@ public class ShopContractorChatService {
                     chat.setContractorID(request.contractorID());
                     chat.setTelegramID(request.telegramID());
                     return chatRepository.save(chat);
-                }));
+                }))
+                .flatMap(saved -> referenceData.reload().thenReturn(saved))
+                .doOnSuccess(v -> updateBroadcaster.publish("CHATS_UPDATED"));
     }
 
     public Mono<ShopContractorChat> updateChat(Integer chatId, UpdateShopContractorChatRequest request) {
@@ -223,11 +232,15 @@ public class ShopContractorChatService {
                     chat.setContractorID(request.contractorID());
                     chat.setTelegramID(request.telegramID());
                     return chatRepository.save(chat);
-                });
+                })
+                .flatMap(saved -> referenceData.reload().thenReturn(saved))
+                .doOnSuccess(v -> updateBroadcaster.publish("CHATS_UPDATED"));
     }
 
     public Mono<Void> deleteChat(Integer chatId) {
-        return chatRepository.deleteById(chatId);
+        return chatRepository.deleteById(chatId)
+                .then(referenceData.reload())
+                .doOnSuccess(v -> updateBroadcaster.publish("CHATS_UPDATED"));
     }
 
     public Mono<Boolean> checkIfExists(Integer shopId, Integer contractorId) {
@@ -16,6 +16,7 @@ import io.r2dbc.spi.Row;
 import io.r2dbc.spi.RowMetadata;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -33,13 +34,21 @@ public class ShopService {
     private final ReactiveRoleRepository roleRepository;
     private final DatabaseClient databaseClient;
     private final UpdateBroadcaster updateBroadcaster;
+    private final RequestReadModelService readModelService;
+    private final TransactionalOperator transactionalOperator;
+    private final ListCountCache countCache;
+    private final ReferenceDataService referenceData;
 
-    public ShopService(ReactiveShopRepository shopRepository, ReactiveUserRepository userRepository, ReactiveRoleRepository roleRepository, DatabaseClient databaseClient, UpdateBroadcaster updateBroadcaster) {
+    public ShopService(ReactiveShopRepository shopRepository, ReactiveUserRepository userRepository, ReactiveRoleRepository roleRepository, DatabaseClient databaseClient, UpdateBroadcaster updateBroadcaster, RequestReadModelService readModelService, TransactionalOperator transactionalOperator, ListCountCache countCache, ReferenceDataService referenceData) {
         this.shopRepository = shopRepository;
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.databaseClient = databaseClient;
         this.updateBroadcaster = updateBroadcaster;
+        this.readModelService = readModelService;
+        this.transactionalOperator = transactionalOperator;
+        this.countCache = countCache;
+        this.referenceData = referenceData;
     }
 
     public static final BiFunction<Row, RowMetadata, ShopResponse> SHOP_MAPPING_FUNCTION = (row, rowMetaData) -> new ShopResponse(
@@ -56,7 +65,8 @@ public class ShopService {
                 "FROM Shops s LEFT JOIN Users u ON s.UserID = u.UserID";
 
         String countSql = "SELECT COUNT(*) FROM Shops";
-        Mono<Long> countMono = databaseClient.sql(countSql).map(row -> row.get(0, Long.class)).one();
+        Mono<ListCountCache.Total> countMono = countCache.count(ListCountCache.SHOPS, "all",
+                () -> databaseClient.sql(countSql).map(row -> row.get(0, Long.class)).one());
 
         String sortedSql = sql + parseSortToSql(sort) + " OFFSET " + ((long) page * size) + " ROWS FETCH NEXT " + size + " ROWS ONLY";
 
@@ -67,9 +77,9 @@ public class ShopService {
         return Mono.zip(contentFlux.collectList(), countMono)
                 .map(tuple -> {
                     List<ShopResponse> content = tuple.getT1();
-                    Long count = tuple.getT2();
+                    long count = tuple.getT2().value();
                     int totalPages = (count == 0) ? 0 : (int) Math.ceil((double) count / size);
-                    return new PagedResponse<>(content, page, count, totalPages);
+                    return new PagedResponse<>(content, page, count, totalPages, tuple.getT2().cached());
                 });
     }
 
@@ -115,6 +125,7 @@ public class ShopService {
                                 shop.setUserID(request.userID());
                                 return shopRepository.save(shop);
                             }))
+                            .flatMap(saved -> referenceData.reload().thenReturn(saved))
                             .doOnSuccess(v -> updateBroadcaster.publish("SHOPS_UPDATED"));
                 });
     }
@@ -138,15 +149,19 @@ public class ShopService {
                     shop.setAddress(request.address());
                     shop.setEmail(request.email());
                     shop.setUserID(request.userID());
-                    return shopRepository.save(shop);
+                    return shopRepository.save(shop)
+                            .flatMap(saved -> readModelService.refreshByShop(shopId).thenReturn(saved))
+                            .as(transactionalOperator::transactional);
                 })
+                .flatMap(saved -> referenceData.reload().thenReturn(saved))
                 .flatMap(this::mapShopToResponse)
                 .doOnSuccess(v -> updateBroadcaster.publish("SHOPS_UPDATED"));
     }
 
     public Mono<Void> deleteShop(Integer shopId) {
-        return shopRepository.deleteById(shopId).
-                doOnSuccess(v -> updateBroadcaster.publish("SHOPS_UPDATED"));
+        return shopRepository.deleteById(shopId)
+                .then(referenceData.reload())
+                .doOnSuccess(v -> updateBroadcaster.publish("SHOPS_UPDATED"));
     }
 
     public Mono<ShopResponse> mapShopToResponse(Shop shop) {
@@ -1,40 +1,71 @@
 package com.vodchyts.backend.feature.service;
 
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
 @Service
 public class TelegramNotificationService {
 
+    private static final int BROADCAST_CONCURRENCY = 4;
+
+    // Фото альбома: файл для загрузки и, если известен, file_id, по которому его можно отправить без загрузки
+    public record AlbumPhoto(Resource image, String fileId) {}
+
     @Value("${bot.url:http://localhost:8081}")
     private String botUrl;
 
     private static final Logger log = LoggerFactory.getLogger(TelegramNotificationService.class);
     private final WebClient webClient;
+    private final TelegramSendGovernor sendGovernor;
+    private final BotCircuitBreaker circuitBreaker;
+    // Срок на отправку фото больше обычного: файл передается в теле запроса
+    private final Duration uploadTimeout;
+    // null, если пакетная отправка выключена (bot.batch.max-size <= 1)
+    private final BotBatchSender batchSender;
+
+    public TelegramNotificationService(WebClient botWebClient, TelegramSendGovernor sendGovernor, BotCircuitBreaker circuitBreaker,
+                                       @Value("${bot.client.upload-timeout-ms:60000}") long uploadTimeoutMs,
+                                       @Value("${bot.batch.max-size:20}") int batchMaxSize,
+                                       @Value("${bot.batch.max-wait-ms:50}") long batchMaxWaitMs,
+                                       @Value("${bot.batch.concurrency:2}") int batchConcurrency) {
+        this.webClient = botWebClient;
+        this.sendGovernor = sendGovernor;
+        this.circuitBreaker = circuitBreaker;
+        this.uploadTimeout = Duration.ofMillis(uploadTimeoutMs);
+        this.batchSender = batchMaxSize > 1
+                ? new BotBatchSender(webClient, circuitBreaker, batchMaxSize, Duration.ofMillis(batchMaxWaitMs), batchConcurrency)
+                : null;
+    }
 
-    public TelegramNotificationService(@Value("${bot.url:http://localhost:8081}") String botUrl) {
-        this.webClient = WebClient.builder()
-                .baseUrl(botUrl)
-                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(100 * 1024 * 1024))
-                .build();
+    @PreDestroy
+    public void shutdown() {
+        if (batchSender != null) batchSender.dispose();
     }
 
 
     public Mono<Boolean> validateChatId(Long chatId) {
         if (chatId == null) return Mono.just(false);
 
-        return webClient.get()
+        return circuitBreaker.protect(webClient.get()
                 .uri("/check/" + chatId)
                 .retrieve()
-                .toEntity(String.class)
+                .toEntity(String.class))
                 .map(response -> response.getStatusCode().is2xxSuccessful())
                 .onErrorResume(e -> {
                     log.warn("Validation failed for chat {}: {}", chatId, e.getMessage());
@@ -45,62 +76,180 @@ public class TelegramNotificationService {
     public Mono<Void> sendCommentNotification(Long chatId, String text, Integer requestId, Integer commentId) {
         if (chatId == null) return Mono.empty();
 
+        return deliverCommentNotification(chatId, text, requestId, commentId)
+                .doOnSuccess(s -> log.info("Comment notification sent to chat {}", chatId))
+                .onErrorResume(e -> {
+                    log.error("Failed to send comment notification to chat {}: {}", chatId, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    // Методы deliver* не подавляют ошибки: их вызывает диспетчер очереди уведомлений, которому нужен результат отправки
+    public Mono<Void> deliverCommentNotification(Long chatId, String text, Integer requestId, Integer commentId) {
+        if (batchSender != null) {
+            return sendGovernor.submit(chatId, batchSender.send(new BotBatchSender.BatchItem(chatId, text, requestId, commentId)));
+        }
+
         record CommentNotifyPayload(Long chatId, String text, Integer requestId, Integer commentId) {}
 
-        return webClient.post()
+        return sendGovernor.submit(chatId, circuitBreaker.protect(webClient.post()
                 .uri("/notify-comment")
                 .bodyValue(new CommentNotifyPayload(chatId, text, requestId, commentId))
                 .retrieve()
-                .bodyToMono(String.class)
-                .doOnSuccess(s -> log.info("Comment notification sent to chat {}", chatId))
+                .bodyToMono(String.class)))
+                .then();
+    }
+
+    public Mono<Void> sendPhoto(Long chatId, String caption, Resource image) {
+        return sendPhoto(chatId, caption, image, null).then();
+    }
+
+    /**
+     * Отправляет фото и возвращает file_id, под которым Telegram его сохранил.
+     * Если file_id уже известен, файл не передается вовсе; при отказе Telegram по file_id фото загружается заново.
+     * Пусто, если отправить не удалось.
+     */
+    public Mono<String> sendPhoto(Long chatId, String caption, Resource image, String knownFileId) {
+        if (chatId == null || (image == null && knownFileId == null)) return Mono.empty();
+
+        return deliverPhoto(chatId, caption, image, knownFileId)
+                .doOnSuccess(fileId -> log.info("Photo sent to chat {}", chatId))
                 .onErrorResume(e -> {
-                    log.error("Failed to send comment notification to chat {}: {}", chatId, e.getMessage());
+                    log.error("НЕ УДАЛОСЬ отправить фото в чат {}: {}", chatId, e.getMessage());
                     return Mono.empty();
-                })
-                .then();
+                });
     }
 
-    public Mono<Void> sendPhoto(Long chatId, String caption, byte[] imageData) {
-        if (chatId == null || imageData == null || imageData.length == 0) return Mono.empty();
+    /**
+     * Рассылает одно фото в несколько чатов: файл загружается один раз, остальным чатам уходит полученный file_id.
+     * Пока file_id не получен (например, первый чат недоступен), загрузка повторяется для следующего чата.
+     */
+    public Mono<Void> broadcastPhoto(List<Long> chatIds, String caption, Resource image) {
+        if (chatIds.isEmpty()) return Mono.empty();
+
+        Long first = chatIds.get(0);
+        List<Long> rest = chatIds.subList(1, chatIds.size());
+        return sendPhoto(first, caption, image, null)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(fileId -> fileId
+                        .map(id -> Flux.fromIterable(rest)
+                                .flatMap(chatId -> sendPhoto(chatId, caption, image, id), BROADCAST_CONCURRENCY)
+                                .then())
+                        .orElseGet(() -> broadcastPhoto(rest, caption, image)));
+    }
+
+    public Mono<String> deliverPhoto(Long chatId, String caption, Resource image, String knownFileId) {
+        Mono<String> upload = image != null ? postPhoto(chatId, caption, image, null) : Mono.empty();
+        if (knownFileId == null) return upload;
+
+        return postPhoto(chatId, caption, null, knownFileId).onErrorResume(TelegramNotificationService::fileIdRejected, e -> {
+            log.warn("Telegram не принял file_id для чата {}, фото будет загружено заново: {}", chatId, e.getMessage());
+            return upload;
+        });
+    }
+
+    /**
+     * Отправляет фото одним альбомом (не больше 10) и возвращает file_id в том же порядке.
+     * Если Telegram не принял какой-либо из известных file_id, альбом загружается заново целиком.
+     */
+    public Mono<List<String>> deliverAlbum(Long chatId, String caption, List<AlbumPhoto> photos) {
+        if (photos.size() == 1) {
+            AlbumPhoto photo = photos.get(0);
+            return deliverPhoto(chatId, caption, photo.image(), photo.fileId()).map(List::of);
+        }
+
+        Mono<List<String>> upload = postAlbum(chatId, caption, photos.stream().map(p -> new AlbumPhoto(p.image(), null)).toList());
+        if (photos.stream().noneMatch(p -> p.fileId() != null)) return upload;
+
+        return postAlbum(chatId, caption, photos).onErrorResume(TelegramNotificationService::fileIdRejected, e -> {
+            log.warn("Telegram не принял file_id альбома для чата {}, фото будут загружены заново: {}", chatId, e.getMessage());
+            return upload;
+        });
+    }
+
+    // Повторная загрузка поможет, только если бот отверг сам запрос; недоступность бота, таймаут и 429
+    // передаются дальше, иначе неудачная отправка по file_id тут же превращалась бы во вторую, более тяжелую
+    private static boolean fileIdRejected(Throwable e) {
+        return e instanceof WebClientResponseException response
+                && response.getStatusCode().is4xxClientError()
+                && response.getStatusCode().value() != HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    private Mono<List<String>> postAlbum(Long chatId, String caption, List<AlbumPhoto> photos) {
+        record AlbumSent(List<String> fileIds) {}
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("chatId", chatId);
+        builder.part("caption", caption != null ? caption : "");
+        for (int i = 0; i < photos.size(); i++) {
+            AlbumPhoto photo = photos.get(i);
+            if (photo.fileId() != null) {
+                builder.part("fileId_" + i, photo.fileId());
+            } else {
+                builder.part("file_" + i, photo.image())
+                        .header("Content-Disposition", "form-data; name=file_" + i + "; filename=image" + i + ".jpg");
+            }
+        }
+
+        return sendGovernor.submit(chatId, circuitBreaker.protect(webClient.post()
+                .uri("/notify/media-group")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(builder.build()))
+                .retrieve()
+                .bodyToMono(AlbumSent.class), uploadTimeout))
+                .map(sent -> sent.fileIds() != null ? sent.fileIds() : List.<String>of());
+    }
+
+    // Файловый ресурс передается в multipart потоково, без чтения в массив
+    private Mono<String> postPhoto(Long chatId, String caption, Resource image, String fileId) {
+        record PhotoSent(String fileId) {}
 
         MultipartBodyBuilder builder = new MultipartBodyBuilder();
         builder.part("chatId", chatId);
         builder.part("caption", caption != null ? caption : "");
-        builder.part("file", new ByteArrayResource(imageData))
-                .header("Content-Disposition", "form-data; name=file; filename=image.jpg");
+        if (fileId != null) {
+            builder.part("fileId", fileId);
+        } else {
+            builder.part("file", image)
+                    .header("Content-Disposition", "form-data; name=file; filename=image.jpg");
+        }
 
-        return webClient.post()
+        return sendGovernor.submit(chatId, circuitBreaker.protect(webClient.post()
                 .uri("/notify/photo")
                 .contentType(MediaType.MULTIPART_FORM_DATA)
                 .body(BodyInserters.fromMultipartData(builder.build()))
                 .retrieve()
-                .bodyToMono(String.class)
-                .doOnSuccess(s -> log.info("Photo sent to chat {}", chatId))
-                .onErrorResume(e -> {
-                    log.error("НЕ УДАЛОСЬ отправить фото в чат {}: {}", chatId, e.getMessage());
-                    return Mono.empty();
-                })
-                .then();
+                .bodyToMono(PhotoSent.class), uploadTimeout))
+                .mapNotNull(PhotoSent::fileId);
     }
 
     public Mono<Void> sendNotification(Long chatId, String text) {
         if (chatId == null) return Mono.empty();
 
-        record NotifyPayload(Long chatId, String text) {}
-        String safeText = text;
-
-        return webClient.post()
-                .uri("/notify")
-                .bodyValue(new NotifyPayload(chatId, safeText))
-                .retrieve()
-                .bodyToMono(String.class)
+        return deliverNotification(chatId, text)
                 .doOnSuccess(s -> log.info("Message sent to chat {}", chatId))
                 .onErrorResume(e -> {
                     log.error("НЕ УДАЛОСЬ отправить текст в чат {}: {}", chatId, e.getMessage());
                     return Mono.empty();
-                })
+                });
+    }
+
+    public Mono<Void> deliverNotification(Long chatId, String text) {
+        if (batchSender != null) {
+            return sendGovernor.submit(chatId, batchSender.send(new BotBatchSender.BatchItem(chatId, text, null, null)));
+        }
+
+        record NotifyPayload(Long chatId, String text) {}
+
+        return sendGovernor.submit(chatId, circuitBreaker.protect(webClient.post()
+                .uri("/notify")
+                .bodyValue(new NotifyPayload(chatId, text))
+                .retrieve()
+                .bodyToMono(String.class)))
                 .then();
     }
+
     public String escapeMarkdown(String text) {
         if (text == null) return "";
         return text.replaceAll("([_\\*\\[\\]()~`>#\\+\\-=|{}.!])", "\\\\$1");
@@ -0,0 +1,210 @@
+package com.vodchyts.backend.feature.service;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничивает темп отправки сообщений боту под лимиты Telegram: общий (около 30 сообщений в секунду)
+ * и для отдельного чата (около одного сообщения в секунду).
+ * У каждого чата своя FIFO-очередь; очереди разбираются по кругу, поэтому большая рассылка не задерживает
+ * остальные чаты, а сообщения одного чата уходят строго по порядку и не раньше, чем завершилось предыдущее.
+ */
+@Service
+public class TelegramSendGovernor {
+
+    private static final class Task {
+        final Mono<Object> send;
+        final MonoSink<Object> sink;
+        final long enqueuedAt = System.nanoTime();
+        volatile boolean cancelled;
+
+        Task(Mono<Object> send, MonoSink<Object> sink) {
+            this.send = send;
+            this.sink = sink;
+        }
+    }
+
+    private static final class ChatQueue {
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        long nextAllowedAt;
+        boolean inFlight;
+        boolean inRing;
+    }
+
+    private final Map<Long, ChatQueue> chats = new HashMap<>();
+    // Чаты, у которых есть ожидающие сообщения, в порядке обхода
+    private final ArrayDeque<ChatQueue> ring = new ArrayDeque<>();
+    private int queued = 0;
+
+    private final Scheduler drainScheduler = Schedulers.newSingle("telegram-send");
+    private Disposable drainTask;
+    private long drainAt;
+
+    private final Bucket globalBucket;
+    private final long perChatIntervalNanos;
+    private final int maxQueued;
+
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public TelegramSendGovernor(MeterRegistry meterRegistry,
+                                @Value("${bot.rate.global-per-second:30}") int globalPerSecond,
+                                @Value("${bot.rate.per-chat-interval-ms:1000}") long perChatIntervalMs,
+                                @Value("${bot.rate.max-queued:10000}") int maxQueued) {
+        this.globalBucket = Bucket.builder()
+                .addLimit(Bandwidth.builder()
+                        .capacity(globalPerSecond)
+                        .refillGreedy(globalPerSecond, Duration.ofSeconds(1))
+                        .build())
+                .build();
+        this.perChatIntervalNanos = TimeUnit.MILLISECONDS.toNanos(perChatIntervalMs);
+        this.maxQueued = maxQueued;
+
+        this.waitTimer = Timer.builder("telegram.send.wait")
+                .description("Время ожидания сообщения в очереди перед отправкой боту")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("telegram.send.rejected").register(meterRegistry);
+        Gauge.builder("telegram.send.queue.depth", this, TelegramSendGovernor::queued).register(meterRegistry);
+        Gauge.builder("telegram.send.queue.chats", this, TelegramSendGovernor::activeChats).register(meterRegistry);
+    }
+
+    /**
+     * Ставит отправку в очередь чата. Переданный Mono подписывается, когда подойдет очередь и позволят лимиты;
+     * результат возвращается вызывающему. Отмена до начала отправки убирает сообщение из очереди.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> submit(Long chatId, Mono<T> send) {
+        if (chatId == null) return send;
+        return Mono.<Object>create(sink -> {
+                    Task task = new Task((Mono<Object>) send, sink);
+                    sink.onCancel(() -> task.cancelled = true);
+                    enqueue(chatId, task);
+                })
+                .map(result -> (T) result);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainScheduler.dispose();
+    }
+
+    private synchronized void enqueue(Long chatId, Task task) {
+        if (queued >= maxQueued) {
+            rejected.increment();
+            task.sink.error(new RuntimeException("Очередь отправки в Telegram переполнена (" + maxQueued + " сообщений)"));
+            return;
+        }
+        ChatQueue queue = chats.computeIfAbsent(chatId, k -> new ChatQueue());
+        queue.tasks.addLast(task);
+        queued++;
+        if (!queue.inRing) {
+            queue.inRing = true;
+            ring.addLast(queue);
+        }
+        requestDrain(System.nanoTime());
+    }
+
+    private synchronized void drain() {
+        drainTask = null;
+        long now = System.nanoTime();
+        long nextWake = Long.MAX_VALUE;
+
+        int size = ring.size();
+        for (int i = 0; i < size; i++) {
+            ChatQueue queue = ring.pollFirst();
+            dropCancelled(queue);
+            if (queue.tasks.isEmpty()) {
+                queue.inRing = false;
+                continue;
+            }
+            if (queue.inFlight || now < queue.nextAllowedAt) {
+                // Чат с сообщением в полете разбудит очередь сам по завершении отправки
+                if (!queue.inFlight) nextWake = Math.min(nextWake, queue.nextAllowedAt);
+                ring.addLast(queue);
+                continue;
+            }
+            if (!globalBucket.tryConsume(1)) {
+                // Чат остается первым в круге и получит следующий токен
+                ring.addFirst(queue);
+                nextWake = Math.min(nextWake, now + globalBucket.estimateAbilityToConsume(1).getNanosToWaitForRefill());
+                break;
+            }
+            dispatch(queue, queue.tasks.pollFirst(), now);
+            if (queue.tasks.isEmpty()) {
+                queue.inRing = false;
+            } else {
+                ring.addLast(queue);
+            }
+        }
+
+        // Простаивающий чат забывается, только когда его интервал истек, чтобы следующее сообщение не ушло раньше срока
+        chats.values().removeIf(queue -> queue.tasks.isEmpty() && !queue.inFlight && queue.nextAllowedAt <= now);
+
+        if (nextWake != Long.MAX_VALUE) {
+            requestDrain(nextWake);
+        }
+    }
+
+    private void dispatch(ChatQueue queue, Task task, long now) {
+        queued--;
+        queue.inFlight = true;
+        queue.nextAllowedAt = now + perChatIntervalNanos;
+        waitTimer.record(now - task.enqueuedAt, TimeUnit.NANOSECONDS);
+
+        task.send
+                .doFinally(signal -> onSent(queue))
+                .subscribe(
+                        task.sink::success,
+                        task.sink::error,
+                        () -> task.sink.success()
+                );
+    }
+
+    private synchronized void onSent(ChatQueue queue) {
+        queue.inFlight = false;
+        if (!queue.tasks.isEmpty()) {
+            requestDrain(Math.max(System.nanoTime(), queue.nextAllowedAt));
+        }
+    }
+
+    private void dropCancelled(ChatQueue queue) {
+        while (!queue.tasks.isEmpty() && queue.tasks.peekFirst().cancelled) {
+            queue.tasks.pollFirst();
+            queued--;
+        }
+    }
+
+    // Планирует разбор очередей на момент at; уже запланированный более ранний разбор не переносится
+    private void requestDrain(long at) {
+        if (drainTask != null && drainAt <= at) return;
+        if (drainTask != null) drainTask.dispose();
+        drainAt = at;
+        drainTask = drainScheduler.schedule(this::drain, Math.max(0, at - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized int queued() {
+        return queued;
+    }
+
+    private synchronized int activeChats() {
+        return ring.size();
+    }
+}
@@ -3,8 +3,11 @@ package com.vodchyts.backend.feature.service;
 import com.vodchyts.backend.exception.OperationNotAllowedException;
 import com.vodchyts.backend.feature.dto.UpdateUrgencyCategoryRequest;
 import com.vodchyts.backend.feature.dto.UrgencyCategoryResponse;
+import com.vodchyts.backend.feature.entity.UrgencyCategory;
 import com.vodchyts.backend.feature.repository.ReactiveUrgencyCategoryRepository;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
@@ -15,11 +18,19 @@ public class UrgencyCategoryService {
     private final ReactiveUrgencyCategoryRepository urgencyCategoryRepository;
     private final RequestUpdateService requestUpdateService;
     private final UpdateBroadcaster updateBroadcaster;
+    private final RequestReadModelService readModelService;
+    private final TransactionalOperator transactionalOperator;
+    private final DatabaseClient databaseClient;
+    private final ReferenceDataService referenceData;
 
-    public UrgencyCategoryService(ReactiveUrgencyCategoryRepository urgencyCategoryRepository, RequestUpdateService requestUpdateService, UpdateBroadcaster updateBroadcaster) {
+    public UrgencyCategoryService(ReactiveUrgencyCategoryRepository urgencyCategoryRepository, RequestUpdateService requestUpdateService, UpdateBroadcaster updateBroadcaster, RequestReadModelService readModelService, TransactionalOperator transactionalOperator, DatabaseClient databaseClient, ReferenceDataService referenceData) {
         this.urgencyCategoryRepository = urgencyCategoryRepository;
         this.requestUpdateService = requestUpdateService;
         this.updateBroadcaster = updateBroadcaster;
+        this.readModelService = readModelService;
+        this.transactionalOperator = transactionalOperator;
+        this.databaseClient = databaseClient;
+        this.referenceData = referenceData;
     }
 
     public Flux<UrgencyCategoryResponse> getAllUrgencyCategories() {
@@ -39,8 +50,12 @@ public class UrgencyCategoryService {
                         return Mono.error(new OperationNotAllowedException("Нельзя менять срок для категории 'Заметки'"));
                     }
                     category.setDefaultDays(request.defaultDays());
-                    return urgencyCategoryRepository.save(category);
+                    return urgencyCategoryRepository.save(category)
+                            .flatMap(saved -> updateDeadlines(saved).thenReturn(saved))
+                            .flatMap(saved -> readModelService.refreshByUrgency(urgencyId).thenReturn(saved))
+                            .as(transactionalOperator::transactional);
                 })
+                .flatMap(saved -> referenceData.reload().thenReturn(saved))
                 .doOnSuccess(savedCategory -> {
                     requestUpdateService.updateOverdueStatus()
                             .subscribeOn(Schedulers.boundedElastic())
@@ -54,4 +69,19 @@ public class UrgencyCategoryService {
                 .doOnSuccess(v -> updateBroadcaster.publish("REQUESTS_UPDATED"));
     }
 
+    // Для настраиваемой срочности срок берется из RequestCustomDays, поэтому пересчитываем только остальные
+    private Mono<Void> updateDeadlines(UrgencyCategory category) {
+        if ("Customizable".equalsIgnoreCase(category.getUrgencyName())) {
+            return Mono.empty();
+        }
+        DatabaseClient.GenericExecuteSpec spec = category.getDefaultDays() != null
+                ? databaseClient.sql("UPDATE Requests SET Deadline = DATEADD(day, :days, CreatedAt) WHERE UrgencyID = :urgencyId")
+                        .bind("days", category.getDefaultDays())
+                : databaseClient.sql("UPDATE Requests SET Deadline = NULL WHERE UrgencyID = :urgencyId");
+
+        return spec.bind("urgencyId", category.getUrgencyID())
+                .fetch()
+                .rowsUpdated()
+                .then();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.feature.entity.Role;
+import com.vodchyts.backend.feature.entity.User;
+import com.vodchyts.backend.feature.repository.ReactiveRoleRepository;
+import com.vodchyts.backend.feature.repository.ReactiveUserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Кэш пользователей вместе с ролью по логину, ID и Telegram ID.
+ * Ограничен по размеру (LRU) и по времени жизни записи; AdminService сбрасывает записи при изменении пользователей.
+ */
+@Service
+public class UserDirectoryService {
+
+    public record Entry(User user, Role role) {
+        public String roleName() {
+            return role != null ? role.getRoleName() : null;
+        }
+    }
+
+    private record Cached(Entry entry, long expiresAt) {}
+
+    private record LoginKey(String login) {}
+
+    private record IdKey(Integer id) {}
+
+    private record TelegramKey(Long telegramId) {}
+
+    private final ReactiveUserRepository userRepository;
+    private final ReactiveRoleRepository roleRepository;
+
+    private final Map<Object, Cached> cache;
+    // Увеличивается при каждой инвалидации, чтобы не сохранить запись, прочитанную до изменения
+    private long version = 0;
+
+    @Value("${users.directory.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    public UserDirectoryService(ReactiveUserRepository userRepository,
+                                ReactiveRoleRepository roleRepository,
+                                @Value("${users.directory.max-entries:3000}") int maxEntries) {
+        this.userRepository = userRepository;
+        this.roleRepository = roleRepository;
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Cached> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public Mono<Entry> findByLogin(String login) {
+        if (login == null) return Mono.empty();
+        return lookup(new LoginKey(login), () -> userRepository.findByLogin(login));
+    }
+
+    public Mono<Entry> findById(Integer userId) {
+        if (userId == null) return Mono.empty();
+        return lookup(new IdKey(userId), () -> userRepository.findById(userId));
+    }
+
+    public Mono<Entry> findByTelegramId(Long telegramId) {
+        if (telegramId == null) return Mono.empty();
+        return lookup(new TelegramKey(telegramId), () -> userRepository.findByTelegramID(telegramId));
+    }
+
+    public synchronized void invalidate(Integer userId) {
+        version++;
+        cache.values().removeIf(c -> Objects.equals(c.entry().user().getUserID(), userId));
+    }
+
+    public synchronized void invalidateAll() {
+        version++;
+        cache.clear();
+    }
+
+    private Mono<Entry> lookup(Object key, Supplier<Mono<User>> loader) {
+        return Mono.defer(() -> {
+            Cached cached = get(key);
+            if (cached != null) {
+                return Mono.just(cached.entry());
+            }
+            long loadVersion = currentVersion();
+            return loader.get()
+                    .flatMap(user -> roleRepository.findById(user.getRoleID())
+                            .map(role -> new Entry(user, role))
+                            .defaultIfEmpty(new Entry(user, null)))
+                    .doOnNext(entry -> put(entry, loadVersion));
+        });
+    }
+
+    private synchronized long currentVersion() {
+        return version;
+    }
+
+    private synchronized Cached get(Object key) {
+        Cached cached = cache.get(key);
+        if (cached == null) return null;
+        if (cached.expiresAt() < System.currentTimeMillis()) {
+            cache.remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    private synchronized void put(Entry entry, long loadVersion) {
+        if (loadVersion != version) return;
+        User user = entry.user();
+        Cached cached = new Cached(entry, System.currentTimeMillis() + ttlSeconds * 1000);
+        cache.put(new IdKey(user.getUserID()), cached);
+        cache.put(new LoginKey(user.getLogin()), cached);
+        if (user.getTelegramID() != null) {
+            cache.put(new TelegramKey(user.getTelegramID()), cached);
+        }
+    }
+}
@@ -4,22 +4,18 @@ import com.vodchyts.backend.exception.InvalidTokenException;
 import com.vodchyts.backend.exception.UserNotFoundException;
 import com.vodchyts.backend.feature.dto.UserInfoResponse;
 import com.vodchyts.backend.feature.entity.User;
-import com.vodchyts.backend.feature.repository.ReactiveRoleRepository;
-import com.vodchyts.backend.feature.repository.ReactiveUserRepository;
 import com.vodchyts.backend.security.JwtUtils;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
 @Service
 public class UserService {
-    private final ReactiveUserRepository userRepository;
-    private final ReactiveRoleRepository roleRepository;
     private final JwtUtils jwtUtils;
+    private final UserDirectoryService userDirectory;
 
-    public UserService(ReactiveUserRepository userRepository, ReactiveRoleRepository roleRepository, JwtUtils jwtUtils) {
-        this.userRepository = userRepository;
-        this.roleRepository = roleRepository;
+    public UserService(JwtUtils jwtUtils, UserDirectoryService userDirectory) {
         this.jwtUtils = jwtUtils;
+        this.userDirectory = userDirectory;
     }
 
     public Mono<UserInfoResponse> whoAmI(String accessToken) {
@@ -29,19 +25,21 @@ public class UserService {
 
         String username = jwtUtils.getUsernameFromToken(accessToken);
 
-        return userRepository.findByLogin(username)
+        return userDirectory.findByLogin(username)
                 .switchIfEmpty(Mono.error(new UserNotFoundException("Пользователь не найден")))
-                .flatMap(user ->
-                        roleRepository.findById(user.getRoleID())
-                                .map(role -> new UserInfoResponse(user.getUserID(), user.getLogin(), role.getRoleName()))
-                );
+                .filter(entry -> entry.role() != null)
+                .map(entry -> new UserInfoResponse(entry.user().getUserID(), entry.user().getLogin(), entry.roleName()));
     }
 
     public Mono<User> findByLogin(String login) {
-        return userRepository.findByLogin(login);
+        return userDirectory.findByLogin(login).map(UserDirectoryService.Entry::user);
     }
 
     public Mono<User> findByTelegramId(Long telegramId) {
-        return userRepository.findByTelegramID(telegramId);
+        return userDirectory.findByTelegramId(telegramId).map(UserDirectoryService.Entry::user);
+    }
+
+    public Mono<UserDirectoryService.Entry> findEntryByTelegramId(Long telegramId) {
+        return userDirectory.findByTelegramId(telegramId);
     }
 }
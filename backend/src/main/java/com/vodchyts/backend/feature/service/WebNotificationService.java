@@ -10,6 +10,7 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -30,13 +31,19 @@ public class WebNotificationService {
     }
 
     public Mono<Void> send(Integer targetRequestID, String title, String message, Integer onlyForContractorID) {
+        return sendToAdminsAnd(targetRequestID, title, message,
+                onlyForContractorID != null ? Set.of(onlyForContractorID) : Set.of());
+    }
+
+    // Одно уведомление администраторам и перечисленным подрядчикам (например, сводка по массовому изменению)
+    public Mono<Void> sendToAdminsAnd(Integer targetRequestID, String title, String message, Collection<Integer> contractorIds) {
         return roleRepository.findByRoleName("RetailAdmin")
                 .flatMapMany(adminRole -> userRepository.findAllByRoleID(adminRole.getRoleID()))
                 .map(User::getUserID)
                 .collectList()
                 .flatMap(adminIds -> {
                     Set<Integer> recipients = new HashSet<>(adminIds);
-                    if (onlyForContractorID != null) recipients.add(onlyForContractorID);
+                    recipients.addAll(contractorIds);
 
                     return Flux.fromIterable(recipients)
                             .flatMap(uid -> {
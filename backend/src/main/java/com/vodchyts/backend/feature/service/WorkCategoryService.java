@@ -10,6 +10,7 @@ import io.r2dbc.spi.Row;
 import io.r2dbc.spi.RowMetadata;
 import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -26,12 +27,20 @@ public class WorkCategoryService {
     private final DatabaseClient databaseClient;
     private final ReactiveRequestRepository requestRepository;
     private final UpdateBroadcaster updateBroadcaster;
+    private final RequestReadModelService readModelService;
+    private final TransactionalOperator transactionalOperator;
+    private final ListCountCache countCache;
+    private final ReferenceDataService referenceData;
 
-    public WorkCategoryService(ReactiveWorkCategoryRepository workCategoryRepository, DatabaseClient databaseClient, ReactiveRequestRepository requestRepository, UpdateBroadcaster updateBroadcaster) {
+    public WorkCategoryService(ReactiveWorkCategoryRepository workCategoryRepository, DatabaseClient databaseClient, ReactiveRequestRepository requestRepository, UpdateBroadcaster updateBroadcaster, RequestReadModelService readModelService, TransactionalOperator transactionalOperator, ListCountCache countCache, ReferenceDataService referenceData) {
         this.workCategoryRepository = workCategoryRepository;
         this.databaseClient = databaseClient;
         this.requestRepository = requestRepository;
         this.updateBroadcaster = updateBroadcaster;
+        this.readModelService = readModelService;
+        this.transactionalOperator = transactionalOperator;
+        this.countCache = countCache;
+        this.referenceData = referenceData;
     }
 
     public static final BiFunction<Row, RowMetadata, WorkCategoryResponse> WC_MAPPING_FUNCTION = (row, rowMetaData) -> new WorkCategoryResponse(
@@ -48,7 +57,8 @@ public class WorkCategoryService {
                 "GROUP BY wc.WorkCategoryID, wc.WorkCategoryName";
 
         String countSql = "SELECT COUNT(*) FROM WorkCategories";
-        Mono<Long> countMono = databaseClient.sql(countSql).map(row -> row.get(0, Long.class)).one();
+        Mono<ListCountCache.Total> countMono = countCache.count(ListCountCache.CATEGORIES, "all",
+                () -> databaseClient.sql(countSql).map(row -> row.get(0, Long.class)).one());
 
         String sortedSql = sql + parseSortToSql(sort) + " OFFSET " + ((long) page * size) + " ROWS FETCH NEXT " + size + " ROWS ONLY";
 
@@ -59,9 +69,9 @@ public class WorkCategoryService {
         return Mono.zip(contentFlux.collectList(), countMono)
                 .map(tuple -> {
                     List<WorkCategoryResponse> content = tuple.getT1();
-                    long count = tuple.getT2();
+                    long count = tuple.getT2().value();
                     int totalPages = (count == 0) ? 0 : (int) Math.ceil((double) count / size);
-                    return new PagedResponse<>(content, page, count, totalPages);
+                    return new PagedResponse<>(content, page, count, totalPages, tuple.getT2().cached());
                 });
     }
 
@@ -101,6 +111,7 @@ public class WorkCategoryService {
                     category.setWorkCategoryName(request.workCategoryName());
                     return workCategoryRepository.save(category);
                 })
+                .flatMap(saved -> referenceData.reload().thenReturn(saved))
                 .doOnSuccess(v -> updateBroadcaster.publish("CATEGORIES_UPDATED"));
     }
 
@@ -118,8 +129,11 @@ public class WorkCategoryService {
                 .switchIfEmpty(Mono.error(new RuntimeException("Категория не найдена")))
                 .flatMap(category -> {
                     category.setWorkCategoryName(request.workCategoryName());
-                    return workCategoryRepository.save(category);
+                    return workCategoryRepository.save(category)
+                            .flatMap(saved -> readModelService.refreshByWorkCategory(categoryId).thenReturn(saved))
+                            .as(transactionalOperator::transactional);
                 })
+                .flatMap(saved -> referenceData.reload().thenReturn(saved))
                 .map(this::mapWorkCategoryToResponse)
                 .doOnSuccess(v -> updateBroadcaster.publish("CATEGORIES_UPDATED"));
     }
@@ -133,6 +147,7 @@ public class WorkCategoryService {
                         ));
                     }
                     return workCategoryRepository.deleteById(categoryId)
+                            .then(referenceData.reload())
                             .doOnSuccess(v -> updateBroadcaster.publish("CATEGORIES_UPDATED"));
                 });
     }
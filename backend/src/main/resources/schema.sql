@@ -276,6 +276,208 @@ BEGIN
 CREATE INDEX IX_Requests_UrgencyID ON dbo.Requests(UrgencyID)
 END;
 
+-- Срок выполнения хранится в заявке, чтобы фильтры и проверка просрочки могли использовать индекс
+IF COL_LENGTH('dbo.Requests', 'Deadline') IS NULL
+BEGIN
+ALTER TABLE dbo.Requests ADD Deadline DATETIME2 NULL
+END;
+
+UPDATE r SET r.Deadline = DATEADD(day, CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END, r.CreatedAt)
+FROM dbo.Requests r
+JOIN dbo.UrgencyCategories uc ON r.UrgencyID = uc.UrgencyID
+OUTER APPLY (SELECT TOP 1 d.Days FROM dbo.RequestCustomDays d WHERE d.RequestID = r.RequestID) rcd
+WHERE r.Deadline IS NULL AND (CASE WHEN uc.UrgencyName = 'Customizable' THEN rcd.Days ELSE uc.DefaultDays END) IS NOT NULL;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_Requests_Status_Deadline' AND object_id = OBJECT_ID('dbo.Requests'))
+BEGIN
+CREATE INDEX IX_Requests_Status_Deadline ON dbo.Requests(Status, Deadline) INCLUDE (IsOverdue)
+END;
+
+-- Содержимое фото хранится в файловом хранилище по SHA-256, в таблице остаются только метаданные
+IF COL_LENGTH('dbo.RequestPhotos', 'ContentHash') IS NULL
+BEGIN
+ALTER TABLE dbo.RequestPhotos ADD ContentHash CHAR(64) NULL
+END;
+
+IF COL_LENGTH('dbo.RequestPhotos', 'ContentType') IS NULL
+BEGIN
+ALTER TABLE dbo.RequestPhotos ADD ContentType NVARCHAR(50) NULL
+END;
+
+IF COL_LENGTH('dbo.RequestPhotos', 'SizeBytes') IS NULL
+BEGIN
+ALTER TABLE dbo.RequestPhotos ADD SizeBytes BIGINT NULL
+END;
+
+IF COL_LENGTH('dbo.RequestPhotos', 'CreatedAt') IS NULL
+BEGIN
+ALTER TABLE dbo.RequestPhotos ADD CreatedAt DATETIME2 NULL
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestPhotos_RequestID' AND object_id = OBJECT_ID('dbo.RequestPhotos'))
+BEGIN
+CREATE INDEX IX_RequestPhotos_RequestID ON dbo.RequestPhotos(RequestID)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestPhotos_ContentHash' AND object_id = OBJECT_ID('dbo.RequestPhotos'))
+BEGIN
+CREATE INDEX IX_RequestPhotos_ContentHash ON dbo.RequestPhotos(ContentHash)
+END;
+
+-- Одно и то же фото прикрепляется к заявке один раз; прежние дубликаты удаляются перед созданием индекса,
+-- а число фото в проекции списка пересчитывается для затронутых заявок
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='UQ_RequestPhotos_Request_ContentHash' AND object_id = OBJECT_ID('dbo.RequestPhotos'))
+BEGIN
+EXEC('DECLARE @AffectedRequests TABLE (RequestID INT NOT NULL);
+DELETE p OUTPUT deleted.RequestID INTO @AffectedRequests FROM dbo.RequestPhotos p
+WHERE p.ContentHash IS NOT NULL
+  AND EXISTS (SELECT 1 FROM dbo.RequestPhotos d WHERE d.RequestID = p.RequestID AND d.ContentHash = p.ContentHash AND d.RequestPhotoID < p.RequestPhotoID);
+IF OBJECT_ID(''dbo.RequestReadModel'', ''U'') IS NOT NULL
+    UPDATE m SET PhotoCount = (SELECT COUNT(*) FROM dbo.RequestPhotos rp WHERE rp.RequestID = m.RequestID)
+    FROM dbo.RequestReadModel m
+    WHERE m.RequestID IN (SELECT RequestID FROM @AffectedRequests);
+CREATE UNIQUE INDEX UQ_RequestPhotos_Request_ContentHash ON dbo.RequestPhotos(RequestID, ContentHash) WHERE ContentHash IS NOT NULL')
+END;
+
+-- Файлы хранилища с числом ссылок из RequestPhotos; счетчик ведет триггер, в том числе при каскадном удалении заявок
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='PhotoBlobs' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.PhotoBlobs (
+                                ContentHash CHAR(64) NOT NULL,
+                                ContentType NVARCHAR(50) NULL,
+                                SizeBytes BIGINT NULL,
+                                RefCount INT NOT NULL DEFAULT 0,
+                                CreatedAt DATETIME2 NOT NULL DEFAULT SYSDATETIME(),
+                                ReleasedAt DATETIME2 NULL,
+                                CONSTRAINT PK_PhotoBlobs PRIMARY KEY (ContentHash)
+)
+END;
+
+INSERT INTO dbo.PhotoBlobs (ContentHash, ContentType, SizeBytes, RefCount)
+SELECT p.ContentHash, MAX(p.ContentType), MAX(p.SizeBytes), COUNT(*)
+FROM dbo.RequestPhotos p
+WHERE p.ContentHash IS NOT NULL AND NOT EXISTS (SELECT 1 FROM dbo.PhotoBlobs b WHERE b.ContentHash = p.ContentHash)
+GROUP BY p.ContentHash;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_PhotoBlobs_Released' AND object_id = OBJECT_ID('dbo.PhotoBlobs'))
+BEGIN
+CREATE INDEX IX_PhotoBlobs_Released ON dbo.PhotoBlobs(RefCount, ReleasedAt)
+END;
+
+-- Уровень хранения: Hot - оригинал, Cold - пережатая копия фото давно закрытых заявок
+IF COL_LENGTH('dbo.PhotoBlobs', 'StorageTier') IS NULL
+BEGIN
+ALTER TABLE dbo.PhotoBlobs ADD StorageTier NVARCHAR(10) NOT NULL CONSTRAINT DF_PhotoBlobs_StorageTier DEFAULT 'Hot'
+END;
+
+IF COL_LENGTH('dbo.PhotoBlobs', 'StoredSizeBytes') IS NULL
+BEGIN
+ALTER TABLE dbo.PhotoBlobs ADD StoredSizeBytes BIGINT NULL
+END;
+
+IF COL_LENGTH('dbo.PhotoBlobs', 'TieredAt') IS NULL
+BEGIN
+ALTER TABLE dbo.PhotoBlobs ADD TieredAt DATETIME2 NULL
+END;
+
+-- file_id, под которым фото уже загружено в Telegram: повторные отправки идут по нему без передачи файла
+IF COL_LENGTH('dbo.PhotoBlobs', 'TelegramFileId') IS NULL
+BEGIN
+ALTER TABLE dbo.PhotoBlobs ADD TelegramFileId NVARCHAR(200) NULL
+END;
+
+-- Фото уже проверено на недостающие миниатюры (созданы или не нужны, так как оригинал мал)
+IF COL_LENGTH('dbo.PhotoBlobs', 'RenditionsReady') IS NULL
+BEGIN
+ALTER TABLE dbo.PhotoBlobs ADD RenditionsReady BIT NOT NULL CONSTRAINT DF_PhotoBlobs_RenditionsReady DEFAULT 0
+END;
+
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='PhotoTieringRuns' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.PhotoTieringRuns (
+                                      RunID INT IDENTITY(1,1) NOT NULL,
+                                      StartedAt DATETIME2 NOT NULL,
+                                      FinishedAt DATETIME2 NOT NULL,
+                                      PhotosTiered INT NOT NULL,
+                                      BytesBefore BIGINT NOT NULL,
+                                      BytesAfter BIGINT NOT NULL,
+                                      CONSTRAINT PK_PhotoTieringRuns PRIMARY KEY (RunID)
+)
+END;
+
+-- Очередь исходящих Telegram-уведомлений: пишется в транзакции бизнес-изменения, доставляется фоновым диспетчером
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='NotificationOutbox' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.NotificationOutbox (
+                                        OutboxID BIGINT IDENTITY(1,1) NOT NULL,
+                                        Kind NVARCHAR(20) NOT NULL,
+                                        ChatID BIGINT NOT NULL,
+                                        MessageText NVARCHAR(MAX) NOT NULL,
+                                        RequestID INT NULL,
+                                        CommentID INT NULL,
+                                        ContentHash CHAR(64) NULL,
+                                        Status NVARCHAR(20) NOT NULL CONSTRAINT DF_NotificationOutbox_Status DEFAULT 'Pending',
+                                        Attempts INT NOT NULL CONSTRAINT DF_NotificationOutbox_Attempts DEFAULT 0,
+                                        NextAttemptAt DATETIME2 NOT NULL CONSTRAINT DF_NotificationOutbox_NextAttemptAt DEFAULT SYSDATETIME(),
+                                        CreatedAt DATETIME2 NOT NULL CONSTRAINT DF_NotificationOutbox_CreatedAt DEFAULT SYSDATETIME(),
+                                        SentAt DATETIME2 NULL,
+                                        LastError NVARCHAR(1000) NULL,
+                                        CONSTRAINT PK_NotificationOutbox PRIMARY KEY (OutboxID)
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_NotificationOutbox_Pending' AND object_id = OBJECT_ID('dbo.NotificationOutbox'))
+BEGIN
+CREATE INDEX IX_NotificationOutbox_Pending ON dbo.NotificationOutbox(Status, NextAttemptAt)
+END;
+
+-- Строка сводки: уведомления по одной заявке в один чат, накопленные за окно, отправляются одним сообщением
+IF COL_LENGTH('dbo.NotificationOutbox', 'DigestLine') IS NULL
+BEGIN
+ALTER TABLE dbo.NotificationOutbox ADD DigestLine NVARCHAR(MAX) NULL
+END;
+
+IF COL_LENGTH('dbo.NotificationOutbox', 'Mention') IS NULL
+BEGIN
+ALTER TABLE dbo.NotificationOutbox ADD Mention NVARCHAR(200) NULL
+END;
+
+-- Аренда захваченной диспетчером строки; продлевается, пока отправка идет, и снимается по ее итогу
+IF COL_LENGTH('dbo.NotificationOutbox', 'ClaimedUntil') IS NULL
+BEGIN
+ALTER TABLE dbo.NotificationOutbox ADD ClaimedUntil DATETIME2 NULL
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_NotificationOutbox_Digest' AND object_id = OBJECT_ID('dbo.NotificationOutbox'))
+BEGIN
+CREATE INDEX IX_NotificationOutbox_Digest ON dbo.NotificationOutbox(ChatID, RequestID, Status) INCLUDE (NextAttemptAt)
+END;
+
+IF OBJECT_ID('dbo.TR_RequestPhotos_BlobRefs', 'TR') IS NULL
+BEGIN
+EXEC('CREATE TRIGGER dbo.TR_RequestPhotos_BlobRefs ON dbo.RequestPhotos AFTER INSERT, UPDATE, DELETE AS
+BEGIN
+    SET NOCOUNT ON;
+    MERGE dbo.PhotoBlobs AS b
+    USING (
+        SELECT d.ContentHash, SUM(d.Delta) AS Delta, MAX(d.ContentType) AS ContentType, MAX(d.SizeBytes) AS SizeBytes
+        FROM (
+            SELECT ContentHash, 1 AS Delta, ContentType, SizeBytes FROM inserted WHERE ContentHash IS NOT NULL
+            UNION ALL
+            SELECT ContentHash, -1 AS Delta, NULL, NULL FROM deleted WHERE ContentHash IS NOT NULL
+        ) d
+        GROUP BY d.ContentHash
+        HAVING SUM(d.Delta) <> 0
+    ) AS src
+    ON b.ContentHash = src.ContentHash
+    WHEN MATCHED THEN UPDATE SET
+        b.RefCount = b.RefCount + src.Delta,
+        b.ReleasedAt = CASE WHEN b.RefCount + src.Delta <= 0 THEN SYSDATETIME() ELSE NULL END
+    WHEN NOT MATCHED BY TARGET AND src.Delta > 0 THEN
+        INSERT (ContentHash, ContentType, SizeBytes, RefCount) VALUES (src.ContentHash, src.ContentType, src.SizeBytes, src.Delta);
+END')
+END;
+
 IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestComments_RequestID' AND object_id = OBJECT_ID('dbo.RequestComments'))
 BEGIN
 CREATE INDEX IX_RequestComments_RequestID ON dbo.RequestComments(RequestID)
@@ -337,4 +539,74 @@ END;
 IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_AuditLog_UserID' AND object_id = OBJECT_ID('dbo.AuditLog'))
 BEGIN
 CREATE INDEX IX_AuditLog_UserID ON dbo.AuditLog(UserID)
-END;
\ No newline at end of file
+END;
+
+-- 18. RequestReadModel (денормализованная проекция для списка заявок)
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='RequestReadModel' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.RequestReadModel (
+                                      RequestID INT NOT NULL,
+                                      Description NVARCHAR(MAX) NULL,
+                                      ShopID INT NOT NULL,
+                                      ShopName NVARCHAR(150) NULL,
+                                      WorkCategoryID INT NOT NULL,
+                                      WorkCategoryName NVARCHAR(150) NULL,
+                                      UrgencyID INT NOT NULL,
+                                      UrgencyName NVARCHAR(100) NULL,
+                                      AssignedContractorID INT NULL,
+                                      AssignedContractorName NVARCHAR(100) NULL,
+                                      ContractorTgUsername VARCHAR(100) NULL,
+                                      Status NVARCHAR(50) NOT NULL,
+                                      CreatedAt DATETIME2 NOT NULL,
+                                      ClosedAt DATETIME2 NULL,
+                                      IsOverdue BIT NOT NULL DEFAULT 0,
+                                      DaysForTask INT NULL,
+                                      Deadline DATETIME2 NULL,
+                                      CommentCount INT NOT NULL DEFAULT 0,
+                                      PhotoCount INT NOT NULL DEFAULT 0,
+                                      CONSTRAINT PK_RequestReadModel PRIMARY KEY (RequestID),
+                                      CONSTRAINT FK_RequestReadModel_Requests FOREIGN KEY (RequestID) REFERENCES dbo.Requests(RequestID) ON DELETE CASCADE
+)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestReadModel_Status' AND object_id = OBJECT_ID('dbo.RequestReadModel'))
+BEGIN
+CREATE INDEX IX_RequestReadModel_Status ON dbo.RequestReadModel(Status, RequestID)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestReadModel_ShopID' AND object_id = OBJECT_ID('dbo.RequestReadModel'))
+BEGIN
+CREATE INDEX IX_RequestReadModel_ShopID ON dbo.RequestReadModel(ShopID, Status)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestReadModel_Contractor' AND object_id = OBJECT_ID('dbo.RequestReadModel'))
+BEGIN
+CREATE INDEX IX_RequestReadModel_Contractor ON dbo.RequestReadModel(AssignedContractorID, Status)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestReadModel_Deadline' AND object_id = OBJECT_ID('dbo.RequestReadModel'))
+BEGIN
+CREATE INDEX IX_RequestReadModel_Deadline ON dbo.RequestReadModel(Status, Deadline)
+END;
+
+IF NOT EXISTS (SELECT * FROM sys.indexes WHERE name='IX_RequestReadModel_CreatedAt' AND object_id = OBJECT_ID('dbo.RequestReadModel'))
+BEGIN
+CREATE INDEX IX_RequestReadModel_CreatedAt ON dbo.RequestReadModel(Status, CreatedAt)
+END;
+
+-- Журнал запусков плановых рассылок: сколько сообщений поставлено в очередь, сколько не удалось, длительность
+IF NOT EXISTS (SELECT * FROM sysobjects WHERE name='NotificationJobRuns' AND xtype='U')
+BEGIN
+CREATE TABLE dbo.NotificationJobRuns (
+                                         RunID INT IDENTITY(1,1) NOT NULL,
+                                         NotificationID INT NOT NULL,
+                                         StartedAt DATETIME2 NOT NULL,
+                                         FinishedAt DATETIME2 NOT NULL,
+                                         DurationMs BIGINT NOT NULL,
+                                         Queued INT NOT NULL,
+                                         Failed INT NOT NULL,
+                                         Status NVARCHAR(20) NOT NULL,
+                                         Error NVARCHAR(1000) NULL,
+                                         CONSTRAINT PK_NotificationJobRuns PRIMARY KEY (RunID)
+)
+END;
@@ -0,0 +1,108 @@
+package com.vodchyts.backend.common.pagination;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetCursorTest {
+
+    private static final KeysetCursor.SortKey ID = new KeysetCursor.SortKey("v.RequestID", true);
+
+    @Test
+    void roundTripsEveryValueType() {
+        Map<KeysetCursor.SortKey, Object> samples = Map.of(
+                new KeysetCursor.SortKey("v.DaysForTask", false), 7,
+                new KeysetCursor.SortKey("v.ChatID", false), 5_000_000_000L,
+                new KeysetCursor.SortKey("v.CreatedAt", true), LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_000_000),
+                new KeysetCursor.SortKey("v.ShopName", false), "Магазин: \"Центр\", 1"
+        );
+        samples.forEach((key, value) -> {
+            List<KeysetCursor.SortKey> keys = List.of(key, ID);
+            List<Object> values = List.of(value, 42);
+
+            assertEquals(values, KeysetCursor.decode(KeysetCursor.encode(keys, values), keys), key.expression());
+        });
+    }
+
+    @Test
+    void roundTripsNullValues() {
+        List<KeysetCursor.SortKey> keys = List.of(
+                new KeysetCursor.SortKey("v.Deadline", false),
+                new KeysetCursor.SortKey("v.ContractorLogin", true),
+                ID);
+        List<Object> values = Arrays.asList(null, null, 42);
+
+        assertEquals(values, KeysetCursor.decode(KeysetCursor.encode(keys, values), keys));
+    }
+
+    @Test
+    void keepsStringsThatLookLikeTypeMarkers() {
+        List<KeysetCursor.SortKey> keys = List.of(new KeysetCursor.SortKey("v.ShopName", false), ID);
+        List<Object> values = List.of("n", 1);
+
+        assertEquals(values, KeysetCursor.decode(KeysetCursor.encode(keys, values), keys));
+    }
+
+    @Test
+    void rejectsCursorOfAnotherSort() {
+        List<KeysetCursor.SortKey> createdDesc = List.of(new KeysetCursor.SortKey("v.CreatedAt", true), ID);
+        List<KeysetCursor.SortKey> createdAsc = List.of(new KeysetCursor.SortKey("v.CreatedAt", false), ID);
+        String token = KeysetCursor.encode(createdDesc, List.of(LocalDateTime.of(2024, 1, 1, 0, 0), 1));
+
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(token, createdAsc));
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        List<KeysetCursor.SortKey> keys = List.of(ID);
+
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("не-base64!", keys));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("e30", keys));
+
+        String json = new String(Base64.getUrlDecoder().decode(KeysetCursor.encode(keys, List.of(1))), StandardCharsets.UTF_8);
+        String tampered = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(json.replace("i:1", "i:abc").getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(tampered, keys));
+    }
+
+    @Test
+    void nullCursorValueAscendingContinuesWithNonNullRows() {
+        List<KeysetCursor.SortKey> keys = List.of(new KeysetCursor.SortKey("v.Deadline", false), new KeysetCursor.SortKey("v.RequestID", false));
+        Map<String, Object> bindings = new HashMap<>();
+
+        String condition = KeysetCursor.condition(keys, Arrays.asList(null, 10), bindings);
+
+        assertEquals("((v.Deadline IS NOT NULL) OR (v.Deadline IS NULL AND v.RequestID > :cursor1_1))", condition);
+        assertEquals(Map.of("cursor1_1", 10), bindings);
+    }
+
+    @Test
+    void nullCursorValueDescendingStaysWithinNullRows() {
+        List<KeysetCursor.SortKey> keys = List.of(new KeysetCursor.SortKey("v.Deadline", true), ID);
+        Map<String, Object> bindings = new HashMap<>();
+
+        String condition = KeysetCursor.condition(keys, Arrays.asList(null, 10), bindings);
+
+        assertEquals("((v.Deadline IS NULL AND (v.RequestID < :cursor1_1 OR v.RequestID IS NULL)))", condition);
+    }
+
+    @Test
+    void descendingNonNullValueIncludesTrailingNulls() {
+        List<KeysetCursor.SortKey> keys = List.of(new KeysetCursor.SortKey("v.Deadline", true));
+        LocalDateTime deadline = LocalDateTime.of(2024, 5, 1, 0, 0);
+        Map<String, Object> bindings = new HashMap<>();
+
+        String condition = KeysetCursor.condition(keys, List.of(deadline), bindings);
+
+        assertEquals("(((v.Deadline < :cursor0_0 OR v.Deadline IS NULL)))", condition);
+        assertEquals(Map.of("cursor0_0", deadline), bindings);
+    }
+}
@@ -0,0 +1,62 @@
+package com.vodchyts.backend.exception;
+
+import com.vodchyts.backend.common.pagination.KeysetCursor;
+import com.vodchyts.backend.feature.service.LoggingService;
+import com.vodchyts.backend.security.JwtUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GlobalExceptionHandlerTest {
+
+    private WebTestClient client;
+
+    @RestController
+    static class CursorController {
+        private static final List<KeysetCursor.SortKey> KEYS = List.of(new KeysetCursor.SortKey("v.RequestID", true));
+
+        @GetMapping("/requests")
+        Mono<String> list(@RequestParam String after) {
+            return Mono.fromCallable(() -> KeysetCursor.decode(after, KEYS).toString());
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        LoggingService loggingService = mock(LoggingService.class);
+        when(loggingService.logWarn(any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(Mono.empty());
+        when(loggingService.logError(any(), any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(Mono.empty());
+
+        client = WebTestClient.bindToController(new CursorController())
+                .controllerAdvice(new GlobalExceptionHandler(loggingService, mock(JwtUtils.class)))
+                .build();
+    }
+
+    @Test
+    void malformedCursorIsBadRequest() {
+        client.get().uri("/requests?after=broken")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class).isEqualTo("Некорректный курсор пагинации");
+    }
+
+    @Test
+    void validCursorPassesThrough() {
+        String token = KeysetCursor.encode(CursorController.KEYS, List.of(5));
+
+        client.get().uri("/requests?after=" + token)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("[5]");
+    }
+}
@@ -0,0 +1,46 @@
+package com.vodchyts.backend.feature.controller;
+
+import com.vodchyts.backend.feature.dto.PhotoContent;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhotoResponsesTest {
+
+    private static final PhotoContent PHOTO = new PhotoContent(1, "abc", "abc", "image/jpeg", 3, new ByteArrayResource(new byte[]{1, 2, 3}));
+
+    @Test
+    void matchingETagAnswersNotModifiedWithoutLoadingBody() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/photos/1").ifNoneMatch("\"abc\""));
+        AtomicBoolean loaded = new AtomicBoolean();
+
+        ResponseEntity<Resource> response = PhotoResponses.respond(PHOTO, exchange, photo -> {
+            loaded.set(true);
+            return Mono.just(photo);
+        }).block(Duration.ofSeconds(5));
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertFalse(loaded.get());
+    }
+
+    @Test
+    void otherETagLoadsBody() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/photos/1").ifNoneMatch("\"other\""));
+
+        ResponseEntity<Resource> response = PhotoResponses.respond(PHOTO, exchange, Mono::just).block(Duration.ofSeconds(5));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("\"abc\"", response.getHeaders().getETag());
+        assertSame(PHOTO.resource(), response.getBody());
+    }
+}
@@ -0,0 +1,138 @@
+package com.vodchyts.backend.feature.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Пакетная отправка против локальной заглушки бота: заглушка отвечает на /notify-batch результатом по каждому
+ * сообщению и имитирует накладные расходы одного HTTP-вызова задержкой.
+ */
+class BotBatchSenderTest {
+
+    private static final Duration CALL_OVERHEAD = Duration.ofMillis(5);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger calls = new AtomicInteger();
+    private DisposableServer stubBot;
+    private WebClient webClient;
+    private final BotCircuitBreaker circuitBreaker = new BotCircuitBreaker(new SimpleMeterRegistry(), 5, 30000, 10000);
+
+    @BeforeEach
+    void startStubBot() {
+        stubBot = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/notify-batch", (request, response) -> request.receive()
+                        .aggregate()
+                        .asString()
+                        .map(this::handleBatch)
+                        .delayElement(CALL_OVERHEAD)
+                        .flatMap(body -> response.header("Content-Type", "application/json").sendString(Mono.just(body)).then())))
+                .bindNow();
+        webClient = WebClient.builder().baseUrl("http://localhost:" + stubBot.port()).build();
+    }
+
+    @AfterEach
+    void stopStubBot() {
+        stubBot.disposeNow();
+    }
+
+    // Чаты с отрицательным id заглушка отклоняет, как бот отклоняет несуществующий чат
+    private String handleBatch(String body) {
+        calls.incrementAndGet();
+        try {
+            List<Map<String, Object>> items = objectMapper.readValue(body, new TypeReference<>() {});
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (Map<String, Object> item : items) {
+                long chatId = ((Number) item.get("chatId")).longValue();
+                results.add(chatId < 0
+                        ? Map.of("ok", false, "status", 400, "error", "Chat not found")
+                        : Map.of("ok", true, "status", 200));
+            }
+            return objectMapper.writeValueAsString(results);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void deliversEveryMessageInFewerCalls() {
+        BotBatchSender sender = new BotBatchSender(webClient, circuitBreaker, 20, Duration.ofMillis(20), 2);
+        try {
+            int messages = 200;
+            Long delivered = Flux.range(1, messages)
+                    .flatMap(i -> sender.send(new BotBatchSender.BatchItem((long) i, "Сообщение " + i, null, null)).thenReturn(1L), messages)
+                    .count()
+                    .block(Duration.ofSeconds(30));
+
+            assertEquals(messages, delivered);
+            assertTrue(calls.get() < messages, "ожидались пачки, а не по вызову на сообщение: " + calls.get());
+        } finally {
+            sender.dispose();
+        }
+    }
+
+    @Test
+    void reportsRejectionPerMessage() {
+        BotBatchSender sender = new BotBatchSender(webClient, circuitBreaker, 10, Duration.ofMillis(20), 1);
+        try {
+            Mono<Void> accepted = sender.send(new BotBatchSender.BatchItem(1L, "ok", null, null));
+            Mono<Void> rejected = sender.send(new BotBatchSender.BatchItem(-1L, "нет чата", 5, 7));
+
+            List<Throwable> errors = Flux.merge(
+                            accepted.then(Mono.<Throwable>empty()),
+                            rejected.then(Mono.<Throwable>empty()).onErrorResume(Mono::just))
+                    .collectList()
+                    .block(Duration.ofSeconds(10));
+
+            assertNotNull(errors);
+            assertEquals(1, errors.size());
+            WebClientResponseException error = assertInstanceOf(WebClientResponseException.class, errors.get(0));
+            assertTrue(error.getStatusCode().is4xxClientError());
+        } finally {
+            sender.dispose();
+        }
+    }
+
+    // Чем больше пачка, тем меньше вызовов бота на то же число сообщений, и ни одна пачка не превышает maxSize
+    @Test
+    void callCountShrinksAsBatchSizeGrows() {
+        int messages = 300;
+        int previousCalls = Integer.MAX_VALUE;
+        for (int batchSize : new int[]{1, 5, 20, 50}) {
+            calls.set(0);
+            BotBatchSender sender = new BotBatchSender(webClient, circuitBreaker, batchSize, Duration.ofMillis(10), 2);
+            try {
+                Long delivered = Flux.range(1, messages)
+                        .flatMap(i -> sender.send(new BotBatchSender.BatchItem((long) i, "Сообщение " + i, null, null)).thenReturn(1L), messages)
+                        .count()
+                        .block(Duration.ofSeconds(60));
+
+                assertEquals(messages, delivered);
+                int batchCalls = calls.get();
+                assertTrue(batchCalls >= (messages + batchSize - 1) / batchSize, "batch=" + batchSize + ": " + batchCalls + " вызовов");
+                assertTrue(batchCalls < previousCalls, "batch=" + batchSize + ": " + batchCalls + " вызовов, при меньшей пачке " + previousCalls);
+                previousCalls = batchCalls;
+            } finally {
+                sender.dispose();
+            }
+        }
+    }
+}
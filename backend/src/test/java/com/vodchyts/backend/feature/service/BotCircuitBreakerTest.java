@@ -0,0 +1,125 @@
+package com.vodchyts.backend.feature.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Переходы предохранителя на управляемых часах: пауза разомкнутого состояния проверяется сдвигом времени, без ожидания.
+ */
+class BotCircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 30_000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final BotCircuitBreaker breaker = new BotCircuitBreaker(new SimpleMeterRegistry(), 3, OPEN_MILLIS, 10_000, now::get);
+
+    private static WebClientResponseException status(int code) {
+        return WebClientResponseException.create(code, "status " + code, HttpHeaders.EMPTY, new byte[0], null);
+    }
+
+    private Throwable failWith(Throwable error) {
+        return assertThrows(Throwable.class, () -> breaker.protect(Mono.error(error)).block(TIMEOUT));
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) failWith(status(500));
+        assertEquals(BotCircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void opensAfterThresholdAndRejectsWithoutCallingBot() {
+        failWith(status(500));
+        failWith(status(503));
+        assertEquals(BotCircuitBreaker.State.CLOSED, breaker.state());
+
+        failWith(status(502));
+        assertEquals(BotCircuitBreaker.State.OPEN, breaker.state());
+
+        AtomicBoolean called = new AtomicBoolean();
+        Mono<Object> call = Mono.fromRunnable(() -> called.set(true));
+        assertThrows(BotCircuitBreaker.BotUnavailableException.class, () -> breaker.protect(call).block(TIMEOUT));
+        assertFalse(called.get());
+    }
+
+    @Test
+    void timeoutCountsAsFailure() {
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RuntimeException.class, () -> breaker.protect(Mono.never(), Duration.ofMillis(10)).block(TIMEOUT));
+        }
+        assertEquals(BotCircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void clientErrorsDoNotCountAsFailures() {
+        failWith(status(500));
+        failWith(status(500));
+        // 4xx означает, что бот отвечает, и сбрасывает серию неудач
+        failWith(status(400));
+        failWith(status(429));
+        failWith(status(500));
+        failWith(status(500));
+
+        assertEquals(BotCircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void halfOpensAfterPauseWithSingleTrialCall() {
+        open();
+
+        now.addAndGet(OPEN_MILLIS - 1);
+        BotCircuitBreaker.BotUnavailableException rejected =
+                assertInstanceOf(BotCircuitBreaker.BotUnavailableException.class, failWith(status(500)));
+        assertEquals(Duration.ofMillis(1), rejected.retryAfter());
+        assertEquals(BotCircuitBreaker.State.OPEN, breaker.state());
+
+        now.addAndGet(1);
+        Sinks.One<String> trial = Sinks.one();
+        Disposable trialCall = breaker.protect(trial.asMono()).subscribe();
+        assertEquals(BotCircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        // Пока пробный вызов не завершен, остальные отклоняются
+        assertInstanceOf(BotCircuitBreaker.BotUnavailableException.class, failWith(status(500)));
+
+        trial.tryEmitValue("ok");
+        assertTrue(trialCall.isDisposed());
+        assertEquals(BotCircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals("ok", breaker.protect(Mono.just("ok")).block(TIMEOUT));
+    }
+
+    @Test
+    void failedTrialReopensForAnotherPause() {
+        open();
+        now.addAndGet(OPEN_MILLIS);
+
+        failWith(status(500));
+        assertEquals(BotCircuitBreaker.State.OPEN, breaker.state());
+
+        now.addAndGet(OPEN_MILLIS - 1);
+        assertInstanceOf(BotCircuitBreaker.BotUnavailableException.class, failWith(status(500)));
+    }
+
+    @Test
+    void cancelledTrialReleasesSlot() {
+        open();
+        now.addAndGet(OPEN_MILLIS);
+
+        Disposable trialCall = breaker.protect(Mono.never()).subscribe();
+        assertInstanceOf(BotCircuitBreaker.BotUnavailableException.class, failWith(status(500)));
+
+        trialCall.dispose();
+        assertEquals("ok", breaker.protect(Mono.just("ok")).block(TIMEOUT));
+        assertEquals(BotCircuitBreaker.State.CLOSED, breaker.state());
+    }
+}
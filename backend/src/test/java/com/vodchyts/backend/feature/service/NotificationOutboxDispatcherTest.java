@@ -0,0 +1,156 @@
+package com.vodchyts.backend.feature.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.FetchSpec;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Решения markFailed: запрос к базе подменен заглушкой, которая запоминает текст UPDATE и его параметры.
+ */
+class NotificationOutboxDispatcherTest {
+
+    private final AtomicReference<String> sql = new AtomicReference<>();
+    private final Map<String, Object> bindings = new HashMap<>();
+    private NotificationOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        DatabaseClient databaseClient = mock(DatabaseClient.class);
+        DatabaseClient.GenericExecuteSpec spec = mock(DatabaseClient.GenericExecuteSpec.class);
+        FetchSpec<Map<String, Object>> fetch = mock(FetchSpec.class);
+        when(databaseClient.sql(anyString())).thenAnswer(invocation -> {
+            sql.set(invocation.getArgument(0));
+            return spec;
+        });
+        when(spec.bind(anyString(), any())).thenAnswer(invocation -> {
+            bindings.put(invocation.getArgument(0), invocation.getArgument(1));
+            return spec;
+        });
+        when(spec.fetch()).thenReturn(fetch);
+        when(fetch.rowsUpdated()).thenReturn(Mono.just(1L));
+
+        dispatcher = new NotificationOutboxDispatcher(databaseClient, mock(TelegramNotificationService.class),
+                mock(PhotoStorageService.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 8);
+        ReflectionTestUtils.setField(dispatcher, "baseBackoffSeconds", 5L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffSeconds", 1800L);
+    }
+
+    private static NotificationOutboxDispatcher.OutboxItem item(int attempts) {
+        return new NotificationOutboxDispatcher.OutboxItem(1L, NotificationOutbox.KIND_TEXT, 100L, "текст", null, null,
+                null, null, null, attempts, LocalDateTime.now());
+    }
+
+    private void fail(int attempts, Throwable error) {
+        dispatcher.markFailed(item(attempts), error).block(Duration.ofSeconds(5));
+    }
+
+    private static WebClientResponseException response(int status, HttpHeaders headers) {
+        return WebClientResponseException.create(status, "Ошибка", headers, new byte[0], null);
+    }
+
+    private boolean movedToDead() {
+        return sql.get().contains("Status = 'Dead'");
+    }
+
+    @Test
+    void openBreakerPostponesUntilPauseEndsWithoutSpendingAttempt() {
+        fail(7, new BotCircuitBreaker.BotUnavailableException("Бот недоступен", Duration.ofMillis(24_200)));
+
+        assertFalse(movedToDead());
+        assertEquals(7, bindings.get("attempts"));
+        assertEquals(25L, bindings.get("delay"));
+    }
+
+    @Test
+    void breakerRejectionsDuringLongOutageNeverDeadLetter() {
+        for (int i = 0; i < 50; i++) {
+            fail(0, new BotCircuitBreaker.BotUnavailableException("Бот недоступен", Duration.ZERO));
+            assertFalse(movedToDead());
+            assertEquals(0, bindings.get("attempts"));
+            assertEquals(5L, bindings.get("delay"));
+        }
+    }
+
+    @Test
+    void rateLimitWaitsRetryAfterWithoutSpendingAttempt() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "42");
+
+        fail(3, response(429, headers));
+
+        assertFalse(movedToDead());
+        assertEquals(3, bindings.get("attempts"));
+        assertEquals(42L, bindings.get("delay"));
+    }
+
+    @Test
+    void rateLimitWithoutRetryAfterUsesBaseDelayEvenOnLastAttempt() {
+        fail(7, response(429, new HttpHeaders()));
+
+        assertFalse(movedToDead());
+        assertEquals(7, bindings.get("attempts"));
+        assertEquals(5L, bindings.get("delay"));
+    }
+
+    @Test
+    void permanentRejectionsMoveToDeadImmediately() {
+        for (int status : new int[] {400, 403, 404}) {
+            fail(0, response(status, new HttpHeaders()));
+
+            assertTrue(movedToDead(), "статус " + status);
+            assertEquals(1, bindings.get("attempts"));
+        }
+    }
+
+    @Test
+    void otherErrorsRetryWithExponentialBackoff() {
+        fail(0, response(409, new HttpHeaders()));
+        assertFalse(movedToDead());
+        assertEquals(1, bindings.get("attempts"));
+        assertEquals(5L, bindings.get("delay"));
+
+        fail(2, response(502, new HttpHeaders()));
+        assertFalse(movedToDead());
+        assertEquals(3, bindings.get("attempts"));
+        assertEquals(20L, bindings.get("delay"));
+    }
+
+    @Test
+    void backoffIsCappedAtMaximum() {
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 20);
+
+        fail(12, new IllegalStateException("Сбой сети"));
+
+        assertFalse(movedToDead());
+        assertEquals(1800L, bindings.get("delay"));
+    }
+
+    @Test
+    void lastAttemptMovesToDead() {
+        fail(7, new IllegalStateException("Сбой сети"));
+
+        assertTrue(movedToDead());
+        assertEquals(8, bindings.get("attempts"));
+        assertEquals("Сбой сети", bindings.get("error"));
+    }
+}
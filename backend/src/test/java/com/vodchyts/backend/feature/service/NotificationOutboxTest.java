@@ -0,0 +1,109 @@
+package com.vodchyts.backend.feature.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.FetchSpec;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Окно сводки в enqueue: запрос к базе подменен заглушкой, которая запоминает текст INSERT и его параметры.
+ */
+class NotificationOutboxTest {
+
+    private final AtomicReference<String> sql = new AtomicReference<>();
+    private final Map<String, Object> bindings = new HashMap<>();
+    private final Set<String> nulls = new HashSet<>();
+    private DatabaseClient databaseClient;
+    private NotificationOutbox outbox;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        databaseClient = mock(DatabaseClient.class);
+        DatabaseClient.GenericExecuteSpec spec = mock(DatabaseClient.GenericExecuteSpec.class);
+        FetchSpec<Map<String, Object>> fetch = mock(FetchSpec.class);
+        when(databaseClient.sql(anyString())).thenAnswer(invocation -> {
+            sql.set(invocation.getArgument(0));
+            return spec;
+        });
+        when(spec.bind(anyString(), any())).thenAnswer(invocation -> {
+            bindings.put(invocation.getArgument(0), invocation.getArgument(1));
+            return spec;
+        });
+        when(spec.bindNull(anyString(), any())).thenAnswer(invocation -> {
+            nulls.add(invocation.getArgument(0));
+            return spec;
+        });
+        when(spec.fetch()).thenReturn(fetch);
+        when(fetch.rowsUpdated()).thenReturn(Mono.just(1L));
+
+        outbox = new NotificationOutbox(databaseClient);
+        ReflectionTestUtils.setField(outbox, "digestWindowSeconds", 20);
+    }
+
+    @Test
+    void notificationWithoutDigestIsDueImmediately() {
+        outbox.enqueueText(100L, "текст").block(Duration.ofSeconds(5));
+
+        assertTrue(sql.get().endsWith(":digestLine, SYSDATETIME())"));
+        assertFalse(bindings.containsKey("window"));
+        assertTrue(nulls.containsAll(Set.of("requestId", "digestLine", "mention")));
+    }
+
+    @Test
+    void digestJoinsOpenWindowOfSameChatAndRequest() {
+        outbox.enqueueText(100L, "текст", new NotificationOutbox.Digest(7, "@исполнитель", "Статус изменен"))
+                .block(Duration.ofSeconds(5));
+
+        String query = sql.get();
+        // Открытое окно - ожидающая строка сводки той же заявки в тот же чат, еще не уходившая и назначенная в пределах окна
+        assertTrue(query.contains("SELECT MIN(NextAttemptAt) FROM NotificationOutbox WHERE Status = 'Pending' AND Attempts = 0 " +
+                "AND ChatID = :chatId AND RequestID = :requestId AND DigestLine IS NOT NULL " +
+                "AND NextAttemptAt > SYSDATETIME() AND NextAttemptAt <= DATEADD(SECOND, :window, SYSDATETIME())"));
+        assertEquals(100L, bindings.get("chatId"));
+        assertEquals(7, bindings.get("requestId"));
+        assertEquals("Статус изменен", bindings.get("digestLine"));
+        assertEquals("@исполнитель", bindings.get("mention"));
+        assertEquals(20, bindings.get("window"));
+    }
+
+    @Test
+    void digestOpensWindowOnlyAfterRecentNotification() {
+        ReflectionTestUtils.setField(outbox, "digestWindowSeconds", 45);
+
+        outbox.enqueueComment(100L, "комментарий", 11, new NotificationOutbox.Digest(7, null, "Новый комментарий"))
+                .block(Duration.ofSeconds(5));
+
+        String query = sql.get();
+        assertTrue(query.contains("CASE WHEN EXISTS (SELECT 1 FROM NotificationOutbox WHERE ChatID = :chatId AND RequestID = :requestId " +
+                "AND DigestLine IS NOT NULL AND CreatedAt > DATEADD(SECOND, -1 * :window, SYSDATETIME())) " +
+                "THEN DATEADD(SECOND, :window, SYSDATETIME()) ELSE SYSDATETIME() END"));
+        assertEquals(45, bindings.get("window"));
+        assertEquals(11, bindings.get("commentId"));
+        assertTrue(nulls.contains("mention"));
+    }
+
+    @Test
+    void missingChatIsNotQueued() {
+        outbox.enqueueText(null, "текст", new NotificationOutbox.Digest(7, null, "Статус изменен")).block(Duration.ofSeconds(5));
+
+        verify(databaseClient, never()).sql(anyString());
+    }
+}
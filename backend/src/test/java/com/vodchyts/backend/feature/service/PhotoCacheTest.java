@@ -0,0 +1,92 @@
+package com.vodchyts.backend.feature.service;
+
+import com.vodchyts.backend.feature.dto.PhotoContent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.AbstractResource;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Кэш фото: промах кэширует только метаданные, содержимое читается лишь для ответа 200 и затем берется из кэша.
+ */
+class PhotoCacheTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final PhotoCache.Key KEY = new PhotoCache.Key(1, "ORIGINAL");
+
+    private final PhotoCache cache = new PhotoCache(new SimpleMeterRegistry(), 1024 * 1024, 64 * 1024, false);
+
+    // Файл, который считает, сколько раз было прочитано его содержимое
+    private static final class CountingResource extends AbstractResource {
+        private final byte[] bytes;
+        private final AtomicInteger reads = new AtomicInteger();
+
+        CountingResource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String getDescription() {
+            return "тестовое фото";
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            reads.incrementAndGet();
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    private static PhotoContent photo(CountingResource resource, long size) {
+        return new PhotoContent(1, "hash", "hash", "image/jpeg", size, resource);
+    }
+
+    @Test
+    void missCachesMetadataWithoutReadingPayload() {
+        CountingResource file = new CountingResource(new byte[]{1, 2, 3});
+        AtomicInteger loads = new AtomicInteger();
+
+        PhotoContent first = cache.get(KEY, () -> Mono.fromCallable(() -> {
+            loads.incrementAndGet();
+            return photo(file, 3);
+        })).block(TIMEOUT);
+        PhotoContent second = cache.get(KEY, () -> Mono.error(new AssertionError("метаданные должны браться из кэша"))).block(TIMEOUT);
+
+        assertNotNull(first);
+        assertEquals("hash", second.eTag());
+        assertEquals(1, loads.get());
+        assertEquals(0, file.reads.get());
+    }
+
+    @Test
+    void payloadIsReadOnceForResponseAndThenServedFromCache() throws Exception {
+        CountingResource file = new CountingResource(new byte[]{1, 2, 3});
+        PhotoContent found = cache.get(KEY, () -> Mono.just(photo(file, 3))).block(TIMEOUT);
+
+        PhotoContent body = cache.withPayload(KEY, found).block(TIMEOUT);
+        PhotoContent cached = cache.get(KEY, Mono::empty).block(TIMEOUT);
+        PhotoContent cachedBody = cache.withPayload(KEY, cached).block(TIMEOUT);
+
+        assertArrayEquals(new byte[]{1, 2, 3}, body.resource().getContentAsByteArray());
+        assertArrayEquals(new byte[]{1, 2, 3}, cachedBody.resource().getContentAsByteArray());
+        assertEquals(1, file.reads.get());
+    }
+
+    @Test
+    void largeFileIsNeverReadIntoCache() {
+        CountingResource file = new CountingResource(new byte[0]);
+        PhotoContent found = cache.get(KEY, () -> Mono.just(photo(file, 10L * 1024 * 1024))).block(TIMEOUT);
+
+        PhotoContent body = cache.withPayload(KEY, found).block(TIMEOUT);
+
+        assertSame(file, body.resource());
+        assertEquals(0, file.reads.get());
+    }
+}
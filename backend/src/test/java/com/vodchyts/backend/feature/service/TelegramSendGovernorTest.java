@@ -0,0 +1,105 @@
+package com.vodchyts.backend.feature.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Отправки заменены заглушками, которые запоминают момент начала; проверяются общий темп,
+ * порядок сообщений внутри чата и интервал между ними.
+ */
+class TelegramSendGovernorTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private TelegramSendGovernor governor;
+
+    @AfterEach
+    void shutdown() {
+        if (governor != null) governor.shutdown();
+    }
+
+    private Mono<Long> stamp(List<Long> startedAt) {
+        return Mono.fromCallable(() -> {
+            long now = System.nanoTime();
+            startedAt.add(now);
+            return now;
+        });
+    }
+
+    @Test
+    void globalRateLimitsMessagesAcrossChats() {
+        governor = new TelegramSendGovernor(new SimpleMeterRegistry(), 20, 0, 1000);
+        List<Long> startedAt = new CopyOnWriteArrayList<>();
+
+        long begin = System.nanoTime();
+        Flux.range(0, 60)
+                .flatMap(chat -> governor.submit((long) chat, stamp(startedAt)))
+                .blockLast(TIMEOUT);
+
+        assertEquals(60, startedAt.size());
+        // Сразу уходит полный запас из 20 токенов, остальные 40 - по мере пополнения, 20 в секунду
+        long elapsedMs = Duration.ofNanos(Collections.max(startedAt) - begin).toMillis();
+        assertTrue(elapsedMs >= 1800, "60 сообщений при лимите 20/с ушли за " + elapsedMs + " мс");
+        long firstHalfSecond = startedAt.stream().filter(t -> t - begin < Duration.ofMillis(500).toNanos()).count();
+        assertTrue(firstHalfSecond <= 31, "За первые 500 мс ушло " + firstHalfSecond + " сообщений");
+    }
+
+    @Test
+    void messagesOfOneChatKeepSubmissionOrderAndDoNotOverlap() {
+        governor = new TelegramSendGovernor(new SimpleMeterRegistry(), 1000, 0, 1000);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        // Ранние сообщения выполняются дольше поздних: при параллельной отправке порядок бы нарушился
+        List<Mono<Integer>> sends = Flux.range(0, 10)
+                .map(i -> governor.submit(42L, Mono.defer(() -> {
+                            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            return Mono.delay(Duration.ofMillis(30 - i * 3L)).thenReturn(i);
+                        })
+                        .doOnNext(order::add)
+                        .doOnTerminate(inFlight::decrementAndGet)))
+                .collectList()
+                .block(TIMEOUT);
+        Flux.merge(sends).blockLast(TIMEOUT);
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), order);
+        assertEquals(1, maxInFlight.get());
+    }
+
+    @Test
+    void messagesOfOneChatAreSpacedWithoutDelayingOtherChats() {
+        governor = new TelegramSendGovernor(new SimpleMeterRegistry(), 1000, 200, 1000);
+        List<Long> busyChat = new CopyOnWriteArrayList<>();
+        Map<String, Long> otherChat = new ConcurrentHashMap<>();
+
+        long begin = System.nanoTime();
+        Mono<Void> busy = Flux.range(0, 4)
+                .flatMap(i -> governor.submit(1L, stamp(busyChat)))
+                .then();
+        Mono<Void> other = governor.submit(2L, Mono.fromRunnable(() -> otherChat.put("startedAt", System.nanoTime())));
+        Mono.when(busy, other).block(TIMEOUT);
+
+        assertEquals(4, busyChat.size());
+        List<Long> sorted = busyChat.stream().sorted().toList();
+        for (int i = 1; i < sorted.size(); i++) {
+            long gapMs = Duration.ofNanos(sorted.get(i) - sorted.get(i - 1)).toMillis();
+            assertTrue(gapMs >= 190, "Интервал между сообщениями чата " + gapMs + " мс");
+        }
+        long otherDelayMs = Duration.ofNanos(otherChat.get("startedAt") - begin).toMillis();
+        assertTrue(otherDelayMs < 150, "Сообщение другого чата ждало " + otherDelayMs + " мс");
+    }
+}
@@ -18,6 +18,7 @@ export const getRequests = (params = {}) => {
   if (params.status) queryParams.append('status', params.status);
   if (params.startDate) queryParams.append('startDate', params.startDate);
   if (params.endDate) queryParams.append('endDate', params.endDate);
+  if (params.after) queryParams.append('after', params.after);
 
   if (params.sortConfig) {
     params.sortConfig.forEach(sort => {
@@ -37,6 +38,18 @@ export const updateRequest = (id, data) => {
   return api.put(`/api/requests/${id}`, data);
 }
 
+export const bulkUpdateRequests = (data) => {
+  return api.post('/api/requests/bulk', data);
+}
+
+export const importRequests = (file) => {
+  const formData = new FormData();
+  formData.append('file', file);
+  return api.post('/api/requests/import', formData, {
+    headers: { 'Content-Type': 'multipart/form-data' }
+  });
+}
+
 export const deleteRequest = (id) => {
   return api.delete(`/api/requests/${id}`);
 }
@@ -76,12 +89,19 @@ export const getPhotoUrl = (photoId) => {
   return `${api.defaults.baseURL}/api/requests/photos/${photoId}`;
 }
 
-export const getPhotoBlob = (photoId) => {
+export const getPhotoBlob = (photoId, size) => {
   return api.get(`/api/requests/photos/${photoId}`, {
+    params: size ? { size } : undefined,
     responseType: 'blob' 
   });
 }
 
+export const downloadPhotosArchive = (requestId) => {
+  return api.get(`/api/requests/${requestId}/photos.zip`, {
+    responseType: 'blob'
+  });
+}
+
 export const deletePhoto = (photoId) => {
     return api.delete(`/api/requests/photos/${photoId}`);
 }
@@ -1,11 +1,11 @@
 import React, { useState, useEffect, useRef, useCallback } from 'react';
-import { getPhotoIds, uploadPhotos, deletePhoto } from '@/api/requestApi';
+import { getPhotoIds, uploadPhotos, deletePhoto, downloadPhotosArchive } from '@/api/requestApi';
 import SecureImage from '@/components/SecureImage';
 import { Dialog, DialogContent, DialogHeader, DialogTitle } from "@/components/ui/dialog";
 import { AlertDialog, AlertDialogAction, AlertDialogCancel, AlertDialogContent, AlertDialogDescription, AlertDialogFooter, AlertDialogHeader, AlertDialogTitle } from "@/components/ui/alert-dialog";
 import { Button } from '@/components/ui/button';
 import { Input } from '@/components/ui/input';
-import { X, ChevronLeft, ChevronRight, Trash2 } from 'lucide-react';
+import { X, ChevronLeft, ChevronRight, Trash2, Download } from 'lucide-react';
 import { useAuth } from '@/context/AuthProvider'; 
 
 export default function PhotosModal({ isOpen, onClose, request }) {
@@ -101,6 +101,20 @@ export default function PhotosModal({ isOpen, onClose, request }) {
         }
     };
 
+    const handleDownloadAll = async () => {
+        try {
+            const response = await downloadPhotosArchive(request.requestID);
+            const url = URL.createObjectURL(response.data);
+            const link = document.createElement('a');
+            link.href = url;
+            link.download = `request_${request.requestID}_photos.zip`;
+            link.click();
+            URL.revokeObjectURL(url);
+        } catch (err) {
+            setError("Ошибка скачивания архива");
+        }
+    };
+
     const handleDelete = async () => {
         if (!deletingPhotoId) return;
         try {
@@ -122,7 +136,14 @@ export default function PhotosModal({ isOpen, onClose, request }) {
             <Dialog open={isOpen} onOpenChange={onClose}>
                 <DialogContent className="max-w-4xl w-full">
                     <DialogHeader>
-                        <DialogTitle>Фото к заявке #{request?.requestID}</DialogTitle>
+                        <DialogTitle className="flex items-center gap-3">
+                            Фото к заявке #{request?.requestID}
+                            {photoIds.length > 0 && (
+                                <Button variant="outline" size="sm" onClick={handleDownloadAll}>
+                                    <Download className="h-4 w-4 mr-1" /> Скачать все
+                                </Button>
+                            )}
+                        </DialogTitle>
                     </DialogHeader>
                     
                     <div className="grid grid-cols-2 sm:grid-cols-3 md:grid-cols-4 lg:grid-cols-5 gap-4 max-h-[60vh] overflow-y-auto p-1">
@@ -140,6 +161,7 @@ export default function PhotosModal({ isOpen, onClose, request }) {
                                 >
                                     <SecureImage
                                         photoId={id}
+                                        size="thumb"
                                         // object-cover: заполняет квадрат, обрезая лишнее (красивая сетка)
                                         className="w-full h-full object-cover transition-transform group-hover:scale-105"
                                     />
@@ -206,6 +228,7 @@ export default function PhotosModal({ isOpen, onClose, request }) {
                                 <SecureImage 
                                     key={photoIds[viewerIndex]}
                                     photoId={photoIds[viewerIndex]} 
+                                    size="preview"
                                     className="max-w-full max-h-full object-contain rounded-md shadow-2xl"
                                 />
                             </div>
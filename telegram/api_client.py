@@ -143,13 +143,15 @@ async def upload_photos(request_id: int, telegram_id: int, photo_files: list):
             return False
 
 
-async def get_photo(photo_id: int):
+async def get_photo(photo_id: int, size: str = None):
     api_url = f"{BACKEND_URL}/api/bot/requests/photos/{photo_id}"
     headers = {"X-API-KEY": API_KEY}
+    # size: "thumb" (200px) или "preview" (800px); без параметра отдается оригинал
+    params = {"size": size} if size else None
 
     async with httpx.AsyncClient(timeout=10.0) as client:
         try:
-            response = await client.get(api_url, headers=headers)
+            response = await client.get(api_url, headers=headers, params=params)
             response.raise_for_status()
             return response.content
         except Exception as e:
@@ -970,7 +970,7 @@ async def show_photos(query, context: Context, request_id: int):
     display_ids = photo_ids[-10:]
 
     for pid in display_ids:
-        photo_bytes = await api_client.get_photo(pid)
+        photo_bytes = await api_client.get_photo(pid, size="preview")
         if photo_bytes:
             media_group.append(InputMediaPhoto(media=photo_bytes))
 
@@ -1033,7 +1033,7 @@ async def preview_delete_photo_handler(update: Update, context: Context) -> int:
 
     await query.delete_message()
 
-    photo_bytes = await api_client.get_photo(int(photo_id))
+    photo_bytes = await api_client.get_photo(int(photo_id), size="preview")
 
     keyboard = [
         [InlineKeyboardButton("❌ УДАЛИТЬ ЭТО ФОТО", callback_data=f"fin_del_img_{photo_id}_{request_id}")],
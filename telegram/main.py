@@ -2,8 +2,8 @@ import logging
 import asyncio
 import io
 from aiohttp import web
-from telegram import InlineKeyboardButton, InlineKeyboardMarkup
-from telegram.error import BadRequest, TelegramError
+from telegram import InlineKeyboardButton, InlineKeyboardMarkup, InputMediaPhoto
+from telegram.error import BadRequest, RetryAfter, TelegramError
 from telegram.constants import ParseMode
 from telegram.ext import (
     Application, CommandHandler, ConversationHandler, CallbackQueryHandler,
@@ -34,6 +34,17 @@ from handlers import (
 REPLY_COMMENT_SELECT = 29
 
 
+def _retry_after_seconds(e):
+    """Пауза, которую требует Telegram; в разных версиях библиотеки - число секунд или timedelta."""
+    value = e.retry_after
+    return max(1, int(value.total_seconds() if hasattr(value, 'total_seconds') else value))
+
+
+def _rate_limited(e):
+    # Backend повторяет 429 не раньше Retry-After, а не считает сообщение отвергнутым
+    return web.Response(status=429, headers={"Retry-After": str(_retry_after_seconds(e))}, text=str(e))
+
+
 async def http_notify_handler(request):
     try:
         data = await request.json()
@@ -52,6 +63,9 @@ async def http_notify_handler(request):
         )
         logger.info(f"Notification sent to {chat_id}")
         return web.Response(text="OK")
+    except RetryAfter as e:
+        logger.warning(f"Flood control for {data.get('chatId')}: {e}")
+        return _rate_limited(e)
     except Exception as e:
         logger.error(f"Failed to process notification: {e}")
         return web.Response(status=500, text=str(e))
@@ -78,6 +92,9 @@ async def http_notify_comment_handler(request):
             parse_mode=ParseMode.MARKDOWN_V2
         )
         return web.Response(text="OK")
+    except RetryAfter as e:
+        logger.warning(f"Flood control for {data.get('chatId')}: {e}")
+        return _rate_limited(e)
     except Exception as e:
         logger.error(f"Notify error: {e}")
         return web.Response(status=500)
@@ -90,6 +107,7 @@ async def http_notify_photo_handler(request):
         chat_id = None
         caption = None
         file_data = None
+        file_id = None
 
         async for field in reader:
             if field.name == 'chatId':
@@ -98,25 +116,35 @@ async def http_notify_photo_handler(request):
             elif field.name == 'caption':
                 val = await field.read_chunk()
                 caption = val.decode('utf-8')
+            elif field.name == 'fileId':
+                val = await field.read_chunk()
+                file_id = val.decode('utf-8')
             elif field.name == 'file':
                 file_data = await field.read()
 
-        if not chat_id or not file_data:
+        if not chat_id or not (file_data or file_id):
             return web.Response(status=400, text="Missing chatId or file")
 
         bot_app = request.app['bot_app']
 
-        photo_file = io.BytesIO(file_data)
-        photo_file.name = 'image.jpg'
+        # Фото, уже загруженное в Telegram, отправляется по file_id без повторной передачи файла
+        if file_id:
+            photo = file_id
+        else:
+            photo = io.BytesIO(file_data)
+            photo.name = 'image.jpg'
 
-        await bot_app.bot.send_photo(
+        message = await bot_app.bot.send_photo(
             chat_id=chat_id,
-            photo=photo_file,
+            photo=photo,
             caption=caption,
             parse_mode=ParseMode.MARKDOWN_V2
         )
         logger.info(f"Photo notification sent to {chat_id}")
-        return web.Response(text="OK")
+        return web.json_response({"fileId": message.photo[-1].file_id})
+    except RetryAfter as e:
+        logger.warning(f"Flood control for {chat_id}: {e}")
+        return _rate_limited(e)
     except BadRequest as e:
         if "Chat not found" in str(e) or "chat not found" in str(e):
             logger.warning(f"Chat {chat_id} not found: {e}")
@@ -130,6 +158,104 @@ async def http_notify_photo_handler(request):
         return web.Response(status=500, text=str(e))
 
 
+async def _send_batch_item(bot, item):
+    try:
+        chat_id, text = item.get('chatId'), item.get('text')
+        if not chat_id or not text:
+            return {"ok": False, "status": 400, "error": "Missing chatId or text"}
+
+        keyboard = None
+        if item.get('commentId'):
+            keyboard = InlineKeyboardMarkup([
+                [InlineKeyboardButton("↩️ Ответить", callback_data=f"act_add_comment_{item.get('requestId')}_{item.get('commentId')}")]
+            ])
+
+        await bot.send_message(
+            chat_id=chat_id,
+            text=text,
+            reply_markup=keyboard,
+            parse_mode=ParseMode.MARKDOWN_V2
+        )
+        return {"ok": True, "status": 200}
+    except RetryAfter as e:
+        logger.warning(f"Flood control for {item.get('chatId')}: {e}")
+        return {"ok": False, "status": 429, "error": str(e), "retryAfter": _retry_after_seconds(e)}
+    except BadRequest as e:
+        logger.warning(f"Telegram Bad Request for {item.get('chatId')}: {e}")
+        return {"ok": False, "status": 400, "error": str(e)}
+    except Exception as e:
+        logger.error(f"Failed to send batch item to {item.get('chatId')}: {e}")
+        return {"ok": False, "status": 500, "error": str(e)}
+
+
+async def http_notify_batch_handler(request):
+    """Пачка текстовых уведомлений; ответ - результат по каждому сообщению в том же порядке."""
+    try:
+        items = await request.json()
+        if not isinstance(items, list):
+            return web.Response(status=400, text="Expected a list of notifications")
+
+        bot_app = request.app['bot_app']
+        # Backend не кладет в одну пачку два сообщения одного чата, поэтому порядок внутри чата не нарушается
+        results = await asyncio.gather(*(_send_batch_item(bot_app.bot, item) for item in items))
+        logger.info(f"Batch of {len(items)} notifications processed")
+        return web.json_response(results)
+    except Exception as e:
+        logger.error(f"Failed to process notification batch: {e}")
+        return web.Response(status=500, text=str(e))
+
+
+async def http_notify_media_group_handler(request):
+    """Альбом фото: части fileId_N (уже загруженное фото) или file_N (файл), подпись - у первого фото."""
+    chat_id = None
+    try:
+        reader = await request.multipart()
+
+        caption = None
+        items = {}
+
+        async for field in reader:
+            if field.name == 'chatId':
+                val = await field.read_chunk()
+                chat_id = int(val.decode('utf-8'))
+            elif field.name == 'caption':
+                val = await field.read_chunk()
+                caption = val.decode('utf-8')
+            elif field.name.startswith('fileId_'):
+                val = await field.read_chunk()
+                items[int(field.name[len('fileId_'):])] = val.decode('utf-8')
+            elif field.name.startswith('file_'):
+                photo = io.BytesIO(await field.read())
+                photo.name = f"{field.name}.jpg"
+                items[int(field.name[len('file_'):])] = photo
+
+        if not chat_id or not items:
+            return web.Response(status=400, text="Missing chatId or files")
+
+        bot_app = request.app['bot_app']
+        media = [
+            InputMediaPhoto(
+                media=items[index],
+                caption=caption if position == 0 and caption else None,
+                parse_mode=ParseMode.MARKDOWN_V2 if position == 0 and caption else None
+            )
+            for position, index in enumerate(sorted(items))
+        ]
+
+        messages = await bot_app.bot.send_media_group(chat_id=chat_id, media=media)
+        logger.info(f"Media group of {len(media)} photos sent to {chat_id}")
+        return web.json_response({"fileIds": [m.photo[-1].file_id for m in messages]})
+    except RetryAfter as e:
+        logger.warning(f"Flood control for {chat_id}: {e}")
+        return _rate_limited(e)
+    except BadRequest as e:
+        logger.error(f"Telegram Bad Request for {chat_id}: {e}")
+        return web.Response(status=400, text=str(e))
+    except Exception as e:
+        logger.error(f"Failed to process media group notification: {e}")
+        return web.Response(status=500, text=str(e))
+
+
 async def check_chat_handler(request):
     chat_id_str = request.match_info['chat_id']
     try:
@@ -258,8 +384,10 @@ async def main():
     server['bot_app'] = application
     server.router.add_post('/notify', http_notify_handler)
     server.router.add_post('/notify/photo', http_notify_photo_handler)
+    server.router.add_post('/notify/media-group', http_notify_media_group_handler)
     server.router.add_get('/check/{chat_id}', check_chat_handler)
     server.router.add_post('/notify-comment', http_notify_comment_handler)
+    server.router.add_post('/notify-batch', http_notify_batch_handler)
 
     runner = web.AppRunner(server, access_log=None)
     await runner.setup()